@@ -0,0 +1,86 @@
+package com.ezartech.ezar.snapshot;
+
+import android.graphics.Bitmap;
+import android.graphics.Color;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Reuses the full screen ARGB_8888 bitmaps of a snapshot, e.g., the webview, camera and
+ * result images, so repeated snapshots of the same size allocate nothing. Bitmaps are
+ * keyed by size; the pool keeps at most maxSize free bitmaps and recycles the oldest
+ * beyond that. Thread safe.
+ */
+public class BitmapPool {
+
+	private final int maxSize;
+	private final List<Bitmap> freeBitmaps = new ArrayList<Bitmap>();
+
+
+	public BitmapPool(int maxSize) {
+		this.maxSize = maxSize;
+	}
+
+	/**
+	 * @return a cleared, transparent bitmap, reused when a free one of the size exists
+	 */
+	public Bitmap acquire(int width, int height) {
+		Bitmap bitmap = null;
+		synchronized (this) {
+			for (int i = freeBitmaps.size() - 1; i >= 0; i--) {
+				Bitmap free = freeBitmaps.get(i);
+				if (free.getWidth() == width && free.getHeight() == height) {
+					bitmap = freeBitmaps.remove(i);
+					break;
+				}
+			}
+		}
+
+		if (bitmap == null) {
+			return Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888);
+		}
+		bitmap.eraseColor(Color.TRANSPARENT);
+		return bitmap;
+	}
+
+	/**
+	 * Return a bitmap for reuse, the caller must not touch it anymore. Null is ignored.
+	 */
+	public void release(Bitmap bitmap) {
+		if (bitmap == null || bitmap.isRecycled() || !bitmap.isMutable() ||
+				bitmap.getConfig() != Bitmap.Config.ARGB_8888) {
+			return;
+		}
+
+		Bitmap evicted = null;
+		synchronized (this) {
+			if (freeBitmaps.contains(bitmap)) {
+				return;
+			}
+			if (freeBitmaps.size() >= maxSize) {
+				evicted = freeBitmaps.remove(0);
+			}
+			freeBitmaps.add(bitmap);
+		}
+
+		if (evicted != null) {
+			evicted.recycle();
+		}
+	}
+
+	/**
+	 * Recycle every free bitmap, e.g., when the system runs low on memory.
+	 */
+	public void trim() {
+		List<Bitmap> trimmed;
+		synchronized (this) {
+			trimmed = new ArrayList<Bitmap>(freeBitmaps);
+			freeBitmaps.clear();
+		}
+
+		for (Bitmap bitmap : trimmed) {
+			bitmap.recycle();
+		}
+	}
+}
@@ -1,30 +1,36 @@
 package com.ezartech.ezar.snapshot;
 
 import android.Manifest;
+import android.annotation.TargetApi;
+import android.content.ComponentCallbacks2;
 import android.content.pm.PackageManager;
+import android.content.res.Configuration;
 import android.graphics.Bitmap;
-import android.graphics.Bitmap.CompressFormat;
-import android.graphics.BitmapFactory;
 import android.graphics.Canvas;
 import android.graphics.Color;
-import android.graphics.Matrix;
 import android.graphics.Paint;
 import android.graphics.PorterDuff;
 import android.graphics.PorterDuffXfermode;
 import android.graphics.Rect;
-import android.hardware.Camera;
 import android.media.MediaActionSound;
+import android.net.Uri;
+import android.os.Build;
+import android.os.Handler;
+import android.os.HandlerThread;
 import android.provider.MediaStore;
 import android.util.Base64;
 import android.util.Log;
-import android.view.Display;
-import android.view.Surface;
+import android.view.PixelCopy;
+import android.view.SurfaceView;
 import android.view.TextureView;
 import android.view.View;
 import android.view.ViewGroup;
 import android.view.ViewParent;
 import android.webkit.WebView;
 
+import com.ezartech.ezar.videooverlay.CameraSession;
+import com.ezartech.ezar.videooverlay.PreviewSurface;
+
 import org.apache.cordova.CallbackContext;
 import org.apache.cordova.CordovaInterface;
 import org.apache.cordova.CordovaPlugin;
@@ -33,10 +39,19 @@ import org.apache.cordova.LOG;
 import org.apache.cordova.PluginResult;
 import org.json.JSONArray;
 import org.json.JSONException;
+import org.json.JSONObject;
 
+import java.io.BufferedOutputStream;
 import java.io.ByteArrayOutputStream;
-import java.lang.reflect.InvocationTargetException;
-import java.lang.reflect.Method;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Created by Zirk on 2/5/2016.
@@ -54,12 +69,39 @@ public class Snapshot extends CordovaPlugin {
 	private View webViewView;
 	private MediaActionSound mSound;
 
-	private CompressFormat  encoding;
-	private boolean saveToPhotoAlbum;
+	private SnapshotOptions options;
 	private CallbackContext callbackContext;
 
 	private Bitmap snapshotBitmap;
 
+	private CameraSession cameraSession; //VideoOverlay plugin, see getCameraSession
+
+	//SurfaceView previews can not be read back with TextureView.getBitmap
+	private static final long PIXEL_COPY_TIMEOUT = 500; //ms
+	private HandlerThread pixelCopyThread;
+	private ExecutorService snapshotExecutor;
+
+	//webview, camera and result images of a snapshot, one spare for a copy still in flight
+	private final BitmapPool bitmapPool = new BitmapPool(4);
+
+	private final ComponentCallbacks2 memoryCallbacks = new ComponentCallbacks2() {
+		@Override
+		public void onTrimMemory(int level) {
+			if (level >= ComponentCallbacks2.TRIM_MEMORY_RUNNING_LOW) {
+				bitmapPool.trim();
+			}
+		}
+
+		@Override
+		public void onLowMemory() {
+			bitmapPool.trim();
+		}
+
+		@Override
+		public void onConfigurationChanged(Configuration newConfig) {
+		}
+	};
+
 
 	@Override
 	public void initialize(final CordovaInterface cordova, final CordovaWebView cvWebView) {
@@ -68,6 +110,7 @@ public class Snapshot extends CordovaPlugin {
 		webViewView = cvWebView.getView();
 		mSound = new MediaActionSound();
 		mSound.load(MediaActionSound.SHUTTER_CLICK);
+		cordova.getActivity().registerComponentCallbacks(memoryCallbacks);
 	}
 
 
@@ -77,11 +120,9 @@ public class Snapshot extends CordovaPlugin {
 
 		if (action.equals("snapshot")) {
 			this.callbackContext = callbackContext;
-			int encodingParam = args.getInt(0);  //JPG: 0, PNG: 1
-			this.encoding = encodingParam == 0 ? Bitmap.CompressFormat.JPEG : Bitmap.CompressFormat.PNG;
-			this.saveToPhotoAlbum = args.getBoolean(1);
+			this.options = SnapshotOptions.fromArgs(args);
 
-			this.snapshot(encoding, saveToPhotoAlbum, callbackContext);
+			this.snapshot(options, callbackContext);
 
 			return true;
 		}
@@ -89,12 +130,12 @@ public class Snapshot extends CordovaPlugin {
 		return false;
 	}
     
-    private void snapshot(final CompressFormat encoding, final boolean saveToPhotoAlbum, CallbackContext callbackContext) {
+    private void snapshot(final SnapshotOptions options, CallbackContext callbackContext) {
 		Log.d(TAG, "snapshot");
 
-		if (getActiveVOCamera() != null) {
+		if (isVOCameraRunning()) {
 			if (PermissionHelper.hasPermission(this, permissions[0])) {
-				secureSnapshot(encoding, saveToPhotoAlbum, callbackContext);
+				secureSnapshot(options, callbackContext);
 			} else {
 				PermissionHelper.requestPermission(this, CAMERA_SEC, Manifest.permission.CAMERA);
 			}
@@ -112,63 +153,28 @@ public class Snapshot extends CordovaPlugin {
 		}
 		switch(requestCode) {
 			case CAMERA_SEC:
-				secureSnapshot(this.encoding, this.saveToPhotoAlbum, this.callbackContext);
+				secureSnapshot(this.options, this.callbackContext);
+				break;
 			case SAVE_TO_ALBUM_SEC:
-				saveToMediaStore();
+				getSnapshotExecutor().execute(new Runnable() {
+					@Override
+					public void run() {
+						saveToMediaStore();
+					}
+				});
 				break;
 		}
 	}
 
-	private void secureSnapshot(final CompressFormat encoding, final boolean saveToPhotoAlbum, final CallbackContext callbackContext) {
+	private void secureSnapshot(final SnapshotOptions options, final CallbackContext callbackContext) {
 		Log.d(TAG, "secureSnapshot");
 
-		Camera camera = getActiveVOCamera();
-		if (camera != null) camera.startPreview();
-
-		buildAndSaveSnapshotImageXXX(encoding, saveToPhotoAlbum, true, isVOPluginInstalled(), callbackContext);
-
-//		Camera voCamera = getActiveVOCamera();
-//		if (voCamera == null) {
-//			buildAndSaveSnapshotImage(encoding, saveToPhotoAlbum, true,  null, voCamera, callbackContext);
-//			return;
-//		}
-//
-//		Camera.Parameters cameraParameters = voCamera.getParameters();
-//		Camera.Size sz = cameraParameters.getPictureSize();
-//		Log.v(TAG, "snapshot picture size:  " + sz.width + ":" + sz.height);
-//
-//		if (updateCameraPicOrientation(cameraParameters)) {
-//			voCamera.setParameters(cameraParameters);
-//		}
-//
-//		try {
-//			//otherwise get image frame from video stream
-//			voCamera.takePicture(
-//					new Camera.ShutterCallback() {
-//						@Override
-//						public void onShutter() {
-//							mSound.play(MediaActionSound.SHUTTER_CLICK);
-//						}
-//					},
-//					null, null,
-//					new Camera.PictureCallback() {
-//						@Override
-//						public void onPictureTaken(byte[] data, final Camera camera) {
-//							buildAndSaveSnapshotImageXXX(encoding,
-//									saveToPhotoAlbum,
-//									false,
-//									data,
-//									camera,
-//									callbackContext);
-//						}
-//					}
-//			);
-//		} catch( Exception ex) {
-//			ex.printStackTrace();
-//		}
+		//the preview keeps running, the camera image is read back from its view
+		buildAndSaveSnapshotImageXXX(options, true, isVOPluginInstalled(), callbackContext);
+
 	}
 
-	private void buildAndSaveSnapshotImageXXX(final CompressFormat format, final boolean saveToGallery,
+	private void buildAndSaveSnapshotImageXXX(final SnapshotOptions options,
 										   final boolean playSound,
 										   final boolean includeVideoFrame,
 										   final CallbackContext callbackContext) {
@@ -176,8 +182,6 @@ public class Snapshot extends CordovaPlugin {
 
 		final CordovaPlugin plugin = this;
 
-		//resume preview after it automatically stopped during takePicture()
-
 		webViewView.getRootView().post(new Runnable() {
 			@Override
 			public void run() {
@@ -192,318 +196,168 @@ public class Snapshot extends CordovaPlugin {
 				//webViewWidth = 1920;
 				Log.d(TAG, "WebView width: " + webViewWidth + "  ht: " + webViewHt);
 
-				//create webView imageData
-				Bitmap webViewBitmap = Bitmap.createBitmap(webViewWidth, webViewHt, Bitmap.Config.ARGB_8888);
+				//grab the pixels, views may only be drawn and read back on the UI thread
+				final Bitmap webViewBitmap = bitmapPool.acquire(webViewWidth, webViewHt);
 				Canvas webViewCanvas = new Canvas(webViewBitmap);
 				webViewView.draw(webViewCanvas);
 
-				Bitmap resultBitmap = null;
-				Canvas resultCanvas = null;
-
+				//a TextureView is read back as displayed, digital zoom included, a SurfaceView's surface is copied
+				//off the UI thread and drawn where the SurfaceView sits
+				Bitmap videoFrameBitmap = null;
+				SurfaceView cameraSurfaceView = null;
+				Rect surfaceRect = null;
 				if (includeVideoFrame) {
-
-					TextureView cameraView = getVOCameraView();
-					Bitmap scaledVideoFrameBitmap = cameraView.getBitmap();
-
-					Log.d(TAG, "scaledVideoFrameBitmap2,  w: " + scaledVideoFrameBitmap.getWidth() + ": " + scaledVideoFrameBitmap.getHeight());
-
-//					resultBitmap = scaledVideoFrameBitmap;
-
-					//create new resultBitmap, set its bounds to cip to webview rect, draw videoFrameBitmap onto it
-					resultBitmap = Bitmap.createBitmap(webViewWidth, webViewHt, Bitmap.Config.ARGB_8888);
-					resultCanvas = new Canvas(resultBitmap);
-					Rect dstRect = new Rect();
-					resultCanvas.getClipBounds(dstRect);
-					resultCanvas.drawBitmap(scaledVideoFrameBitmap, dstRect, dstRect, null);
-					//scaledVideoFrameBitmap = null;
-
-					//draw webviewBitmap on top of videoFrameBitmap, i.e., resultBitmap in the resultCanvas
-					try {
-						Paint p = new Paint();
-						p.setAlpha(255);
-						p.setXfermode(new PorterDuffXfermode(PorterDuff.Mode.SRC_ATOP));
-						resultCanvas.drawBitmap(webViewBitmap, null, dstRect, p);
-
-					} catch (Exception ex) {
-						ex.printStackTrace();
-					}
-				} else {
-					//no videoFrameset webviewBitmap as the result
-					resultBitmap = webViewBitmap;
-				}
-
-				snapshotBitmap = resultBitmap;
-				String imageEncoded = encodeImageData(resultBitmap, format);
-
-				if (saveToGallery) {
-					if (PermissionHelper.hasPermission(plugin, permissions[1])) {
-						saveToMediaStore();
+					if (PreviewSurface.HOST_SURFACE_VIEW.equals(getVOPreviewHost())) {
+						cameraSurfaceView = getVOCameraSurfaceView();
+						if (cameraSurfaceView != null) {
+							surfaceRect = new Rect(cameraSurfaceView.getLeft(), cameraSurfaceView.getTop(),
+									cameraSurfaceView.getRight(), cameraSurfaceView.getBottom());
+						}
 					} else {
-						PermissionHelper.requestPermission(plugin, SAVE_TO_ALBUM_SEC, Manifest.permission.WRITE_EXTERNAL_STORAGE);
+						TextureView cameraView = getVOCameraView();
+						if (cameraView != null && cameraView.getWidth() > 0 && cameraView.getHeight() > 0) {
+							videoFrameBitmap = bitmapPool.acquire(cameraView.getWidth(), cameraView.getHeight());
+							cameraView.getBitmap(videoFrameBitmap);
+						}
 					}
 				}
 
-				callbackContext.success(imageEncoded);
-
-				resultBitmap = null;
-				resultCanvas = null;
-				webViewBitmap = null;
-				webViewCanvas = null;
-				imageEncoded = null;
-
+				final Bitmap textureViewBitmap = videoFrameBitmap;
+				final SurfaceView surfaceView = cameraSurfaceView;
+				final Rect surfaceViewRect = surfaceRect;
+				getSnapshotExecutor().execute(new Runnable() {
+					@Override
+					public void run() {
+						Bitmap resultBitmap = includeVideoFrame ?
+								composite(webViewBitmap, textureViewBitmap, surfaceView, surfaceViewRect) :
+								webViewBitmap;
+
+						if (resultBitmap != webViewBitmap) {
+							bitmapPool.release(webViewBitmap);
+						}
+
+						PluginResult result;
+						JSONObject metrics = new JSONObject();
+						try {
+							resultBitmap = scaleBitmap(resultBitmap, options, metrics);
+
+							PluginResult payload;
+							if (options.resultType == SnapshotOptions.RESULT_FILE_URI) {
+								payload = writeImageFile(resultBitmap, options, metrics);
+							} else if (options.resultType == SnapshotOptions.RESULT_ARRAY_BUFFER) {
+								payload = sendImageBytes(resultBitmap, options, metrics, callbackContext);
+							} else {
+								byte[] bytes = encodeImageBytes(resultBitmap, options, metrics);
+								payload = new PluginResult(PluginResult.Status.OK, Base64.encodeToString(bytes, Base64.DEFAULT));
+							}
+
+							//the metrics are the 2nd argument of the JS success callback
+							result = new PluginResult(PluginResult.Status.OK,
+									Arrays.asList(payload, new PluginResult(PluginResult.Status.OK, metrics)));
+						} catch (IOException e) {
+							Log.e(TAG, "Unable to encode snapshot", e);
+							result = new PluginResult(PluginResult.Status.ERROR, e.getMessage());
+						} catch (JSONException e) {
+							result = new PluginResult(PluginResult.Status.ERROR, e.getMessage());
+						}
+
+						//the result is only kept while the gallery permission is requested
+						boolean saveToGallery = options.saveToPhotoAlbum;
+						if (saveToGallery && !PermissionHelper.hasPermission(plugin, permissions[1])) {
+							releaseSnapshotBitmap();
+							snapshotBitmap = resultBitmap;
+							PermissionHelper.requestPermission(plugin, SAVE_TO_ALBUM_SEC, Manifest.permission.WRITE_EXTERNAL_STORAGE);
+						} else {
+							if (saveToGallery) {
+								saveToMediaStore(resultBitmap);
+							}
+							bitmapPool.release(resultBitmap);
+						}
+
+						callbackContext.sendPluginResult(result);
+					}
+				});
 			}
 		}); //post
 	}
 
-
-	private void buildAndSaveSnapshotImageXXXxxx(final CompressFormat format, final boolean saveToGallery,
-											  final boolean playSound,
-											  final byte[] videoFrameData,
-											  final Camera camera,
-											  final CallbackContext callbackContext) {
-
-		final boolean includeVideoFrame = !(videoFrameData == null || camera == null);
-
-		//resume preview after it automatically stopped during takePicture()
-		if (includeVideoFrame) {
-			camera.startPreview();
+	/**
+	 * Draw the webview over the camera image. Runs on the snapshot executor.
+	 *
+	 * @param textureViewBitmap camera image read back from a TextureView, or null
+	 * @param surfaceView SurfaceView preview host to copy the camera image from, or null
+	 */
+	private Bitmap composite(Bitmap webViewBitmap, Bitmap textureViewBitmap,
+							 SurfaceView surfaceView, Rect surfaceRect) {
+		Bitmap videoFrameBitmap = surfaceView != null ? copySurfaceViewBitmap(surfaceView) : textureViewBitmap;
+		if (videoFrameBitmap != null) {
+			Log.d(TAG, "videoFrameBitmap,  w: " + videoFrameBitmap.getWidth() + ": " + videoFrameBitmap.getHeight());
+		} else {
+			Log.w(TAG, "Camera view can not be captured, snapshot of the webview only");
 		}
 
-		webViewView.getRootView().post(new Runnable() {
-			@Override
-			public void run() {
-
-				if (playSound) {
-					mSound.play(MediaActionSound.SHUTTER_CLICK);
-				}
-
-				int webViewWidth = webViewView.getWidth();
-				int webViewHt = webViewView.getHeight();
-
-				//webViewWidth = 1920;
-				Log.d(TAG, "WebView width: " + webViewWidth + "  ht: " + webViewHt);
-
-				//create webView imageData
-				Bitmap webViewBitmap = Bitmap.createBitmap(webViewWidth, webViewHt, Bitmap.Config.ARGB_8888);
-				Canvas webViewCanvas = new Canvas(webViewBitmap);
-				webViewView.draw(webViewCanvas);
-
-				Bitmap resultBitmap = null;
-				Canvas resultCanvas = null;
-
-				Bitmap crap = null;
-				if (includeVideoFrame) {
-					Bitmap rawVideoFrameBitmap = BitmapFactory.decodeByteArray(videoFrameData, 0, videoFrameData.length);
-					int videoFrameWidth = rawVideoFrameBitmap.getWidth();
-					int videoFrameHt = rawVideoFrameBitmap.getHeight();
-
-//					if (isPortraitOrientation()) {
-//						videoFrameWidth = rawVideoFrameBitmap.getHeight();
-//						videoFrameHt = rawVideoFrameBitmap.getWidth();
-//					}
-
-					Log.d(TAG, "build snapshot,  videoframe w: " + videoFrameWidth + "  h: " + videoFrameHt);
-
-					//fit videoFrame bitmap into webView rect
-					//try horizontal fit
-					float scaleX = (float) webViewWidth / (float) videoFrameWidth;
-					int scaledVideoFrameHt = (int) (scaleX * (float) videoFrameHt);
-					int scaledVideoFrameHtDelta = scaledVideoFrameHt - webViewHt;
-
-					//try vertical fit
-					float scaleY = (float) webViewHt / (float) videoFrameHt;
-					int scaledVideoFrameWidth = (int) (scaleY * (float) videoFrameWidth);
-					int scaledVideoFrameWidthDelta = scaledVideoFrameWidth - webViewWidth;
-
-					//select the smallest scaled dimension > than the corresponding webView dimension
-					float scale = 1.0f;
-					if (0 < scaledVideoFrameHtDelta && scaledVideoFrameWidthDelta < scaledVideoFrameHtDelta) {
-						scale = scaleX;
-						scaledVideoFrameWidth = webViewWidth;
-					} else {
-						scale = scaleY;
-						scaledVideoFrameHt = webViewHt;
-					}
-
-					crap = rawVideoFrameBitmap;
-
-//					float scaleX = 1.0f;
-//					float scaleY = 1.3214285f;
-////					if (isPortraitOrientation()) {
-////						scaleX = (float) webViewHt / (float) previewHeight * (float) previewWidth / (float) webViewWidth;
-////					} else {
-////						scaleY = (float) webViewWidth / (float) previewWidth * (float) previewHeight / (float) webViewHt;
-////					}
-
-					Bitmap scaledVideoFrameBitmap =
-							Bitmap.createScaledBitmap(
-									rawVideoFrameBitmap,
-									scaledVideoFrameWidth,
-									scaledVideoFrameHt,
-									true);
-
-					Log.d(TAG, "scale: " + scale);
-					Log.d(TAG, "scaledVideoFrameBitmap,  w: " + scaledVideoFrameBitmap.getWidth() + ": " + scaledVideoFrameBitmap.getHeight());
-
-					int startX = (scaledVideoFrameWidth - webViewWidth) / 2;
-					int startY = (scaledVideoFrameHt - webViewHt) / 2;
-					scaledVideoFrameBitmap =
-							Bitmap.createBitmap(
-									scaledVideoFrameBitmap,
-									startX, startY,
-									webViewWidth, webViewHt,
-									new Matrix(),
-									false);
-
-					Log.d(TAG, "FinalScaledVideoFrameBitmap,  w: " + scaledVideoFrameBitmap.getWidth() + ": " + scaledVideoFrameBitmap.getHeight());
-
-//					scaledVideoFrameBitmap =
-//						Bitmap.createScaledBitmap(
-//								rawVideoFrameBitmap,
-//								scaledVideoFrameWidth,
-//								webViewHt,
-//								true);
-
-//					Log.d(TAG, "scaledVideoFrameBitmap2,  w: " + scaledVideoFrameBitmap.getWidth() + ": " + scaledVideoFrameBitmap.getHeight());
-
-					//create new resultBitmap, set its bounds to cip to webview rect, draw videoFrameBitmap onto it
-					resultBitmap = Bitmap.createBitmap(webViewWidth, webViewHt, Bitmap.Config.ARGB_8888);
-					resultCanvas = new Canvas(resultBitmap);
-					Rect dstRect = new Rect();
-					resultCanvas.getClipBounds(dstRect);
-					resultCanvas.drawBitmap(scaledVideoFrameBitmap, dstRect, dstRect, null);
-					scaledVideoFrameBitmap = null;
-
-					//draw webviewBitmap on top of videoFrameBitmap, i.e., resultBitmap in the resultCanvas
-					try {
-						Paint p = new Paint();
-						p.setAlpha(255);
-						p.setXfermode(new PorterDuffXfermode(PorterDuff.Mode.SRC_ATOP));
-						resultCanvas.drawBitmap(webViewBitmap, null, dstRect, p);
-
-					} catch (Exception ex) {
-						ex.printStackTrace();
-					}
-				} else {
-					//no videoFrameset webviewBitmap as the result
-					resultBitmap = webViewBitmap;
-				}
+		//create new resultBitmap, set its bounds to cip to webview rect, draw videoFrameBitmap onto it
+		Bitmap resultBitmap = bitmapPool.acquire(webViewBitmap.getWidth(), webViewBitmap.getHeight());
+		Canvas resultCanvas = new Canvas(resultBitmap);
+		Rect dstRect = new Rect();
+		resultCanvas.getClipBounds(dstRect);
+		if (videoFrameBitmap != null && surfaceView != null) {
+			resultCanvas.drawBitmap(videoFrameBitmap, null, surfaceRect, null);
+		} else if (videoFrameBitmap != null) {
+			resultCanvas.drawBitmap(videoFrameBitmap, dstRect, dstRect, null);
+		}
+		bitmapPool.release(videoFrameBitmap);
 
-				if (saveToGallery) {
-					//save snapshot image to gallery
-//					String url = saveToMediaStore(resultBitmap);
-					String url = saveToMediaStore(crap);
-					Log.i(TAG, "SAVED image: " + url);
-				}
+		//draw webviewBitmap on top of videoFrameBitmap, i.e., resultBitmap in the resultCanvas
+		try {
+			Paint p = new Paint();
+			p.setAlpha(255);
+			p.setXfermode(new PorterDuffXfermode(PorterDuff.Mode.SRC_ATOP));
+			resultCanvas.drawBitmap(webViewBitmap, null, dstRect, p);
+		} catch (Exception ex) {
+			ex.printStackTrace();
+		}
 
-				//
-				String imageEncoded = encodeImageData(resultBitmap, format);
+		return resultBitmap;
+	}
 
-				callbackContext.success(imageEncoded);
+	//compositing, encoding and saving, one snapshot at a time
+	private synchronized ExecutorService getSnapshotExecutor() {
+		if (snapshotExecutor == null) {
+			snapshotExecutor = Executors.newSingleThreadExecutor();
+		}
+		return snapshotExecutor;
+	}
 
-				resultBitmap = null;
-				resultCanvas = null;
-				webViewBitmap = null;
-				webViewCanvas = null;
-				imageEncoded = null;
+	@Override
+	public void onDestroy() {
+		super.onDestroy();
 
+		synchronized (this) {
+			if (snapshotExecutor != null) {
+				snapshotExecutor.shutdown();
+				snapshotExecutor = null;
 			}
-		}); //post
+		}
+		if (pixelCopyThread != null) {
+			pixelCopyThread.quitSafely();
+		}
+		cordova.getActivity().unregisterComponentCallbacks(memoryCallbacks);
+		bitmapPool.trim();
 	}
 
-	private void buildAndSaveSnapshotImage(final CompressFormat format, final boolean saveToGallery,
-										   final boolean playSound,
-										   final byte[] videoFrameData,
-										   final Camera camera,
-										   final CallbackContext callbackContext) {
 
-		final boolean includeVideoFrame = !(videoFrameData == null || camera == null);
-
-		//resume preview after it automatically stopped during takePicture()
-		if (includeVideoFrame) {
-			camera.startPreview();
+	//called on the snapshot executor, once the gallery permission is granted
+	private void saveToMediaStore() {
+		if (snapshotBitmap != null) {
+			saveToMediaStore(snapshotBitmap);
+			releaseSnapshotBitmap();
 		}
-
-		webViewView.getRootView().post(new Runnable() {
-			@Override
-			public void run() {
-
-				if (playSound) {
-					mSound.play(MediaActionSound.SHUTTER_CLICK);
-				}
-
-				int webViewWidth = webViewView.getWidth();
-				int webViewHt = webViewView.getHeight();
-				Log.d(TAG, "WebView width: " + webViewWidth + "  ht: " + webViewHt);
-
-				//create webView imageData
-				Bitmap webViewBitmap = Bitmap.createBitmap(webViewWidth, webViewHt, Bitmap.Config.ARGB_8888);
-				Canvas webViewCanvas = new Canvas(webViewBitmap);
-				webViewView.draw(webViewCanvas);
-
-				Bitmap resultBitmap = null;
-				Canvas resultCanvas = null;
-
-				if (includeVideoFrame) {
-
-					Bitmap rawVideoFrameBitmap = BitmapFactory.decodeByteArray(videoFrameData, 0, videoFrameData.length);
-					int videoFrameWidth = rawVideoFrameBitmap.getWidth();
-					int videoFrameHt = rawVideoFrameBitmap.getHeight();
-					Log.d(TAG, "build snapshot,  videoframe w: " + videoFrameWidth + "  h: " + videoFrameHt);
-
-					//fit videoFrame bitmap into webView rect
-
-
-//					Bitmap videoFrameBitmap = Bitmap.createBitmap(rawVideoFrameBitmap, 0, 0, w, h, mtx, true);
-					Bitmap videoFrameBitmap = Bitmap.createBitmap(rawVideoFrameBitmap, 0, 0, videoFrameWidth, videoFrameHt);
-					rawVideoFrameBitmap = null;
-
-					//create new resultBitmap, set its bounds to cip to webview rect, draw videoFrameBitmap onto it
-					resultBitmap = Bitmap.createBitmap(webViewWidth, webViewHt, Bitmap.Config.ARGB_8888);
-					resultCanvas = new Canvas(resultBitmap);
-					Rect dstRect = new Rect();
-					resultCanvas.getClipBounds(dstRect);
-					resultCanvas.drawBitmap(videoFrameBitmap, null, dstRect, null);
-					videoFrameBitmap = null;
-
-					//draw webviewBitmap on top of videoFrameBitmap, i.e., resultBitmap in the resultCanvas
-					try {
-						Paint p = new Paint();
-						p.setAlpha(255);
-						p.setXfermode(new PorterDuffXfermode(PorterDuff.Mode.SRC_ATOP));
-						resultCanvas.drawBitmap(webViewBitmap, null, dstRect, p);
-
-					} catch (Exception ex) {
-						ex.printStackTrace();
-					}
-				} else {
-					//no videoFrameset webviewBitmap as the result
-					resultBitmap = webViewBitmap;
-				}
-
-				if (saveToGallery) {
-					//save snapshot image to gallery
-					String url = saveToMediaStore(resultBitmap);
-					Log.i(TAG, "SAVED image: " + url);
-				}
-
-				//
-				String imageEncoded = encodeImageData(resultBitmap, format);
-
-				callbackContext.success(imageEncoded);
-
-				resultBitmap = null;
-				resultCanvas = null;
-				webViewBitmap = null;
-				webViewCanvas = null;
-				imageEncoded = null;
-
-			}
-		}); //post
 	}
 
-	private void saveToMediaStore() {
-		saveToMediaStore(snapshotBitmap);
+	//called on the snapshot executor
+	private void releaseSnapshotBitmap() {
+		bitmapPool.release(snapshotBitmap);
 		snapshotBitmap = null;
 	}
 
@@ -519,221 +373,257 @@ public class Snapshot extends CordovaPlugin {
 		return url;
 	}
 
-	private String encodeImageData(Bitmap imageData, CompressFormat encoding) {
-		ByteArrayOutputStream baos = new ByteArrayOutputStream();
-		imageData.compress(encoding, 100, baos);
-		byte[] bytes = baos.toByteArray();
-		String imageEncoded = Base64.encodeToString(bytes, Base64.DEFAULT);
-
-		try {
-			baos.close();
-		} catch (Exception ex) {
-			//do nothing during clean up
+	/**
+	 * Downscale once before encoding, to the options' scale or maxDimension. The source
+	 * bitmap is returned to the pool when a scaled copy is made.
+	 */
+	private Bitmap scaleBitmap(Bitmap imageData, SnapshotOptions options, JSONObject metrics) throws JSONException {
+		long start = System.nanoTime();
+		int width = imageData.getWidth();
+		int height = imageData.getHeight();
+		double scale = options.getScale(width, height);
+		metrics.put("sourceWidth", width);
+		metrics.put("sourceHeight", height);
+
+		Bitmap scaledBitmap = imageData;
+		if (scale < 1.0) {
+			scaledBitmap = bitmapPool.acquire(Math.max(1, (int) Math.round(width * scale)),
+					Math.max(1, (int) Math.round(height * scale)));
+			Canvas canvas = new Canvas(scaledBitmap);
+			canvas.drawBitmap(imageData, null,
+					new Rect(0, 0, scaledBitmap.getWidth(), scaledBitmap.getHeight()),
+					new Paint(Paint.FILTER_BITMAP_FLAG));
+			bitmapPool.release(imageData);
 		}
 
-		return imageEncoded;
+		metrics.put("width", scaledBitmap.getWidth());
+		metrics.put("height", scaledBitmap.getHeight());
+		metrics.put("scaleTime", toMillis(System.nanoTime() - start));
+		return scaledBitmap;
 	}
 
-	private boolean isPortraitOrientation() {
-		Display display = cordova.getActivity().getWindowManager().getDefaultDisplay();
-		boolean isPortrait = display.getRotation() == Surface.ROTATION_0 || display.getRotation() == Surface.ROTATION_180;
-		return isPortrait;
-	}
-
-	private boolean updateCameraPicOrientation(Camera.Parameters parameters) {
-		int cameraId = getActiveVOCameraId();
-		if (cameraId < 0) return false; //totally jacked
-
-		int orientation = cordova.getActivity().getWindowManager().getDefaultDisplay().getRotation();
-		int degrees = 0;
-		switch (orientation) {
-			case Surface.ROTATION_0:
-				degrees = 0;
-				break;
-			case Surface.ROTATION_90:
-				degrees = 270; //compensate by 180
-				break;
-			case Surface.ROTATION_180:
-				degrees = 180;
-				break;
-			case Surface.ROTATION_270:
-				degrees = 90; //compensate by 180
-				break;
-		}
-
-		Camera.CameraInfo info = new Camera.CameraInfo();
-		Camera.getCameraInfo(cameraId, info);
-		//orientation = (orientation + 45) / 90 * 90;
-
-		int rotation = 0;
-		if (info.facing == Camera.CameraInfo.CAMERA_FACING_FRONT) {
-			rotation = (info.orientation - degrees + 360) % 360;
-		} else {  // back-facing camera
-			rotation = (info.orientation + degrees) % 360;
+	//encode with the options' format and quality, timing it into the metrics
+	private void compress(Bitmap imageData, SnapshotOptions options, OutputStream out, JSONObject metrics)
+			throws IOException, JSONException {
+		long start = System.nanoTime();
+		boolean compressed = imageData.compress(options.format, options.quality, out);
+		metrics.put("encodeTime", toMillis(System.nanoTime() - start));
+		if (!compressed) {
+			throw new IOException("Unable to encode snapshot");
 		}
-
-		parameters.setRotation(rotation);
-
-		return true;
 	}
 
-//	private Matrix computePictureTransform(int width, int height) {
-//		Log.d(TAG, "computePICTURETransform, width: " + width + " ht: " + height);
-//
-//		Camera.Parameters cameraParameters = camera.getParameters();
-//		Camera.Size sz = cameraParameters.getPictureSize();
-//		Log.d(TAG, "computePICTURETransform, pic width: " + sz.width + " pic ht: " + sz.height);
-//
-//		boolean isPortrait = false;
-//
-//		Display display = activity.getWindowManager().getDefaultDisplay();
-//		if (display.getRotation() == Surface.ROTATION_0 || display.getRotation() == Surface.ROTATION_180)
-//			isPortrait = true;
-//		else if (display.getRotation() == Surface.ROTATION_90 || display.getRotation() == Surface.ROTATION_270)
-//			isPortrait = false;
-//
-//		int previewWidth = previewSizePair.pictureSize.width;
-//		int previewHeight = previewSizePair.pictureSize.height;
-//
-//		if (isPortrait) {
-//			previewWidth = previewSizePair.pictureSize.height;
-//			previewHeight = previewSizePair.pictureSize.width;
-//		}
-//		float scaleX = 1;
-//		float scaleY = 1;
-//
-//		if (isPortrait) {
-//			scaleX = (float) height / (float) previewHeight * (float) previewWidth / (float) width;
-//		} else {
-//			scaleY = (float) width / (float) previewWidth * (float) previewHeight / (float) height;
-//		}
-//
-//		scaleX = 1.0f;
-//
-//		Log.d(TAG, "computeMatrix, scaledX: " + scaleX + " scaleY: " + scaleY);
-//
-//		Matrix matrix = new Matrix();
-//		matrix.setScale(scaleX, scaleY);
-//
-//		return matrix;
-//	}
-
-	//----------------------------------------------------------------------------
-	private boolean isVOPluginInstalled() {
-		return getVOPlugin() != null;
+	private static double toMillis(long nanos) {
+		return nanos / 1000000.0;
 	}
 
-	private CordovaPlugin getVOPlugin() {
-		String pluginName = "videoOverlay";
-		CordovaPlugin voPlugin = webView.getPluginManager().getPlugin(pluginName);
-		return voPlugin;
+	private byte[] encodeImageBytes(Bitmap imageData, SnapshotOptions options, JSONObject metrics)
+			throws IOException, JSONException {
+		ByteArrayOutputStream baos = new ByteArrayOutputStream();
+		compress(imageData, options, baos, metrics);
+		byte[] bytes = baos.toByteArray();
+		metrics.put("size", bytes.length);
+		return bytes;
 	}
 
-	private Camera getActiveVOCamera() {
-		//reflectively access VideoOverlay plugin to get camera in same direction as lightLoc
-
-		Camera camera = null;
-
-		CordovaPlugin voPlugin = getVOPlugin();
-		if (voPlugin == null) {
-			return camera;
+	/**
+	 * Stream the encoded image into a file, no copy of it is kept in memory.
+	 *
+	 * @return {uri, width, height} of the file
+	 */
+	private PluginResult writeImageFile(Bitmap imageData, SnapshotOptions options, JSONObject metrics)
+			throws IOException, JSONException {
+		File file;
+		if (options.filePath != null) {
+			file = new File(options.filePath.startsWith("file://") ?
+					Uri.parse(options.filePath).getPath() : options.filePath);
+		} else {
+			file = File.createTempFile("snapshot", options.getFileExtension(), cordova.getActivity().getCacheDir());
 		}
 
-		Method method = null;
-
+		OutputStream out = new BufferedOutputStream(new FileOutputStream(file));
 		try {
-			method = voPlugin.getClass().getMethod("getActiveCamera");
-		} catch (SecurityException e) {
-			//e.printStackTrace();
-		} catch (NoSuchMethodException e) {
-			//e.printStackTrace();
+			compress(imageData, options, out, metrics);
+		} finally {
+			out.close();
 		}
+		metrics.put("size", file.length());
 
-		try {
-			if (method == null) return camera;
-
-			camera = (Camera)method.invoke(voPlugin);
+		JSONObject json = new JSONObject();
+		json.put("uri", Uri.fromFile(file).toString());
+		json.put("width", imageData.getWidth());
+		json.put("height", imageData.getHeight());
+		return new PluginResult(PluginResult.Status.OK, json);
+	}
 
-		} catch (IllegalArgumentException e) { // exception handling omitted for brevity
-			//e.printStackTrace();
-		} catch (IllegalAccessException e) { // exception handling omitted for brevity
-			//e.printStackTrace();
-		} catch (InvocationTargetException e) { // exception handling omitted for brevity
-			//e.printStackTrace();
+	/**
+	 * Encoded image as binary results. Without a chunkSize the bytes are the result, else
+	 * each chunk is sent as it is encoded and the result is {size, width, height}.
+	 */
+	private PluginResult sendImageBytes(Bitmap imageData, SnapshotOptions options, JSONObject metrics,
+										CallbackContext callbackContext) throws IOException, JSONException {
+		if (options.chunkSize <= 0) {
+			return new PluginResult(PluginResult.Status.OK, encodeImageBytes(imageData, options, metrics));
 		}
 
-		return camera;
-	}
+		ChunkedResultStream out = new ChunkedResultStream(callbackContext, options.chunkSize);
+		compress(imageData, options, out, metrics);
+		out.flush();
+		metrics.put("size", out.getSize());
 
-	private int getActiveVOCameraId() {
-		//reflectively access VideoOverlay plugin to get camera id of running camera
+		JSONObject json = new JSONObject();
+		json.put("size", out.getSize());
+		json.put("width", imageData.getWidth());
+		json.put("height", imageData.getHeight());
+		return new PluginResult(PluginResult.Status.OK, json);
+	}
 
-		int cameraId = -1;
+	/**
+	 * Sends the bytes written to it as binary results of chunkSize bytes, keeping the callback.
+	 */
+	static class ChunkedResultStream extends OutputStream {
+		private final CallbackContext callbackContext;
+		private final byte[] chunk;
+		private int count = 0;
+		private int size = 0;
 
-		CordovaPlugin voPlugin = getVOPlugin();
-		if (voPlugin == null) {
-			return cameraId;
+		ChunkedResultStream(CallbackContext callbackContext, int chunkSize) {
+			this.callbackContext = callbackContext;
+			this.chunk = new byte[chunkSize];
 		}
 
-		Method method = null;
+		@Override
+		public void write(int b) {
+			chunk[count++] = (byte) b;
+			size++;
+			if (count == chunk.length) {
+				flush();
+			}
+		}
 
-		try {
-			method = voPlugin.getClass().getMethod("getActiveCameraId");
-		} catch (SecurityException e) {
-			//e.printStackTrace();
-		} catch (NoSuchMethodException e) {
-			//e.printStackTrace();
+		@Override
+		public void write(byte[] b, int off, int len) {
+			while (len > 0) {
+				int n = Math.min(len, chunk.length - count);
+				System.arraycopy(b, off, chunk, count, n);
+				count += n;
+				size += n;
+				off += n;
+				len -= n;
+				if (count == chunk.length) {
+					flush();
+				}
+			}
 		}
 
-		try {
-			if (method == null) return cameraId;
+		@Override
+		public void flush() {
+			if (count == 0) {
+				return;
+			}
+			byte[] data = new byte[count];
+			System.arraycopy(chunk, 0, data, 0, count);
+			count = 0;
+			sendChunk(data);
+		}
 
-			cameraId = (Integer)method.invoke(voPlugin);
+		void sendChunk(byte[] data) {
+			PluginResult result = new PluginResult(PluginResult.Status.OK, data);
+			result.setKeepCallback(true);
+			callbackContext.sendPluginResult(result);
+		}
 
-		} catch (IllegalArgumentException e) { // exception handling omitted for brevity
-			//e.printStackTrace();
-		} catch (IllegalAccessException e) { // exception handling omitted for brevity
-			//e.printStackTrace();
-		} catch (InvocationTargetException e) { // exception handling omitted for brevity
-			//e.printStackTrace();
+		int getSize() {
+			return size;
 		}
+	}
 
-		return cameraId;
+	//----------------------------------------------------------------------------
+	private boolean isVOPluginInstalled() {
+		return getCameraSession() != null;
 	}
 
-	private TextureView getVOCameraView() {
-		//reflectively access VideoOverlay plugin for the scale of pictureSize to previewSize setting
+	//resolved once, null when the VideoOverlay plugin is not installed
+	private CameraSession getCameraSession() {
+		if (cameraSession == null) {
+			CordovaPlugin voPlugin = webView.getPluginManager().getPlugin("videoOverlay");
+			if (voPlugin instanceof CameraSession) {
+				cameraSession = (CameraSession) voPlugin;
+			}
+		}
+		return cameraSession;
+	}
 
-		CordovaPlugin voPlugin = getVOPlugin();
-		if (voPlugin == null) {
+	private boolean isVOCameraRunning() {
+		//not every camera engine exposes a legacy Camera
+		CameraSession session = getCameraSession();
+		return session != null && session.isCameraRunning();
+	}
+
+	/**
+	 * Copy the camera image shown by a SurfaceView, waits for the copy on the calling
+	 * thread, the snapshot executor. PixelCopy is done by the render thread so the wait
+	 * can not deadlock.
+	 *
+	 * @return null before Android N or when the copy fails
+	 */
+	@TargetApi(Build.VERSION_CODES.N)
+	private Bitmap copySurfaceViewBitmap(SurfaceView surfaceView) {
+		if (Build.VERSION.SDK_INT < Build.VERSION_CODES.N || surfaceView == null ||
+				surfaceView.getWidth() == 0 || surfaceView.getHeight() == 0) {
 			return null;
 		}
 
-		Method method = null;
+		if (pixelCopyThread == null) {
+			pixelCopyThread = new HandlerThread("ezAR-pixelcopy");
+			pixelCopyThread.start();
+		}
+
+		Bitmap bitmap = bitmapPool.acquire(surfaceView.getWidth(), surfaceView.getHeight());
+		final int[] copyResult = {PixelCopy.ERROR_UNKNOWN};
+		final CountDownLatch copied = new CountDownLatch(1);
+		PixelCopy.request(surfaceView, bitmap,
+				new PixelCopy.OnPixelCopyFinishedListener() {
+					@Override
+					public void onPixelCopyFinished(int result) {
+						copyResult[0] = result;
+						copied.countDown();
+					}
+				},
+				new Handler(pixelCopyThread.getLooper()));
 
 		try {
-			method = voPlugin.getClass().getMethod("getCameraView");
-		} catch (SecurityException e) {
-			//e.printStackTrace();
-		} catch (NoSuchMethodException e) {
-			//e.printStackTrace();
+			if (!copied.await(PIXEL_COPY_TIMEOUT, TimeUnit.MILLISECONDS)) {
+				//the copy may still write into the bitmap, leave it to the garbage collector
+				Log.w(TAG, "PixelCopy timed out");
+				return null;
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			return null;
 		}
 
-		TextureView view = null;
-		try {
-			if (method == null) return null;
+		if (copyResult[0] != PixelCopy.SUCCESS) {
+			Log.w(TAG, "PixelCopy failed: " + copyResult[0]);
+			bitmapPool.release(bitmap);
+			return null;
+		}
+		return bitmap;
+	}
 
-			view = (TextureView)method.invoke(voPlugin);
+	private String getVOPreviewHost() {
+		CameraSession session = getCameraSession();
+		return session != null ? session.getPreviewHost() : null;
+	}
 
-		} catch (IllegalArgumentException e) { // exception handling omitted for brevity
-			//e.printStackTrace();
-		} catch (IllegalAccessException e) { // exception handling omitted for brevity
-			//e.printStackTrace();
-		} catch (InvocationTargetException e) { // exception handling omitted for brevity
-			//e.printStackTrace();
-		}
+	private SurfaceView getVOCameraSurfaceView() {
+		CameraSession session = getCameraSession();
+		return session != null ? session.getCameraSurfaceView() : null;
+	}
 
-		return view;
+	private TextureView getVOCameraView() {
+		CameraSession session = getCameraSession();
+		return session != null ? session.getCameraView() : null;
 	}
 
 }
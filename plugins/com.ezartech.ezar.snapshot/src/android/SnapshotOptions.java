@@ -0,0 +1,90 @@
+package com.ezartech.ezar.snapshot;
+
+import android.graphics.Bitmap.CompressFormat;
+import android.os.Build;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+
+/**
+ * Options of the snapshot action, see snapshot.js for the argument order.
+ */
+public class SnapshotOptions {
+
+	//encodings
+	public static final int ENCODING_JPEG = 0;
+	public static final int ENCODING_PNG = 1;
+	public static final int ENCODING_WEBP = 2;           //lossy
+	public static final int ENCODING_WEBP_LOSSLESS = 3;
+
+	//result types
+	public static final int RESULT_DATA_URL = 0;  //Base64 string, JS turns it into a data url
+	public static final int RESULT_FILE_URI = 1;  //image file, {uri, width, height}
+	public static final int RESULT_ARRAY_BUFFER = 2;  //encoded bytes, an ArrayBuffer in JS
+
+	public CompressFormat format = CompressFormat.JPEG;
+	public boolean saveToPhotoAlbum = false;
+	public int resultType = RESULT_DATA_URL;
+	public String filePath;  //RESULT_FILE_URI target, null for a new file in the app cache
+	public int chunkSize = 0;  //RESULT_ARRAY_BUFFER bytes per message, 0 for a single message
+	public int quality = 100;  //0-100, ignored by PNG and lossless WEBP
+	public int maxDimension = 0;  //max width and height of the image, 0 for no limit
+	public double scale = 1.0;  //of the screen resolution, only downscaling
+
+
+	static SnapshotOptions fromArgs(JSONArray args) throws JSONException {
+		SnapshotOptions options = new SnapshotOptions();
+		options.quality = Math.max(0, Math.min(100, args.optInt(5, 100)));
+		options.setEncoding(args.getInt(0));
+		options.saveToPhotoAlbum = args.getBoolean(1);
+		options.resultType = args.optInt(2, RESULT_DATA_URL);
+		options.filePath = args.isNull(3) ? null : args.optString(3, null);
+		options.chunkSize = Math.max(0, args.optInt(4, 0));
+		options.maxDimension = Math.max(0, args.optInt(6, 0));
+		options.scale = args.optDouble(7, 1.0);
+		return options;
+	}
+
+	void setEncoding(int encoding) {
+		switch (encoding) {
+			case ENCODING_PNG:
+				format = CompressFormat.PNG;
+				break;
+			case ENCODING_WEBP:
+				format = Build.VERSION.SDK_INT >= Build.VERSION_CODES.R ? CompressFormat.WEBP_LOSSY : CompressFormat.WEBP;
+				if (format == CompressFormat.WEBP && quality == 100) {
+					quality = 99;  //before R WEBP at 100 is lossless
+				}
+				break;
+			case ENCODING_WEBP_LOSSLESS:
+				if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.R) {
+					format = CompressFormat.WEBP_LOSSLESS;
+				} else {
+					format = CompressFormat.WEBP;
+					quality = 100;
+				}
+				break;
+			default:
+				format = CompressFormat.JPEG;
+		}
+	}
+
+	/**
+	 * @return factor to scale a width x height image by, at most 1
+	 */
+	double getScale(int width, int height) {
+		double result = scale > 0 && scale < 1.0 ? scale : 1.0;
+		int dimension = Math.max(width, height);
+		if (maxDimension > 0 && dimension * result > maxDimension) {
+			result = (double) maxDimension / dimension;
+		}
+		return result;
+	}
+
+	String getFileExtension() {
+		if (format == CompressFormat.PNG) {
+			return ".png";
+		}
+		return format == CompressFormat.JPEG ? ".jpg" : ".webp";
+	}
+}
@@ -0,0 +1,63 @@
+package com.ezartech.ezar.snapshot;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+public class ChunkedResultStreamTest {
+
+	private final List<byte[]> chunks = new ArrayList<byte[]>();
+	private final Snapshot.ChunkedResultStream out = new Snapshot.ChunkedResultStream(null, 1000) {
+		@Override
+		void sendChunk(byte[] data) {
+			chunks.add(data);
+		}
+	};
+
+	@Test
+	public void splitsWritesAcrossChunkBoundaries() {
+		byte[] image = bytes(2500);
+		out.write(image, 0, 700);
+		out.write(image, 700, 1799);
+		out.write(image[2499]);
+		out.flush();
+
+		assertEquals(3, chunks.size());
+		assertEquals(1000, chunks.get(0).length);
+		assertEquals(1000, chunks.get(1).length);
+		assertEquals(500, chunks.get(2).length);
+		assertEquals(2500, out.getSize());
+		assertArrayEquals(image, join());
+	}
+
+	@Test
+	public void exactMultipleSendsNoEmptyChunk() {
+		out.write(bytes(2000), 0, 2000);
+		out.flush();
+		out.flush();
+
+		assertEquals(2, chunks.size());
+		assertEquals(2000, out.getSize());
+	}
+
+	private byte[] join() {
+		ByteArrayOutputStream joined = new ByteArrayOutputStream();
+		for (byte[] chunk : chunks) {
+			joined.write(chunk, 0, chunk.length);
+		}
+		return joined.toByteArray();
+	}
+
+	private static byte[] bytes(int length) {
+		byte[] bytes = new byte[length];
+		for (int i = 0; i < length; i++) {
+			bytes[i] = (byte) (i * 31);
+		}
+		return bytes;
+	}
+}
@@ -0,0 +1,109 @@
+package com.ezartech.ezar.snapshot;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import android.graphics.Bitmap.CompressFormat;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.junit.Test;
+
+public class SnapshotOptionsTest {
+
+	@Test
+	public void argsOfOlderScriptsDefaultToADataUrl() throws JSONException {
+		SnapshotOptions options = SnapshotOptions.fromArgs(new JSONArray("[1, true]"));
+
+		assertTrue(options.saveToPhotoAlbum);
+		assertEquals(SnapshotOptions.RESULT_DATA_URL, options.resultType);
+		assertNull(options.filePath);
+		assertEquals(".png", options.getFileExtension());
+	}
+
+	@Test
+	public void fileUriWithoutPathWritesToTheCache() throws JSONException {
+		SnapshotOptions options = SnapshotOptions.fromArgs(new JSONArray("[0, false, 1, null, 0]"));
+
+		assertFalse(options.saveToPhotoAlbum);
+		assertEquals(SnapshotOptions.RESULT_FILE_URI, options.resultType);
+		assertNull(options.filePath);
+		assertEquals(".jpg", options.getFileExtension());
+	}
+
+	@Test
+	public void fileUriWithPath() throws JSONException {
+		SnapshotOptions options = SnapshotOptions.fromArgs(
+				new JSONArray("[0, false, 1, \"file:///data/user/0/app/files/moon.jpg\", 0]"));
+
+		assertEquals(SnapshotOptions.RESULT_FILE_URI, options.resultType);
+		assertEquals("file:///data/user/0/app/files/moon.jpg", options.filePath);
+	}
+
+	@Test
+	public void qualityIsClampedAndDefaultsToBest() throws JSONException {
+		assertEquals(100, SnapshotOptions.fromArgs(new JSONArray("[0, false]")).quality);
+		assertEquals(0, SnapshotOptions.fromArgs(new JSONArray("[0, false, 0, null, 0, -5]")).quality);
+		assertEquals(100, SnapshotOptions.fromArgs(new JSONArray("[0, false, 0, null, 0, 120]")).quality);
+		assertEquals(0, SnapshotOptions.fromArgs(new JSONArray("[0, false, 0, null, 0, 80, -1]")).maxDimension);
+	}
+
+	//the stubbed Build.VERSION.SDK_INT is 0, these are the encodings before R
+	@Test
+	public void lossyWebpAvoidsTheLosslessQuality() throws JSONException {
+		SnapshotOptions options = SnapshotOptions.fromArgs(new JSONArray("[2, false]"));
+		assertEquals(CompressFormat.WEBP, options.format);
+		assertEquals(99, options.quality);
+		assertEquals(".webp", options.getFileExtension());
+
+		options = SnapshotOptions.fromArgs(new JSONArray("[2, false, 0, null, 0, 80]"));
+		assertEquals(80, options.quality);
+	}
+
+	@Test
+	public void losslessWebpIsWebpAtFullQuality() throws JSONException {
+		SnapshotOptions options = SnapshotOptions.fromArgs(new JSONArray("[3, false, 0, null, 0, 80]"));
+		assertEquals(CompressFormat.WEBP, options.format);
+		assertEquals(100, options.quality);
+	}
+
+	@Test
+	public void unknownEncodingIsJpeg() {
+		SnapshotOptions options = new SnapshotOptions();
+		options.setEncoding(1);
+		options.setEncoding(7);
+		assertEquals(CompressFormat.JPEG, options.format);
+	}
+
+	@Test
+	public void scaleOnlyDownscales() {
+		SnapshotOptions options = new SnapshotOptions();
+		assertEquals(1.0, options.getScale(1080, 1920), 0);
+
+		options.scale = 2.0;
+		assertEquals(1.0, options.getScale(1080, 1920), 0);
+
+		options.scale = 0;
+		assertEquals(1.0, options.getScale(1080, 1920), 0);
+
+		options.scale = 0.5;
+		assertEquals(0.5, options.getScale(1080, 1920), 0);
+	}
+
+	@Test
+	public void maxDimensionLimitsTheLongerSide() {
+		SnapshotOptions options = new SnapshotOptions();
+		options.maxDimension = 960;
+		assertEquals(0.5, options.getScale(1080, 1920), 1e-9);
+		assertEquals(0.5, options.getScale(1920, 1080), 1e-9);
+		assertEquals(1.0, options.getScale(540, 960), 0);
+
+		//the smaller of the two limits wins
+		options.scale = 0.25;
+		assertEquals(0.25, options.getScale(1080, 1920), 0);
+		options.scale = 0.75;
+		assertEquals(0.5, options.getScale(1080, 1920), 1e-9);
+	}
+}
@@ -0,0 +1,86 @@
+/**
+ * tests.js
+ * Copyright 2015, ezAR Technologies
+ * Licensed under a modified MIT license, see LICENSE or http://ezartech.com/ezarstartupkit-license
+ *
+ * @file Auto tests of the snapshot api for cordova-plugin-test-framework.
+ * @author @wayne_parrott, @vridosh, @kwparrott
+ */
+
+/* jshint jasmine: true */
+
+exports.defineAutoTests = function() {
+
+    var CHUNK_SIZE = 4096;
+    var PNG_SIGNATURE = [0x89, 0x50, 0x4e, 0x47, 0x0d, 0x0a, 0x1a, 0x0a];
+    var PNG_TRAILER = [0x49, 0x45, 0x4e, 0x44, 0xae, 0x42, 0x60, 0x82];  //IEND chunk type and crc
+
+    var unexpectedError = function(done) {
+        return function(error) {
+            expect("error callback: " + error).toBeUndefined();
+            done();
+        };
+    };
+
+    var bytesAt = function(buffer, offset, length) {
+        return Array.prototype.slice.call(new Uint8Array(buffer, offset, length));
+    };
+
+    //a whole PNG: chunks joined out of order or lost would break its start or end
+    var expectPng = function(buffer) {
+        expect(buffer instanceof ArrayBuffer).toBe(true);
+        expect(bytesAt(buffer, 0, 8)).toEqual(PNG_SIGNATURE);
+        expect(bytesAt(buffer, buffer.byteLength - 8, 8)).toEqual(PNG_TRAILER);
+    };
+
+    describe('Snapshot ArrayBuffer result (ezar.snapshot)', function() {
+
+        it("snapshot.spec.1 returns the image as a single ArrayBuffer", function(done) {
+            ezar.snapshot(function(buffer) {
+                expectPng(buffer);
+                done();
+            }, unexpectedError(done), {
+                encoding: ezar.ImageEncoding.PNG,
+                resultType: ezar.ResultType.ARRAY_BUFFER
+            });
+        });
+
+        it("snapshot.spec.2 joins the chunks into a single ArrayBuffer", function(done) {
+            ezar.snapshot(function(buffer) {
+                expect(buffer.byteLength).toBeGreaterThan(CHUNK_SIZE);
+                expectPng(buffer);
+                done();
+            }, unexpectedError(done), {
+                encoding: ezar.ImageEncoding.PNG,
+                resultType: ezar.ResultType.ARRAY_BUFFER,
+                chunkSize: CHUNK_SIZE
+            });
+        });
+
+        it("snapshot.spec.3 passes each chunk to onChunk, then the size", function(done) {
+            var chunks = [];
+            ezar.snapshot(function(result) {
+                var size = 0;
+                for (var i = 0; i < chunks.length; i++) {
+                    if (i < chunks.length - 1) {
+                        expect(chunks[i].byteLength).toBe(CHUNK_SIZE);
+                    }
+                    size += chunks[i].byteLength;
+                }
+                expect(chunks.length).toBeGreaterThan(1);
+                expect(result.size).toBe(size);
+                expect(result.width).toBeGreaterThan(0);
+                expect(result.height).toBeGreaterThan(0);
+                expect(bytesAt(chunks[0], 0, 8)).toEqual(PNG_SIGNATURE);
+                done();
+            }, unexpectedError(done), {
+                encoding: ezar.ImageEncoding.PNG,
+                resultType: ezar.ResultType.ARRAY_BUFFER,
+                chunkSize: CHUNK_SIZE,
+                onChunk: function(chunk) {
+                    chunks.push(chunk);
+                }
+            });
+        });
+    });
+};
@@ -23,7 +23,33 @@ module.exports = (function() {
      *
      * options = {
      *   "saveToPhotoAlbum": true, 
-     *   "encoding": _snapshot.ImageEncoding.JPEG }
+     *   "encoding": _snapshot.ImageEncoding.JPEG,
+     *   "quality": 100,
+     *   "maxDimension": 0,
+     *   "scale": 1.0,
+     *   "resultType": _snapshot.ResultType.DATA_URL,
+     *   "filePath": null,
+     *   "chunkSize": 0,
+     *   "onChunk": null }
+     *
+     * resultType FILE_URI streams the image to filePath, or to a new file in
+     * the app cache when null, and returns {uri, width, height} rather than a
+     * data url. The caller deletes the file when done with it.
+     *
+     * resultType ARRAY_BUFFER returns the encoded bytes as an ArrayBuffer.
+     * With a chunkSize the bytes arrive in ArrayBuffers of at most chunkSize
+     * bytes. Each chunk is passed to onChunk when given, and successCallback
+     * receives {size, width, height}; otherwise the chunks are joined into a
+     * single ArrayBuffer for successCallback.
+     *
+     * quality (0-100) applies to JPEG and WEBP. maxDimension limits the
+     * larger side of the image, 0 for no limit, and scale (at most 1) is a
+     * factor of the screen resolution; the image is downscaled once before
+     * encoding.
+     *
+     * successCallback(result, metrics) receives the encode metrics:
+     * {width, height, sourceWidth, sourceHeight, scaleTime, encodeTime, size},
+     * times in ms, size in bytes of the encoded image.
      */
     
     _snapshot.snapshot = function(successCallback,errorCallback, options) {
@@ -33,13 +59,48 @@ module.exports = (function() {
         var getValue = argscheck.getValue;
         var encoding = getValue(options.encoding, _snapshot.ImageEncoding.JPEG);
         var saveToPhotoAlbum = !!options.saveToPhotoAlbum;
+        var resultType = getValue(options.resultType, _snapshot.ResultType.DATA_URL);
+        var filePath = getValue(options.filePath, null);
+        var chunkSize = getValue(options.chunkSize, 0);
+        var onChunk = options.onChunk;
+        var quality = getValue(options.quality, 100);
+        var maxDimension = getValue(options.maxDimension, 0);
+        var scale = getValue(options.scale, 1.0);
+        var chunks = [];
         
-        var onSuccess = function(imageData) {
-            var encoding = encoding == _snapshot.ImageEncoding.JPEG ? 
-                _snapshot.ImageEncoding.JPEG : _snapshot.ImageEncoding.PNG;
-            var dataUrl = "data:image/" + encoding + ";base64," + imageData;
+        var onSuccess = function(imageData, metrics) {
+            if (imageData instanceof ArrayBuffer && chunkSize > 0) {
+                if (onChunk) {
+                    onChunk(imageData);
+                } else {
+                    chunks.push(imageData);
+                }
+                return;
+            }
+
+            if (resultType == _snapshot.ResultType.ARRAY_BUFFER && chunkSize > 0 && !onChunk) {
+                var bytes = new Uint8Array(imageData.size);
+                var offset = 0;
+                for (var i = 0; i < chunks.length; i++) {
+                    bytes.set(new Uint8Array(chunks[i]), offset);
+                    offset += chunks[i].byteLength;
+                }
+                chunks = [];
+                imageData = bytes.buffer;
+            }
+
+            if (resultType != _snapshot.ResultType.DATA_URL) {
+                if (successCallback) {
+                      successCallback(imageData, metrics);
+                }
+                return;
+            }
+
+            var mimeType = encoding == _snapshot.ImageEncoding.PNG ? "png" :
+                encoding == _snapshot.ImageEncoding.JPEG ? "jpeg" : "webp";
+            var dataUrl = "data:image/" + mimeType + ";base64," + imageData;
             if (successCallback) {
-                  successCallback(dataUrl);
+                  successCallback(dataUrl, metrics);
             }
         };
                   
@@ -47,13 +108,22 @@ module.exports = (function() {
              errorCallback,
              "snapshot",
              "snapshot",
-            [encoding, saveToPhotoAlbum]);
+            [encoding, saveToPhotoAlbum, resultType, filePath, chunkSize,
+             quality, maxDimension, scale]);
 
     }
                   
     _snapshot.ImageEncoding = {
         JPEG: 0,             // Return JPEG encoded image
-        PNG: 1               // Return PNG encoded image
+        PNG: 1,              // Return PNG encoded image
+        WEBP: 2,             // Return lossy WEBP encoded image
+        WEBP_LOSSLESS: 3     // Return lossless WEBP encoded image
+    };
+
+    _snapshot.ResultType = {
+        DATA_URL: 0,         // Return a base64 data url
+        FILE_URI: 1,         // Return {uri, width, height} of an image file
+        ARRAY_BUFFER: 2      // Return the encoded image as an ArrayBuffer
     };
 
     
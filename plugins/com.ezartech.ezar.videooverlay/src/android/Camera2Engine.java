@@ -0,0 +1,831 @@
+/**
+ * Copyright 2016, ezAR Technologies
+ * http://ezartech.com
+ *
+ * By @wayne_parrott, @vridosh, @kwparrott
+ *
+ * Licensed under a modified MIT license.
+ * Please see LICENSE or http://ezartech.com/ezarstartupkit-license for more information
+ *
+ */
+package com.ezartech.ezar.videooverlay;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+import android.annotation.TargetApi;
+import android.content.Context;
+import android.graphics.ImageFormat;
+import android.graphics.Rect;
+import android.graphics.SurfaceTexture;
+import android.hardware.Camera;
+import android.hardware.camera2.CameraAccessException;
+import android.hardware.camera2.CameraCaptureSession;
+import android.hardware.camera2.CameraCharacteristics;
+import android.hardware.camera2.CameraDevice;
+import android.hardware.camera2.CameraManager;
+import android.hardware.camera2.CaptureRequest;
+import android.hardware.camera2.params.MeteringRectangle;
+import android.hardware.camera2.params.StreamConfigurationMap;
+import android.media.Image;
+import android.media.ImageReader;
+import android.os.Build;
+import android.os.Handler;
+import android.os.SystemClock;
+import android.util.Log;
+import android.util.Range;
+import android.util.Rational;
+import android.util.Size;
+import android.util.SizeF;
+import android.view.Surface;
+
+/**
+ * {@link CameraEngine} built on the Camera2 {@link CameraDevice}/{@link CameraCaptureSession} api.
+ * Device and session callbacks are delivered on the camera thread's handler so they are
+ * serialized with the commands {@link CameraController} issues.
+ */
+@TargetApi(Build.VERSION_CODES.LOLLIPOP)
+public class Camera2Engine implements CameraEngine {
+	private static final String TAG = "ezAR";
+
+	private final CameraManager cameraManager;
+	private final Handler cameraHandler;
+	private final LatencyTracer tracer;
+
+	private CameraDevice cameraDevice;
+	private CameraCaptureSession captureSession;
+	private CaptureRequest.Builder previewRequestBuilder;
+	private PreviewSurface previewHost;
+	private Surface previewSurface;
+	private CameraCapabilities.Size previewSize;
+	private PowerProfile powerProfile = PowerProfile.BALANCED;
+	private NightSkyMode nightSkyMode;
+	private int viewWidth;
+	private int viewHeight;
+	private Rect activeArraySize;
+	private float maxDigitalZoom = 1.0f;
+	private double zoom = 1.0;
+
+	//frames for the FramePipeline are read from an ImageReader and converted to NV21
+	private static final int FRAME_BUFFER_COUNT = 4;
+	private FramePipeline framePipeline;
+	private ImageReader imageReader;
+	private FrameBufferPool frameBufferPool;
+	private List<CameraCapabilities.Size> yuvSizes;
+	private final SizeSelector sizeSelector = new SizeSelector();
+	private long frameSequence = 0;
+	private boolean realtimeTimestamps; //sensor timestamps are on the elapsedRealtimeNanos clock
+	private byte[] chromaRow;     //scratch of copyToNV21, camera thread only
+
+	private CameraCapabilities activeCapabilities;
+	private Callback activeCallback;
+
+	//incremented by each start & stop, lets late device callbacks detect they are stale
+	private int generation = 0;
+	//incremented by each session created, paused or closed, lets late session callbacks
+	//detect they were superseded
+	private int sessionGeneration = 0;
+	private boolean started = false;
+
+
+	public Camera2Engine(Context context, Handler cameraHandler, LatencyTracer tracer) {
+		this.cameraManager = (CameraManager) context.getSystemService(Context.CAMERA_SERVICE);
+		this.cameraHandler = cameraHandler;
+		this.tracer = tracer;
+	}
+
+	/**
+	 * Camera2 is only worth using when every camera is backed by a real Camera2 HAL.
+	 * LEGACY hardware level devices run Camera2 through the same shim as the old api.
+	 */
+	public static boolean isSupported(Context context) {
+		if (Build.VERSION.SDK_INT < Build.VERSION_CODES.LOLLIPOP) {
+			return false;
+		}
+
+		CameraManager manager = (CameraManager) context.getSystemService(Context.CAMERA_SERVICE);
+		try {
+			String[] ids = manager.getCameraIdList();
+			if (ids.length == 0) {
+				return false;
+			}
+			for (String id : ids) {
+				Integer level = manager.getCameraCharacteristics(id)
+						.get(CameraCharacteristics.INFO_SUPPORTED_HARDWARE_LEVEL);
+				if (level == null || level == CameraCharacteristics.INFO_SUPPORTED_HARDWARE_LEVEL_LEGACY) {
+					return false;
+				}
+			}
+		} catch (CameraAccessException e) {
+			Log.e(TAG, "Unable to query camera2 hardware level", e);
+			return false;
+		} catch (RuntimeException e) {
+			Log.e(TAG, "Unable to query camera2 hardware level", e);
+			return false;
+		}
+
+		return true;
+	}
+
+	@Override
+	public String getName() {
+		return "camera2";
+	}
+
+	@Override
+	public int getNumberOfCameras() {
+		try {
+			return cameraManager.getCameraIdList().length;
+		} catch (CameraAccessException e) {
+			Log.e(TAG, "Unable to list cameras", e);
+			return 0;
+		}
+	}
+
+	@Override
+	public CameraCapabilities probe(int cameraId) {
+		CameraCharacteristics characteristics = getCharacteristics(cameraId);
+
+		CameraCapabilities capabilities = new CameraCapabilities();
+		capabilities.cameraId = cameraId;
+
+		Integer facing = characteristics.get(CameraCharacteristics.LENS_FACING);
+		capabilities.facing = facing != null && facing == CameraCharacteristics.LENS_FACING_FRONT ?
+				Camera.CameraInfo.CAMERA_FACING_FRONT : Camera.CameraInfo.CAMERA_FACING_BACK;
+		Integer orientation = characteristics.get(CameraCharacteristics.SENSOR_ORIENTATION);
+		capabilities.orientation = orientation != null ? orientation : 0;
+
+		float[] focalLengths = characteristics.get(CameraCharacteristics.LENS_INFO_AVAILABLE_FOCAL_LENGTHS);
+		SizeF physicalSize = characteristics.get(CameraCharacteristics.SENSOR_INFO_PHYSICAL_SIZE);
+		if (focalLengths != null && focalLengths.length > 0 && physicalSize != null) {
+			capabilities.horizontalViewAngle =
+					(float) Math.toDegrees(2 * Math.atan(physicalSize.getWidth() / (2 * focalLengths[0])));
+		}
+
+		Float maxZoom = characteristics.get(CameraCharacteristics.SCALER_AVAILABLE_MAX_DIGITAL_ZOOM);
+		if (maxZoom != null && maxZoom > 1.0f) {
+			capabilities.maxZoom = maxZoom;
+			capabilities.zoom = 1.0;
+		}
+
+		StreamConfigurationMap map = characteristics.get(CameraCharacteristics.SCALER_STREAM_CONFIGURATION_MAP);
+		if (map != null) {
+			capabilities.previewSizes = toSizes(map.getOutputSizes(SurfaceTexture.class));
+			capabilities.pictureSizes = toSizes(map.getOutputSizes(ImageFormat.JPEG));
+		}
+
+		Range<Integer>[] fpsRanges = characteristics.get(CameraCharacteristics.CONTROL_AE_AVAILABLE_TARGET_FPS_RANGES);
+		if (fpsRanges != null) {
+			for (Range<Integer> range : fpsRanges) {
+				capabilities.fpsRanges.add(new int[] {range.getLower() * 1000, range.getUpper() * 1000});
+			}
+		}
+
+		int[] afModes = characteristics.get(CameraCharacteristics.CONTROL_AF_AVAILABLE_MODES);
+		if (afModes != null) {
+			for (int mode : afModes) {
+				String focusMode = toFocusMode(mode);
+				if (focusMode != null) {
+					capabilities.focusModes.add(focusMode);
+				}
+			}
+		}
+		//a lens that can focus closer than infinity can be driven to infinity manually
+		Float minFocusDistance = characteristics.get(CameraCharacteristics.LENS_INFO_MINIMUM_FOCUS_DISTANCE);
+		if (minFocusDistance != null && minFocusDistance > 0 &&
+				capabilities.hasFocusMode(Camera.Parameters.FOCUS_MODE_FIXED)) {
+			capabilities.focusModes.add(Camera.Parameters.FOCUS_MODE_INFINITY);
+		}
+
+		Range<Integer> compensationRange = characteristics.get(CameraCharacteristics.CONTROL_AE_COMPENSATION_RANGE);
+		Rational compensationStep = characteristics.get(CameraCharacteristics.CONTROL_AE_COMPENSATION_STEP);
+		if (compensationRange != null && compensationStep != null) {
+			capabilities.minExposureCompensation = compensationRange.getLower();
+			capabilities.maxExposureCompensation = compensationRange.getUpper();
+			capabilities.exposureCompensationStep = compensationStep.floatValue();
+		}
+		Integer maxMeteringRegions = characteristics.get(CameraCharacteristics.CONTROL_MAX_REGIONS_AE);
+		capabilities.maxMeteringAreas = maxMeteringRegions != null ? maxMeteringRegions : 0;
+		Integer maxFocusRegions = characteristics.get(CameraCharacteristics.CONTROL_MAX_REGIONS_AF);
+		capabilities.maxFocusAreas = maxFocusRegions != null ? maxFocusRegions : 0;
+		//AE and AWB lock are guaranteed above the LEGACY hardware level, see isSupported
+		capabilities.autoExposureLockSupported = true;
+		capabilities.autoWhiteBalanceLockSupported = true;
+
+		return capabilities;
+	}
+
+	@Override
+	public void startPreview(CameraCapabilities capabilities, PreviewSurface surface,
+							 int viewWidth, int viewHeight,
+							 Callback callback) {
+		int startGeneration = ++generation;
+		int cameraId = capabilities.cameraId;
+
+		try {
+			long startTime = LatencyTracer.now();
+			String id = getCameraIdString(cameraId);
+			CameraCharacteristics characteristics = cameraManager.getCameraCharacteristics(id);
+			activeArraySize = characteristics.get(CameraCharacteristics.SENSOR_INFO_ACTIVE_ARRAY_SIZE);
+			Float maxZoom = characteristics.get(CameraCharacteristics.SCALER_AVAILABLE_MAX_DIGITAL_ZOOM);
+			maxDigitalZoom = maxZoom != null ? maxZoom : 1.0f;
+			StreamConfigurationMap map = characteristics.get(CameraCharacteristics.SCALER_STREAM_CONFIGURATION_MAP);
+			yuvSizes = toSizes(map != null ? map.getOutputSizes(ImageFormat.YUV_420_888) : null);
+			realtimeTimestamps = Build.VERSION.SDK_INT >= Build.VERSION_CODES.M &&
+					Integer.valueOf(CameraCharacteristics.SENSOR_INFO_TIMESTAMP_SOURCE_REALTIME).equals(
+							characteristics.get(CameraCharacteristics.SENSOR_INFO_TIMESTAMP_SOURCE));
+			activeCapabilities = capabilities;
+			activeCallback = callback;
+			this.viewWidth = viewWidth;
+			this.viewHeight = viewHeight;
+
+			previewHost = surface;
+			CameraCapabilities.Size size = selectPreviewSize(capabilities);
+			tracer.record(LatencyTracer.INIT_CAMERA, startTime);
+			setPreviewSize(size);
+
+			cameraManager.openCamera(id,
+					createDeviceCallback(startGeneration, LatencyTracer.now(), capabilities, callback),
+					cameraHandler);
+
+		} catch (CameraAccessException e) {
+			Log.e(TAG, "Unable to open camera " + cameraId, e);
+			callback.onError(e.getMessage());
+		} catch (RuntimeException e) { //includes SecurityException
+			Log.e(TAG, "Unable to open camera " + cameraId, e);
+			callback.onError(e.getMessage());
+		}
+	}
+
+	@Override
+	public void stopPreview() {
+		generation++;
+		closeCamera();
+	}
+
+	@Override
+	public void pausePreview() {
+		sessionGeneration++;
+		if (captureSession != null) {
+			captureSession.close();
+			captureSession = null;
+		}
+		closeImageReader();
+		if (previewSurface != null) {
+			previewHost.releaseSurface(previewSurface);
+			previewSurface = null;
+		}
+		previewHost = null;
+	}
+
+	@Override
+	public boolean resumePreview(PreviewSurface surface, int viewWidth, int viewHeight) {
+		CameraCapabilities.Size previousSize = previewSize;
+		this.viewWidth = viewWidth;
+		this.viewHeight = viewHeight;
+
+		previewHost = surface;
+		setPreviewSize(selectPreviewSize(activeCapabilities));
+		reconfigureSession();
+
+		return !previewSize.equals(previousSize);
+	}
+
+	@Override
+	public boolean isStarted() {
+		return started;
+	}
+
+	@Override
+	public int getPreviewWidth() {
+		return previewSize != null ? previewSize.width : 0;
+	}
+
+	@Override
+	public int getPreviewHeight() {
+		return previewSize != null ? previewSize.height : 0;
+	}
+
+	@Override
+	public boolean hasDisplayOrientation() {
+		//camera2 renders sensor oriented buffers, ezAR must rotate the view
+		return false;
+	}
+
+	@Override
+	public void setDisplayOrientation(int degrees) {
+	}
+
+	@Override
+	public boolean setPowerProfile(PowerProfile profile) {
+		PowerProfile previousProfile = powerProfile;
+		powerProfile = profile;
+		if (captureSession == null || profile == previousProfile) {
+			return false;
+		}
+
+		CameraCapabilities.Size size = selectPreviewSize(activeCapabilities);
+		boolean sizeChanged = !size.equals(previewSize);
+
+		if (!sizeChanged && profile.recordingHint == previousProfile.recordingHint) {
+			setFpsRange(previewRequestBuilder, activeCapabilities);
+			try {
+				captureSession.setRepeatingRequest(previewRequestBuilder.build(), null, cameraHandler);
+			} catch (CameraAccessException e) {
+				throw new IllegalStateException("Unable to update fps range", e);
+			}
+			return false;
+		}
+
+		//new stream size or request template, the session outputs must be rebuilt
+		if (sizeChanged) {
+			captureSession.close();
+			captureSession = null;
+			previewHost.releaseSurface(previewSurface);
+			setPreviewSize(size);
+		}
+		reconfigureSession();
+		return sizeChanged;
+	}
+
+	@Override
+	public double setZoom(double newZoom) {
+		zoom = Math.max(1.0, Math.min(newZoom, maxDigitalZoom));
+		if (captureSession == null || previewRequestBuilder == null) {
+			return zoom;
+		}
+
+		previewRequestBuilder.set(CaptureRequest.SCALER_CROP_REGION, computeCropRegion(zoom));
+		//regions are relative to the crop region
+		setFocusAndExposure(previewRequestBuilder, activeCapabilities);
+		try {
+			captureSession.setRepeatingRequest(previewRequestBuilder.build(), null, cameraHandler);
+		} catch (CameraAccessException e) {
+			throw new IllegalStateException("Unable to update zoom", e);
+		}
+		return zoom;
+	}
+
+	@Override
+	public void setNightSkyMode(NightSkyMode mode) {
+		nightSkyMode = mode;
+		if (captureSession == null || previewRequestBuilder == null) {
+			return;
+		}
+
+		setFocusAndExposure(previewRequestBuilder, activeCapabilities);
+		try {
+			captureSession.setRepeatingRequest(previewRequestBuilder.build(), null, cameraHandler);
+		} catch (CameraAccessException e) {
+			throw new IllegalStateException("Unable to update night sky mode", e);
+		}
+	}
+
+	@Override
+	public Camera getCamera() {
+		return null;
+	}
+
+	private CameraDevice.StateCallback createDeviceCallback(final int startGeneration,
+															final long openStart,
+															final CameraCapabilities capabilities,
+															final Callback callback) {
+		return new CameraDevice.StateCallback() {
+			@Override
+			public void onOpened(CameraDevice camera) {
+				if (startGeneration != generation) { //stopped while opening
+					camera.close();
+					return;
+				}
+
+				tracer.record(LatencyTracer.OPEN, openStart);
+				cameraDevice = camera;
+				if (previewHost == null) {
+					//opened without a surface, resumePreview creates the session
+					callback.onPreviewStarted(previewSize.width, previewSize.height);
+					return;
+				}
+				try {
+					createPreviewSession(capabilities, callback, true);
+				} catch (CameraAccessException e) {
+					Log.e(TAG, "Unable to create preview session", e);
+					closeCamera();
+					callback.onError(e.getMessage());
+				}
+			}
+
+			@Override
+			public void onDisconnected(CameraDevice camera) {
+				Log.w(TAG, "Camera disconnected");
+				camera.close();
+				if (startGeneration == generation) {
+					callback.onError("Camera disconnected");
+				}
+			}
+
+			@Override
+			public void onError(CameraDevice camera, int error) {
+				Log.e(TAG, "Camera error: " + error);
+				camera.close();
+				if (startGeneration == generation) {
+					callback.onError("Camera error " + error);
+				}
+			}
+		};
+	}
+
+	/**
+	 * @param notify report onPreviewStarted, false when only the outputs of a running
+	 *               preview change
+	 */
+	private void createPreviewSession(CameraCapabilities capabilities,
+									  final Callback callback,
+									  final boolean notify) throws CameraAccessException {
+		final int startSessionGeneration = ++sessionGeneration;
+
+		//the record template is camera2's counterpart of the legacy recording hint
+		previewRequestBuilder = cameraDevice.createCaptureRequest(
+				powerProfile.recordingHint ? CameraDevice.TEMPLATE_RECORD : CameraDevice.TEMPLATE_PREVIEW);
+		previewRequestBuilder.addTarget(previewSurface);
+
+		List<Surface> outputs = new ArrayList<Surface>();
+		outputs.add(previewSurface);
+		if (framePipeline != null) {
+			Surface frameSurface = createImageReader(capabilities);
+			if (frameSurface != null) {
+				previewRequestBuilder.addTarget(frameSurface);
+				outputs.add(frameSurface);
+			}
+		}
+
+		previewRequestBuilder.set(CaptureRequest.SCALER_CROP_REGION, computeCropRegion(zoom));
+		setFocusAndExposure(previewRequestBuilder, capabilities);
+		setFpsRange(previewRequestBuilder, capabilities);
+
+		final long sessionStart = LatencyTracer.now();
+		cameraDevice.createCaptureSession(outputs,
+				new CameraCaptureSession.StateCallback() {
+					@Override
+					public void onConfigured(CameraCaptureSession session) {
+						if (startSessionGeneration != sessionGeneration || cameraDevice == null || previewHost == null) {
+							//stopped, paused or reconfigured while configuring
+							session.close();
+							return;
+						}
+
+						captureSession = session;
+						try {
+							captureSession.setRepeatingRequest(previewRequestBuilder.build(), null, cameraHandler);
+						} catch (CameraAccessException e) {
+							Log.e(TAG, "Unable to start preview", e);
+							closeCamera();
+							callback.onError(e.getMessage());
+							return;
+						} catch (RuntimeException e) { //e.g., an abandoned surface
+							Log.e(TAG, "Unable to start preview", e);
+							closeCamera();
+							callback.onError(e.getMessage());
+							return;
+						}
+
+						tracer.record(LatencyTracer.START_PREVIEW, sessionStart);
+						started = true;
+						if (notify) {
+							callback.onPreviewStarted(previewSize.width, previewSize.height);
+						}
+					}
+
+					@Override
+					public void onConfigureFailed(CameraCaptureSession session) {
+						if (startSessionGeneration != sessionGeneration) {
+							//superseded, the current session owns the camera
+							return;
+						}
+
+						Log.e(TAG, "Unable to configure preview session");
+						closeCamera();
+						callback.onError("Unable to configure camera preview");
+					}
+				},
+				cameraHandler);
+	}
+
+	@Override
+	public void setFramePipeline(FramePipeline pipeline) {
+		boolean changed = (pipeline == null) != (framePipeline == null);
+		framePipeline = pipeline;
+		if (!changed || captureSession == null) {
+			return;
+		}
+
+		//the ImageReader is a session output, reconfigure the running session
+		reconfigureSession();
+	}
+
+	private void reconfigureSession() {
+		if (captureSession != null) {
+			captureSession.close();
+			captureSession = null;
+		}
+		closeImageReader();
+		try {
+			createPreviewSession(activeCapabilities, activeCallback, false);
+		} catch (CameraAccessException e) {
+			Log.e(TAG, "Unable to reconfigure preview session", e);
+			closeCamera();
+			activeCallback.onError(e.getMessage());
+		}
+	}
+
+	private void setFocusAndExposure(CaptureRequest.Builder requestBuilder, CameraCapabilities capabilities) {
+		NightSkyMode mode = nightSkyMode;
+		if (mode == null) {
+			if (capabilities.hasFocusMode(Camera.Parameters.FOCUS_MODE_CONTINUOUS_VIDEO)) {
+				requestBuilder.set(CaptureRequest.CONTROL_AF_MODE, CaptureRequest.CONTROL_AF_MODE_CONTINUOUS_VIDEO);
+			}
+			requestBuilder.set(CaptureRequest.CONTROL_AF_REGIONS, null);
+			requestBuilder.set(CaptureRequest.CONTROL_AE_REGIONS, null);
+			requestBuilder.set(CaptureRequest.CONTROL_AE_EXPOSURE_COMPENSATION, 0);
+			requestBuilder.set(CaptureRequest.CONTROL_AE_LOCK, false);
+			requestBuilder.set(CaptureRequest.CONTROL_AWB_LOCK, false);
+			return;
+		}
+
+		if (mode.infinityFocus && capabilities.hasFocusMode(Camera.Parameters.FOCUS_MODE_INFINITY)) {
+			requestBuilder.set(CaptureRequest.CONTROL_AF_MODE, CaptureRequest.CONTROL_AF_MODE_OFF);
+			requestBuilder.set(CaptureRequest.LENS_FOCUS_DISTANCE, 0.0f); //diopters, 0 is infinity
+		} else if (capabilities.hasFocusMode(Camera.Parameters.FOCUS_MODE_CONTINUOUS_VIDEO)) {
+			requestBuilder.set(CaptureRequest.CONTROL_AF_MODE, CaptureRequest.CONTROL_AF_MODE_CONTINUOUS_VIDEO);
+		}
+
+		Rect cropRegion = computeCropRegion(zoom);
+		if (cropRegion != null) {
+			MeteringRectangle[] regions = new MeteringRectangle[] {
+					new MeteringRectangle(mode.getMeteringRect(cropRegion.left, cropRegion.top,
+							cropRegion.width(), cropRegion.height()), MeteringRectangle.METERING_WEIGHT_MAX)
+			};
+			if (capabilities.maxFocusAreas > 0) {
+				requestBuilder.set(CaptureRequest.CONTROL_AF_REGIONS, regions);
+			}
+			if (capabilities.maxMeteringAreas > 0) {
+				requestBuilder.set(CaptureRequest.CONTROL_AE_REGIONS, regions);
+			}
+		}
+
+		requestBuilder.set(CaptureRequest.CONTROL_AE_EXPOSURE_COMPENSATION, mode.getExposureIndex(capabilities));
+		requestBuilder.set(CaptureRequest.CONTROL_AE_LOCK, mode.lockExposure);
+		requestBuilder.set(CaptureRequest.CONTROL_AWB_LOCK, mode.lockWhiteBalance);
+	}
+
+	private void setFpsRange(CaptureRequest.Builder requestBuilder, CameraCapabilities capabilities) {
+		int[] fpsRange = powerProfile.selectFpsRange(capabilities.fpsRanges);
+		if (fpsRange != null) {
+			Log.d(TAG, powerProfile.getName() + " fps range: " + fpsRange[0] + "-" + fpsRange[1]);
+			requestBuilder.set(CaptureRequest.CONTROL_AE_TARGET_FPS_RANGE,
+					new Range<Integer>(fpsRange[0] / 1000, fpsRange[1] / 1000));
+		}
+	}
+
+	private CameraCapabilities.Size selectPreviewSize(CameraCapabilities capabilities) {
+		SizeSelector.Selection selection = sizeSelector.select(capabilities, viewWidth, viewHeight, powerProfile);
+		if (selection == null) {
+			throw new IllegalStateException("No preview sizes available");
+		}
+		return selection.previewSize;
+	}
+
+	private void setPreviewSize(CameraCapabilities.Size size) {
+		previewSize = size;
+		Log.d(TAG, "preview size: " + previewSize);
+
+		if (previewHost != null) {
+			long startTime = LatencyTracer.now();
+			previewSurface = previewHost.createSurface(previewSize.width, previewSize.height);
+			tracer.record(LatencyTracer.ATTACH_SURFACE, startTime);
+		}
+	}
+
+	private Surface createImageReader(CameraCapabilities capabilities) {
+		CameraCapabilities.Size frameSize = chooseFrameSize(yuvSizes, previewSize);
+		if (frameSize == null) {
+			Log.w(TAG, "No YUV output available for preview frames");
+			return null;
+		}
+
+		frameBufferPool = new FrameBufferPool(FRAME_BUFFER_COUNT, frameSize.width, frameSize.height, null);
+		frameBufferPool.setCameraInfo(capabilities);
+
+		imageReader = ImageReader.newInstance(frameSize.width, frameSize.height, ImageFormat.YUV_420_888, 2);
+		imageReader.setOnImageAvailableListener(new ImageReader.OnImageAvailableListener() {
+			@Override
+			public void onImageAvailable(ImageReader reader) {
+				Image image = reader.acquireLatestImage();
+				if (image == null) {
+					return;
+				}
+
+				FrameBufferPool pool = frameBufferPool;
+				FramePipeline pipeline = framePipeline;
+				PreviewFrame frame = pool != null && pipeline != null ? pool.acquire() : null;
+				if (frame == null) { //every buffer is still being processed, drop the frame
+					image.close();
+					return;
+				}
+
+				try {
+					copyToNV21(image, frame.data, frame.width, frame.height);
+					frame.timestamp = toFrameTime(image.getTimestamp());
+				} finally {
+					image.close();
+				}
+				frame.sequence = frameSequence++;
+				frame.zoom = (float) zoom;
+				pipeline.dispatch(frame);
+				frame.release();
+			}
+		}, cameraHandler);
+
+		return imageReader.getSurface();
+	}
+
+	/**
+	 * Frame timestamps are on the System.nanoTime() clock, as the legacy engine's. Sensor
+	 * timestamps on the realtime clock keep the start of exposure, other sensor clocks are
+	 * unspecified and the frame is stamped on arrival instead.
+	 */
+	private long toFrameTime(long sensorTimestamp) {
+		if (!realtimeTimestamps) {
+			return System.nanoTime();
+		}
+		return sensorTimestamp - SystemClock.elapsedRealtimeNanos() + System.nanoTime();
+	}
+
+	private void closeImageReader() {
+		if (frameBufferPool != null) {
+			frameBufferPool.close();
+			frameBufferPool = null;
+		}
+		if (imageReader != null) {
+			imageReader.close();
+			imageReader = null;
+		}
+	}
+
+	/**
+	 * Pack a YUV_420_888 image into NV21 (Y plane followed by interleaved V/U) without
+	 * allocating. U and V planes share row and pixel strides.
+	 */
+	private void copyToNV21(Image image, byte[] out, int width, int height) {
+		Image.Plane[] planes = image.getPlanes();
+
+		ByteBuffer yBuffer = planes[0].getBuffer();
+		int yRowStride = planes[0].getRowStride();
+		int pos = 0;
+		for (int row = 0; row < height; row++) {
+			yBuffer.position(row * yRowStride);
+			yBuffer.get(out, pos, width);
+			pos += width;
+		}
+
+		ByteBuffer uBuffer = planes[1].getBuffer();
+		ByteBuffer vBuffer = planes[2].getBuffer();
+		int uvRowStride = planes[1].getRowStride();
+		int uvPixelStride = planes[1].getPixelStride();
+
+		//semi-planar, the common case: the V plane is already VUVU.., copy rows in bulk
+		//and take U from the U plane, so UVUV.. devices are converted correctly too
+		if (uvPixelStride == 2 && planes[2].getPixelStride() == 2 && planes[2].getRowStride() == uvRowStride) {
+			if (chromaRow == null || chromaRow.length < width) {
+				chromaRow = new byte[width];
+			}
+			for (int row = 0; row < height / 2; row++) {
+				int offset = row * uvRowStride;
+				//the last row of a plane may end right after its last sample
+				vBuffer.position(offset);
+				vBuffer.get(out, pos, Math.min(width, vBuffer.limit() - offset));
+				uBuffer.position(offset);
+				uBuffer.get(chromaRow, 0, Math.min(width - 1, uBuffer.limit() - offset));
+				for (int i = 1; i < width; i += 2) {
+					out[pos + i] = chromaRow[i - 1];
+				}
+				pos += width;
+			}
+			return;
+		}
+
+		for (int row = 0; row < height / 2; row++) {
+			int offset = row * uvRowStride;
+			for (int col = 0; col < width / 2; col++) {
+				int index = offset + col * uvPixelStride;
+				out[pos++] = vBuffer.get(index);
+				out[pos++] = uBuffer.get(index);
+			}
+		}
+	}
+
+	//camera thread only
+	private void closeCamera() {
+		sessionGeneration++;
+		if (captureSession != null) {
+			captureSession.close();
+			captureSession = null;
+		}
+		closeImageReader();
+		if (cameraDevice != null) {
+			cameraDevice.close();
+			cameraDevice = null;
+		}
+		if (previewSurface != null) {
+			previewHost.releaseSurface(previewSurface);
+			previewSurface = null;
+		}
+		previewHost = null;
+		previewRequestBuilder = null;
+		started = false;
+	}
+
+	private Rect computeCropRegion(double zoom) {
+		if (activeArraySize == null) {
+			return null;
+		}
+
+		int cropWidth = (int) (activeArraySize.width() / zoom);
+		int cropHeight = (int) (activeArraySize.height() / zoom);
+		int left = (activeArraySize.width() - cropWidth) / 2;
+		int top = (activeArraySize.height() - cropHeight) / 2;
+
+		return new Rect(left, top, left + cropWidth, top + cropHeight);
+	}
+
+	/**
+	 * YUV size for preview frames: the preview size when available, otherwise the largest size
+	 * of the preview's aspect ratio that is not larger than the preview, otherwise the smallest.
+	 */
+	private static CameraCapabilities.Size chooseFrameSize(List<CameraCapabilities.Size> choices,
+														   CameraCapabilities.Size previewSize) {
+		CameraCapabilities.Size selected = null;
+		CameraCapabilities.Size smallest = null;
+		for (CameraCapabilities.Size size : choices) {
+			if (size.equals(previewSize)) {
+				return size;
+			}
+			boolean sameAspect = Math.abs(size.width * previewSize.height - previewSize.width * size.height) <=
+					previewSize.height * size.height / 100;
+			if (sameAspect && size.width <= previewSize.width &&
+					(selected == null || size.width > selected.width)) {
+				selected = size;
+			}
+			if (smallest == null || size.width * size.height < smallest.width * smallest.height) {
+				smallest = size;
+			}
+		}
+
+		return selected != null ? selected : smallest;
+	}
+
+	private static List<CameraCapabilities.Size> toSizes(Size[] outputSizes) {
+		List<CameraCapabilities.Size> sizes = new ArrayList<CameraCapabilities.Size>();
+		if (outputSizes != null) {
+			for (Size size : outputSizes) {
+				sizes.add(new CameraCapabilities.Size(size.getWidth(), size.getHeight()));
+			}
+		}
+		return sizes;
+	}
+
+	/**
+	 * @return the legacy Camera.Parameters name of a camera2 AF mode
+	 */
+	private static String toFocusMode(int afMode) {
+		switch (afMode) {
+			case CaptureRequest.CONTROL_AF_MODE_AUTO:
+				return Camera.Parameters.FOCUS_MODE_AUTO;
+			case CaptureRequest.CONTROL_AF_MODE_MACRO:
+				return Camera.Parameters.FOCUS_MODE_MACRO;
+			case CaptureRequest.CONTROL_AF_MODE_CONTINUOUS_VIDEO:
+				return Camera.Parameters.FOCUS_MODE_CONTINUOUS_VIDEO;
+			case CaptureRequest.CONTROL_AF_MODE_CONTINUOUS_PICTURE:
+				return Camera.Parameters.FOCUS_MODE_CONTINUOUS_PICTURE;
+			case CaptureRequest.CONTROL_AF_MODE_EDOF:
+				return Camera.Parameters.FOCUS_MODE_EDOF;
+			case CaptureRequest.CONTROL_AF_MODE_OFF:
+				return Camera.Parameters.FOCUS_MODE_FIXED;
+			default:
+				return null;
+		}
+	}
+
+	private CameraCharacteristics getCharacteristics(int cameraId) {
+		try {
+			return cameraManager.getCameraCharacteristics(getCameraIdString(cameraId));
+		} catch (CameraAccessException e) {
+			throw new RuntimeException(e);
+		}
+	}
+
+	private String getCameraIdString(int cameraId) throws CameraAccessException {
+		return cameraManager.getCameraIdList()[cameraId];
+	}
+
+}
@@ -0,0 +1,213 @@
+/**
+ * Copyright 2016, ezAR Technologies
+ * http://ezartech.com
+ *
+ * By @wayne_parrott, @vridosh, @kwparrott
+ *
+ * Licensed under a modified MIT license.
+ * Please see LICENSE or http://ezartech.com/ezarstartupkit-license for more information
+ *
+ */
+package com.ezartech.ezar.videooverlay;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+/**
+ * Static properties of a device camera, probed once by a {@link CameraEngine} and
+ * cached by {@link CameraCapabilityStore}.
+ * <p/>
+ * Values use the legacy {@link android.hardware.Camera} conventions for both engines:
+ * facing is Camera.CameraInfo.CAMERA_FACING_XXX, fps ranges are scaled by 1000 and
+ * focus modes are Camera.Parameters.FOCUS_MODE_XXX names.
+ */
+public class CameraCapabilities {
+
+	public int cameraId;
+	public int facing;
+	public int orientation;          //sensor orientation in degrees
+	public float horizontalViewAngle; //degrees across the sensor's long side, 0 when unknown
+
+	public double zoom;
+	public double maxZoom;           //as reported to JS, 0 when zoom is not supported
+	public int maxZoomIndex;         //legacy Camera.Parameters.getMaxZoom(), 0 for camera2
+	public List<Integer> zoomRatios = new ArrayList<Integer>();  //legacy zoom ratios * 100
+
+	public Size preferredPreviewSize; //may be null
+	public List<Size> previewSizes = new ArrayList<Size>();
+	public List<Size> pictureSizes = new ArrayList<Size>();
+	public List<int[]> fpsRanges = new ArrayList<int[]>();
+	public List<String> focusModes = new ArrayList<String>();
+
+	public int minExposureCompensation;     //index, multiply by the step for EV
+	public int maxExposureCompensation;
+	public float exposureCompensationStep;  //EV per index, 0 when not supported
+	public int maxMeteringAreas;
+	public int maxFocusAreas;
+	public boolean autoExposureLockSupported;
+	public boolean autoWhiteBalanceLockSupported;
+
+	//false when the probe could not open the camera, such results are not persisted
+	public boolean complete = true;
+
+
+	public boolean isZoomSupported() {
+		return maxZoom > 0;
+	}
+
+	public boolean hasFocusMode(String focusMode) {
+		return focusModes.contains(focusMode);
+	}
+
+	JSONObject toJSON() throws JSONException {
+		JSONObject json = new JSONObject();
+		json.put("cameraId", cameraId);
+		json.put("facing", facing);
+		json.put("orientation", orientation);
+		json.put("horizontalViewAngle", horizontalViewAngle);
+		json.put("zoom", zoom);
+		json.put("maxZoom", maxZoom);
+		json.put("maxZoomIndex", maxZoomIndex);
+
+		JSONArray ratios = new JSONArray();
+		for (Integer ratio : zoomRatios) {
+			ratios.put(ratio.intValue());
+		}
+		json.put("zoomRatios", ratios);
+
+		if (preferredPreviewSize != null) {
+			json.put("preferredPreviewSize", preferredPreviewSize.toJSON());
+		}
+		json.put("previewSizes", toJSON(previewSizes));
+		json.put("pictureSizes", toJSON(pictureSizes));
+
+		JSONArray ranges = new JSONArray();
+		for (int[] range : fpsRanges) {
+			ranges.put(new JSONArray().put(range[0]).put(range[1]));
+		}
+		json.put("fpsRanges", ranges);
+
+		JSONArray modes = new JSONArray();
+		for (String mode : focusModes) {
+			modes.put(mode);
+		}
+		json.put("focusModes", modes);
+
+		json.put("minExposureCompensation", minExposureCompensation);
+		json.put("maxExposureCompensation", maxExposureCompensation);
+		json.put("exposureCompensationStep", exposureCompensationStep);
+		json.put("maxMeteringAreas", maxMeteringAreas);
+		json.put("maxFocusAreas", maxFocusAreas);
+		json.put("autoExposureLockSupported", autoExposureLockSupported);
+		json.put("autoWhiteBalanceLockSupported", autoWhiteBalanceLockSupported);
+
+		return json;
+	}
+
+	static CameraCapabilities fromJSON(JSONObject json) throws JSONException {
+		CameraCapabilities capabilities = new CameraCapabilities();
+		capabilities.cameraId = json.getInt("cameraId");
+		capabilities.facing = json.getInt("facing");
+		capabilities.orientation = json.getInt("orientation");
+		capabilities.horizontalViewAngle = (float) json.getDouble("horizontalViewAngle");
+		capabilities.zoom = json.getDouble("zoom");
+		capabilities.maxZoom = json.getDouble("maxZoom");
+		capabilities.maxZoomIndex = json.getInt("maxZoomIndex");
+
+		JSONArray ratios = json.getJSONArray("zoomRatios");
+		for (int i = 0; i < ratios.length(); i++) {
+			capabilities.zoomRatios.add(ratios.getInt(i));
+		}
+
+		JSONObject preferred = json.optJSONObject("preferredPreviewSize");
+		if (preferred != null) {
+			capabilities.preferredPreviewSize = Size.fromJSON(preferred);
+		}
+		capabilities.previewSizes = sizesFromJSON(json.getJSONArray("previewSizes"));
+		capabilities.pictureSizes = sizesFromJSON(json.getJSONArray("pictureSizes"));
+
+		JSONArray ranges = json.getJSONArray("fpsRanges");
+		for (int i = 0; i < ranges.length(); i++) {
+			JSONArray range = ranges.getJSONArray(i);
+			capabilities.fpsRanges.add(new int[] {range.getInt(0), range.getInt(1)});
+		}
+
+		JSONArray modes = json.getJSONArray("focusModes");
+		for (int i = 0; i < modes.length(); i++) {
+			capabilities.focusModes.add(modes.getString(i));
+		}
+
+		capabilities.minExposureCompensation = json.getInt("minExposureCompensation");
+		capabilities.maxExposureCompensation = json.getInt("maxExposureCompensation");
+		capabilities.exposureCompensationStep = (float) json.getDouble("exposureCompensationStep");
+		capabilities.maxMeteringAreas = json.getInt("maxMeteringAreas");
+		capabilities.maxFocusAreas = json.getInt("maxFocusAreas");
+		capabilities.autoExposureLockSupported = json.getBoolean("autoExposureLockSupported");
+		capabilities.autoWhiteBalanceLockSupported = json.getBoolean("autoWhiteBalanceLockSupported");
+
+		return capabilities;
+	}
+
+	private static JSONArray toJSON(List<Size> sizes) throws JSONException {
+		JSONArray json = new JSONArray();
+		for (Size size : sizes) {
+			json.put(size.toJSON());
+		}
+		return json;
+	}
+
+	private static List<Size> sizesFromJSON(JSONArray json) throws JSONException {
+		List<Size> sizes = new ArrayList<Size>();
+		for (int i = 0; i < json.length(); i++) {
+			sizes.add(Size.fromJSON(json.getJSONObject(i)));
+		}
+		return sizes;
+	}
+
+
+	/**
+	 * Camera independent replacement for Camera.Size, which can only be created from
+	 * an open camera.
+	 */
+	public static class Size {
+		public final int width;
+		public final int height;
+
+		public Size(int width, int height) {
+			this.width = width;
+			this.height = height;
+		}
+
+		JSONObject toJSON() throws JSONException {
+			JSONObject json = new JSONObject();
+			json.put("width", width);
+			json.put("height", height);
+			return json;
+		}
+
+		static Size fromJSON(JSONObject json) throws JSONException {
+			return new Size(json.getInt("width"), json.getInt("height"));
+		}
+
+		@Override
+		public boolean equals(Object o) {
+			if (!(o instanceof Size)) return false;
+			Size size = (Size) o;
+			return width == size.width && height == size.height;
+		}
+
+		@Override
+		public int hashCode() {
+			return width * 32713 + height;
+		}
+
+		@Override
+		public String toString() {
+			return width + ":" + height;
+		}
+	}
+}
@@ -0,0 +1,193 @@
+/**
+ * Copyright 2016, ezAR Technologies
+ * http://ezartech.com
+ *
+ * By @wayne_parrott, @vridosh, @kwparrott
+ *
+ * Licensed under a modified MIT license.
+ * Please see LICENSE or http://ezartech.com/ezarstartupkit-license for more information
+ *
+ */
+package com.ezartech.ezar.videooverlay;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import android.content.Context;
+import android.os.Build;
+import android.util.Log;
+
+/**
+ * Caches {@link CameraCapabilities} in app-private storage so cameras are only opened
+ * to probe them on the first launch after install or after a system update.
+ * <p/>
+ * Entries are keyed by Build.FINGERPRINT, engine name and camera id; the whole file is
+ * discarded when the fingerprint no longer matches. Not thread safe, used only from the
+ * camera thread.
+ */
+public class CameraCapabilityStore {
+	private static final String TAG = "ezAR";
+
+	private static final String FILE_NAME = "ezar-camera-capabilities.json";
+	private static final int VERSION = 3;
+
+	private final File file;
+	private final String fingerprint;
+	private final LatencyTracer tracer;
+	private final Map<String, CameraCapabilities> capabilities = new HashMap<String, CameraCapabilities>();
+	private boolean loaded = false;
+	private boolean dirty = false;
+
+
+	public CameraCapabilityStore(Context context, LatencyTracer tracer) {
+		this.file = new File(context.getFilesDir(), FILE_NAME);
+		this.fingerprint = Build.FINGERPRINT;
+		this.tracer = tracer;
+	}
+
+	public CameraCapabilities get(CameraEngine engine, int cameraId) {
+		CameraCapabilities result = lookup(engine, cameraId);
+		saveIfDirty();
+		return result;
+	}
+
+	/**
+	 * @return the capabilities of every camera of the engine, ordered by camera id
+	 */
+	public List<CameraCapabilities> getAll(CameraEngine engine) {
+		int numberOfCameras = engine.getNumberOfCameras();
+		List<CameraCapabilities> result = new ArrayList<CameraCapabilities>(numberOfCameras);
+
+		for (int i = 0; i < numberOfCameras; i++) {
+			result.add(lookup(engine, i));
+		}
+
+		saveIfDirty();
+		return result;
+	}
+
+	private CameraCapabilities lookup(CameraEngine engine, int cameraId) {
+		load();
+
+		String key = getKey(engine, cameraId);
+		CameraCapabilities result = capabilities.get(key);
+		if (result == null) {
+			long startTime = LatencyTracer.now();
+			result = engine.probe(cameraId);
+			tracer.record(LatencyTracer.PROBE, startTime);
+			Log.d(TAG, "probed camera " + cameraId + " in " + (LatencyTracer.now() - startTime) / 1000000 + "ms");
+
+			if (result.complete) {
+				capabilities.put(key, result);
+				dirty = true;
+			}
+		}
+		return result;
+	}
+
+	private String getKey(CameraEngine engine, int cameraId) {
+		return fingerprint + "/" + engine.getName() + "/" + cameraId;
+	}
+
+	private void load() {
+		if (loaded) {
+			return;
+		}
+		loaded = true;
+
+		if (!file.exists()) {
+			return;
+		}
+
+		try {
+			JSONObject json = new JSONObject(readFile(file));
+			if (json.optInt("version", 0) != VERSION ||
+					!fingerprint.equals(json.optString("fingerprint", null))) {
+				Log.d(TAG, "camera capabilities cache is stale, reprobing");
+				return;
+			}
+
+			JSONObject cameras = json.getJSONObject("cameras");
+			Iterator<String> keys = cameras.keys();
+			while (keys.hasNext()) {
+				String key = keys.next();
+				capabilities.put(key, CameraCapabilities.fromJSON(cameras.getJSONObject(key)));
+			}
+		} catch (IOException e) {
+			Log.e(TAG, "Unable to read camera capabilities", e);
+		} catch (JSONException e) {
+			Log.e(TAG, "Invalid camera capabilities cache", e);
+			capabilities.clear();
+		}
+	}
+
+	private void saveIfDirty() {
+		if (!dirty) {
+			return;
+		}
+		dirty = false;
+
+		File tmpFile = new File(file.getPath() + ".tmp");
+		FileOutputStream out = null;
+		try {
+			JSONObject cameras = new JSONObject();
+			for (Map.Entry<String, CameraCapabilities> entry : capabilities.entrySet()) {
+				cameras.put(entry.getKey(), entry.getValue().toJSON());
+			}
+
+			JSONObject json = new JSONObject();
+			json.put("version", VERSION);
+			json.put("fingerprint", fingerprint);
+			json.put("cameras", cameras);
+
+			out = new FileOutputStream(tmpFile);
+			out.write(json.toString().getBytes("UTF-8"));
+			out.getFD().sync();
+			out.close();
+			out = null;
+
+			//rename so a crash never leaves a truncated cache behind
+			if (!tmpFile.renameTo(file)) {
+				Log.e(TAG, "Unable to save camera capabilities");
+			}
+		} catch (IOException e) {
+			Log.e(TAG, "Unable to save camera capabilities", e);
+		} catch (JSONException e) {
+			Log.e(TAG, "Unable to save camera capabilities", e);
+		} finally {
+			if (out != null) {
+				try {
+					out.close();
+				} catch (IOException e) {
+					//ignore
+				}
+			}
+		}
+	}
+
+	private static String readFile(File file) throws IOException {
+		FileInputStream in = new FileInputStream(file);
+		try {
+			ByteArrayOutputStream bytes = new ByteArrayOutputStream((int) file.length());
+			byte[] buffer = new byte[4096];
+			int count;
+			while ((count = in.read(buffer)) != -1) {
+				bytes.write(buffer, 0, count);
+			}
+			return bytes.toString("UTF-8");
+		} finally {
+			in.close();
+		}
+	}
+}
@@ -0,0 +1,785 @@
+/**
+ * Copyright 2016, ezAR Technologies
+ * http://ezartech.com
+ *
+ * By @wayne_parrott, @vridosh, @kwparrott
+ *
+ * Licensed under a modified MIT license.
+ * Please see LICENSE or http://ezartech.com/ezarstartupkit-license for more information
+ *
+ */
+package com.ezartech.ezar.videooverlay;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.cordova.CallbackContext;
+import org.apache.cordova.PluginResult;
+
+import android.content.Context;
+import android.hardware.Camera;
+import android.os.Build;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Looper;
+import android.os.SystemClock;
+import android.util.Log;
+
+/**
+ * Owns the camera engine and runs every camera api call on a single camera thread.
+ * <p/>
+ * Commands from the Cordova bridge and the UI thread only record the desired state
+ * (which camera, zoom, paused, surface) and post a reconcile step to the camera thread.
+ * The reconcile step drives the session through CLOSED -> OPENING -> PREVIEWING -> CLOSING
+ * and never starts a new transition while one is in flight, so overlapping start/stop/zoom
+ * commands collapse into the latest intent instead of racing.
+ * <p/>
+ * With a pause grace period a paused preview goes PREVIEWING -> PAUSED instead: the camera
+ * stays open without a surface and resumes without reopening, unless the pause outlasts
+ * the grace period. {@link #preopen} opens a camera straight into PAUSED, ahead of start().
+ */
+public class CameraController {
+	private static final String TAG = "ezAR";
+
+	private static final long PREOPEN_TIMEOUT = 10000; //ms a pre-opened camera waits for start()
+
+	public enum State { CLOSED, OPENING, PREVIEWING, PAUSED, CLOSING }
+
+	/**
+	 * Session events, called on the camera thread.
+	 */
+	public interface Listener {
+		void onPreviewStarted(CameraEngine engine, CameraCapabilities capabilities, CameraDirection cameraDirection);
+		void onPreviewStopped(CameraEngine engine, CameraCapabilities capabilities, CameraDirection cameraDirection);
+		void onPreviewResized(CameraEngine engine, CameraCapabilities capabilities, CameraDirection cameraDirection);
+		void onDigitalZoomChanged(double zoom);
+	}
+
+	private final HandlerThread cameraThread;
+	private final Handler cameraHandler;
+	private final Listener listener;
+	private final FramePipeline framePipeline;
+	private final LatencyTracer tracer;
+
+	//camera thread only ------------------------
+	private final CameraCapabilityStore capabilityStore;
+	private CameraEngine engine;
+	private CameraCapabilities activeCapabilities;
+	private boolean fallbackToLegacy;
+	private State state = State.CLOSED;
+
+	private CameraDirection targetDirection;  //null when the camera should be closed
+	private double targetZoom;
+	private double appliedZoom;               //last zoom handed to the engine, NaN to force an update
+	private double digitalZoom = 1.0;         //part of the zoom the camera view's matrix applies
+	private long nextZoomTime;                //uptime of the next zoom write, one per preview frame
+	private PowerProfile powerProfile = PowerProfile.BALANCED;
+	private NightSkyMode nightSkyMode;        //null for continuous focus and auto exposure
+	private boolean paused;
+	private long pauseGracePeriod = 0;        //ms the camera stays open while paused
+	private boolean preopened;                //PAUSED camera opened by preopen, no start() yet
+	private boolean previewAnnounced;         //listener knows the session, see onPreviewStarted
+	private PreviewSurface previewSurface;
+	private int viewWidth;
+	private int viewHeight;
+
+	private final List<CallbackContext> pendingStartCallbacks = new ArrayList<CallbackContext>();
+	private final List<CallbackContext> pendingStopCallbacks = new ArrayList<CallbackContext>();
+
+	//published for other threads ----------------
+	private volatile State publicState = State.CLOSED;
+	private volatile int activeCameraId = ezAR.UNDEFINED;
+	private volatile CameraDirection activeDirection;
+	private volatile double activeZoom;       //zoom the camera achieved, e.g., rounded to its zoom steps
+	private volatile double maxDigitalZoom = 1.0;
+	private volatile Camera activeCamera;
+
+	//latest requested zoom, coalesced until the camera thread picks it up
+	private final Object zoomLock = new Object();
+	private double requestedZoom;
+	private boolean zoomUpdatePosted = false;
+	private final List<CallbackContext> zoomCallbacks = new ArrayList<CallbackContext>();
+
+	private final Runnable pauseTimeout = new Runnable() {
+		@Override
+		public void run() {
+			if (state == State.PAUSED) {
+				Log.d(TAG, "pause grace period expired");
+				close();
+				reconcile();
+			}
+		}
+	};
+
+
+	/**
+	 * @param useCamera2 use {@link Camera2Engine}, only valid on LOLLIPOP and later
+	 * @param fallbackToLegacy retry with {@link LegacyCameraEngine} when camera2 fails to open
+	 */
+	public CameraController(Context context, boolean useCamera2, boolean fallbackToLegacy,
+							LatencyTracer tracer, Listener listener) {
+		this.fallbackToLegacy = fallbackToLegacy;
+		this.listener = listener;
+		this.tracer = tracer;
+		this.capabilityStore = new CameraCapabilityStore(context, tracer);
+		this.framePipeline = new FramePipeline(new FramePipeline.Listener() {
+			@Override
+			public void onActiveChanged(boolean active) {
+				cameraHandler.post(new Runnable() {
+					@Override
+					public void run() {
+						applyFramePipeline();
+					}
+				});
+			}
+		});
+
+		cameraThread = new HandlerThread("ezAR-camera");
+		cameraThread.start();
+		cameraHandler = new Handler(cameraThread.getLooper());
+
+		engine = useCamera2 ? new Camera2Engine(context, cameraHandler, tracer) : new LegacyCameraEngine(tracer);
+		Log.i(TAG, "camera engine: " + engine.getName());
+	}
+
+	public Handler getHandler() {
+		return cameraHandler;
+	}
+
+	/**
+	 * Run a task on the camera thread, e.g., a capability probe.
+	 */
+	public void post(Runnable task) {
+		cameraHandler.post(task);
+	}
+
+	public boolean isCameraThread() {
+		return Looper.myLooper() == cameraThread.getLooper();
+	}
+
+	public State getState() {
+		return publicState;
+	}
+
+	public boolean isPreviewing() {
+		return publicState == State.PREVIEWING;
+	}
+
+	public int getCameraId() {
+		return activeCameraId;
+	}
+
+	public CameraDirection getCameraDirection() {
+		return activeDirection;
+	}
+
+	public double getZoom() {
+		return activeZoom;
+	}
+
+	public Camera getCamera() {
+		return activeCamera;
+	}
+
+	/**
+	 * Only valid on the camera thread.
+	 */
+	public CameraEngine getEngine() {
+		return engine;
+	}
+
+	/**
+	 * Register {@link FrameProcessor}s here to receive preview frames.
+	 */
+	public FramePipeline getFramePipeline() {
+		return framePipeline;
+	}
+
+	/**
+	 * Capabilities of every camera, probed on first use and cached across launches.
+	 * Only valid on the camera thread.
+	 */
+	public List<CameraCapabilities> getCapabilities() {
+		return capabilityStore.getAll(engine);
+	}
+
+	//---------------- commands, any thread ----------------
+
+	/**
+	 * @param profile power profile of the session, null to keep the current one
+	 */
+	public void start(final CameraDirection cameraDirection, final double zoom, final PowerProfile profile,
+					  final CallbackContext callbackContext) {
+		cameraHandler.post(new Runnable() {
+			@Override
+			public void run() {
+				//a start supersedes stops that have not completed yet
+				resolve(pendingStopCallbacks, null);
+
+				preopened = false;
+				targetDirection = cameraDirection;
+				targetZoom = zoom;
+				if (profile != null) {
+					applyPowerProfile(profile);
+				}
+				if (callbackContext != null) {
+					pendingStartCallbacks.add(callbackContext);
+				}
+				reconcile();
+			}
+		});
+	}
+
+	/**
+	 * Open and configure the camera ahead of {@link #start}, e.g., while the splash screen
+	 * shows. The camera waits without a surface and start() only attaches the preview.
+	 * Closed again when start() does not come within PREOPEN_TIMEOUT.
+	 *
+	 * @param width expected view width until the surface reports the real size
+	 * @param height expected view height
+	 */
+	public void preopen(final CameraDirection cameraDirection, final int width, final int height) {
+		cameraHandler.post(new Runnable() {
+			@Override
+			public void run() {
+				if (state != State.CLOSED || targetDirection != null) {
+					return; //already started
+				}
+				if (previewSurface == null) {
+					viewWidth = width;
+					viewHeight = height;
+				}
+				open(cameraDirection, true);
+			}
+		});
+	}
+
+	public void stop(final CallbackContext callbackContext) {
+		cameraHandler.post(new Runnable() {
+			@Override
+			public void run() {
+				//a stop supersedes starts that have not completed yet
+				resolve(pendingStartCallbacks, null);
+
+				preopened = false;
+				targetDirection = null;
+				if (callbackContext != null) {
+					pendingStopCallbacks.add(callbackContext);
+				}
+				reconcile();
+			}
+		});
+	}
+
+	/**
+	 * Only the latest zoom is applied; requests arriving while an update is queued
+	 * replace its value and share its completion. Updates are written at most once per
+	 * preview frame, callbacks receive the zoom the camera achieved.
+	 */
+	public void setZoom(double zoom, CallbackContext callbackContext) {
+		long delay;
+		synchronized (zoomLock) {
+			requestedZoom = zoom;
+			if (callbackContext != null) {
+				zoomCallbacks.add(callbackContext);
+			}
+			if (zoomUpdatePosted) {
+				return;
+			}
+			zoomUpdatePosted = true;
+			delay = Math.max(0, nextZoomTime - SystemClock.uptimeMillis());
+		}
+
+		cameraHandler.postDelayed(new Runnable() {
+			@Override
+			public void run() {
+				double zoom;
+				List<CallbackContext> callbacks;
+				synchronized (zoomLock) {
+					zoom = requestedZoom;
+					callbacks = new ArrayList<CallbackContext>(zoomCallbacks);
+					zoomCallbacks.clear();
+					zoomUpdatePosted = false;
+				}
+
+				targetZoom = zoom;
+				String error = null;
+				if (state == State.PREVIEWING) {
+					error = applyZoom(zoom);
+				}
+
+				for (CallbackContext callbackContext : callbacks) {
+					if (error != null) {
+						callbackContext.error(error);
+					} else {
+						callbackContext.sendPluginResult(new PluginResult(PluginResult.Status.OK,
+								(float) (state == State.PREVIEWING ? activeZoom : zoom)));
+					}
+				}
+			}
+		}, delay);
+	}
+
+	/**
+	 * Switch the power profile; a running preview keeps the camera open.
+	 */
+	public void setPowerProfile(final PowerProfile profile, final CallbackContext callbackContext) {
+		cameraHandler.post(new Runnable() {
+			@Override
+			public void run() {
+				String error = applyPowerProfile(profile);
+				if (callbackContext == null) {
+					return;
+				}
+				if (error == null) {
+					callbackContext.success();
+				} else {
+					callbackContext.error(error);
+				}
+			}
+		});
+	}
+
+	/**
+	 * Switch night sky focus and exposure on, update it, or switch it off with null.
+	 * The mode must not be modified afterwards.
+	 */
+	public void setNightSkyMode(final NightSkyMode mode, final CallbackContext callbackContext) {
+		cameraHandler.post(new Runnable() {
+			@Override
+			public void run() {
+				nightSkyMode = mode;
+				String error = null;
+				if (state == State.PREVIEWING) {
+					try {
+						engine.setNightSkyMode(mode);
+					} catch (RuntimeException e) {
+						Log.e(TAG, "Unable to set night sky mode", e);
+						error = e.getMessage();
+					}
+				}
+
+				if (callbackContext == null) {
+					return;
+				}
+				if (error == null) {
+					callbackContext.success();
+				} else {
+					callbackContext.error(error);
+				}
+			}
+		});
+	}
+
+	/**
+	 * @param surface preview host surface, null once the host destroyed it
+	 */
+	public void setSurface(final PreviewSurface surface, final int width, final int height) {
+		cameraHandler.post(new Runnable() {
+			@Override
+			public void run() {
+				PreviewSurface oldSurface = previewSurface;
+				previewSurface = surface;
+				viewWidth = width;
+				viewHeight = height;
+
+				if (surface == null && state == State.PREVIEWING) {
+					//detach before the surface is released
+					suspend();
+				}
+				if (oldSurface != null && !oldSurface.equals(surface)) {
+					oldSurface.release();
+				}
+				reconcile();
+			}
+		});
+	}
+
+	public void setViewSize(final int width, final int height) {
+		cameraHandler.post(new Runnable() {
+			@Override
+			public void run() {
+				viewWidth = width;
+				viewHeight = height;
+			}
+		});
+	}
+
+	/**
+	 * @param maxZoom magnification the camera view may add past the camera's own maxZoom,
+	 * 			or when the camera has no zoom, 1 for none
+	 */
+	public void setMaxDigitalZoom(double maxZoom) {
+		maxDigitalZoom = Math.max(1.0, maxZoom);
+	}
+
+	/**
+	 * @return the camera's maxZoom extended by the digital zoom, 0 when the camera can
+	 * 			not zoom at all
+	 */
+	public double getMaxZoom(CameraCapabilities capabilities) {
+		if (maxDigitalZoom <= 1.0) {
+			return capabilities.maxZoom;
+		}
+		return (capabilities.isZoomSupported() ? Math.max(1.0, capabilities.maxZoom) : 1.0) * maxDigitalZoom;
+	}
+
+	/**
+	 * @param gracePeriod ms a paused preview keeps the camera open, 0 closes it right away
+	 */
+	public void setPauseGracePeriod(final long gracePeriod) {
+		cameraHandler.post(new Runnable() {
+			@Override
+			public void run() {
+				pauseGracePeriod = gracePeriod;
+			}
+		});
+	}
+
+	public void setPaused(final boolean isPaused) {
+		cameraHandler.post(new Runnable() {
+			@Override
+			public void run() {
+				paused = isPaused;
+				reconcile();
+			}
+		});
+	}
+
+	public void setDisplayOrientation(final int degrees) {
+		cameraHandler.post(new Runnable() {
+			@Override
+			public void run() {
+				if (state == State.PREVIEWING || state == State.PAUSED) {
+					engine.setDisplayOrientation(degrees);
+				}
+			}
+		});
+	}
+
+	/**
+	 * Close the camera and stop the camera thread.
+	 */
+	public void shutdown() {
+		cameraHandler.post(new Runnable() {
+			@Override
+			public void run() {
+				targetDirection = null;
+				if (state == State.PREVIEWING || state == State.PAUSED) {
+					close();
+				}
+				resolve(pendingStartCallbacks, "Camera shutdown");
+				resolve(pendingStopCallbacks, null);
+				framePipeline.shutdown();
+				if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN_MR2) {
+					cameraThread.quitSafely();
+				} else {
+					cameraThread.quit();
+				}
+			}
+		});
+	}
+
+	//---------------- state machine, camera thread ----------------
+
+	private void reconcile() {
+		switch (state) {
+			case OPENING:
+			case CLOSING:
+				//wait for the transition in flight, it reconciles when done
+				return;
+
+			case CLOSED:
+				if (targetDirection == null) {
+					resolve(pendingStopCallbacks, null);
+					return;
+				}
+				if (paused || previewSurface == null) {
+					//resumed by setPaused(false) or setSurface()
+					return;
+				}
+				open(targetDirection, false);
+				return;
+
+			case PREVIEWING:
+				if (targetDirection == null || activeCameraId != findCameraId(targetDirection)) {
+					close();
+					reconcile();
+					return;
+				}
+				if (paused) {
+					suspend();
+					return;
+				}
+				if (targetZoom != appliedZoom) {
+					applyZoom(targetZoom);
+				}
+				resolve(pendingStartCallbacks, null);
+				return;
+
+			case PAUSED:
+				if (targetDirection == null && preopened) {
+					//waits for start(), or closed by pauseTimeout
+					return;
+				}
+				if (targetDirection == null || activeCameraId != findCameraId(targetDirection)) {
+					close();
+					reconcile();
+					return;
+				}
+				if (paused || previewSurface == null) {
+					//resumed by setPaused(false) and setSurface(), or closed by pauseTimeout
+					return;
+				}
+				resume();
+				return;
+		}
+	}
+
+	/**
+	 * @param warm open and configure the camera without a surface, ends PAUSED
+	 */
+	private void open(final CameraDirection direction, final boolean warm) {
+		final int cameraId = findCameraId(direction);
+		if (cameraId == ezAR.UNDEFINED) {
+			targetDirection = null;
+			resolve(pendingStartCallbacks, "No camera available");
+			return;
+		}
+
+		setState(State.OPENING);
+		final CameraEngine openingEngine = engine;
+		final CameraCapabilities capabilities = capabilityStore.get(engine, cameraId);
+		engine.setPowerProfile(powerProfile);
+		engine.setNightSkyMode(nightSkyMode);
+		applyFramePipeline();
+		openingEngine.startPreview(capabilities, warm ? null : previewSurface, viewWidth, viewHeight,
+				new CameraEngine.Callback() {
+					@Override
+					public void onPreviewStarted(int previewWidth, int previewHeight) {
+						if (openingEngine != engine) return;
+
+						activeCapabilities = capabilities;
+						activeCameraId = cameraId;
+						activeDirection = direction;
+						activeCamera = engine.getCamera();
+						appliedZoom = Double.NaN; //force zoom update
+
+						if (warm) {
+							Log.d(TAG, "camera pre-opened " + direction);
+							preopened = targetDirection == null; //false when start() came while opening
+							previewAnnounced = false;
+							setState(State.PAUSED);
+							cameraHandler.postDelayed(pauseTimeout, Math.max(pauseGracePeriod, PREOPEN_TIMEOUT));
+							reconcile();
+							return;
+						}
+
+						setState(State.PREVIEWING);
+						applyZoom(targetZoom);
+						previewAnnounced = true;
+						listener.onPreviewStarted(engine, capabilities, direction);
+						reconcile();
+					}
+
+					@Override
+					public void onError(String message) {
+						if (openingEngine != engine) return;
+
+						if (state == State.OPENING) {
+							openFailed(message);
+						} else if (state == State.PREVIEWING) {
+							//camera lost while previewing, e.g., taken by another app
+							Log.e(TAG, "Camera lost: " + message);
+							targetDirection = null;
+							close();
+						} else if (state == State.PAUSED) {
+							//taken by another app while paused or failed to resume, reopen on resume
+							Log.w(TAG, "Paused camera lost: " + message);
+							close();
+							reconcile();
+						}
+					}
+				});
+	}
+
+	private void openFailed(String message) {
+		engine.stopPreview();
+		setState(State.CLOSED);
+
+		if (fallbackToLegacy && !(engine instanceof LegacyCameraEngine)) {
+			Log.w(TAG, engine.getName() + " failed (" + message + "), falling back to camera1");
+			engine = new LegacyCameraEngine(tracer);
+			fallbackToLegacy = false;
+			reconcile();
+			return;
+		}
+
+		targetDirection = null;
+		resolve(pendingStartCallbacks, TAG + ": " + message);
+	}
+
+	/**
+	 * Stop a running preview because the activity paused or the surface went away.
+	 */
+	private void suspend() {
+		if (pauseGracePeriod <= 0) {
+			close();
+			return;
+		}
+
+		try {
+			engine.pausePreview();
+		} catch (RuntimeException e) {
+			Log.e(TAG, "Unable to pause preview", e);
+			close();
+			return;
+		}
+		setState(State.PAUSED);
+		cameraHandler.removeCallbacks(pauseTimeout);
+		cameraHandler.postDelayed(pauseTimeout, pauseGracePeriod);
+	}
+
+	private void resume() {
+		cameraHandler.removeCallbacks(pauseTimeout);
+		try {
+			//changes made while paused, resumePreview applies them
+			engine.setPowerProfile(powerProfile);
+			engine.setNightSkyMode(nightSkyMode);
+			boolean resized = engine.resumePreview(previewSurface, viewWidth, viewHeight);
+			if (state != State.PAUSED) {
+				return; //failed, onError closed and reconciled
+			}
+			setState(State.PREVIEWING);
+			if (!previewAnnounced) {
+				//pre-opened camera
+				previewAnnounced = true;
+				listener.onPreviewStarted(engine, activeCapabilities, activeDirection);
+			} else if (resized) {
+				listener.onPreviewResized(engine, activeCapabilities, activeDirection);
+			}
+		} catch (RuntimeException e) {
+			Log.e(TAG, "Unable to resume preview", e);
+			close();
+		}
+		reconcile();
+	}
+
+	private void close() {
+		cameraHandler.removeCallbacks(pauseTimeout);
+		setState(State.CLOSING);
+
+		CameraCapabilities capabilities = activeCapabilities;
+		CameraDirection direction = activeDirection;
+		engine.stopPreview();
+
+		activeCapabilities = null;
+		activeCameraId = ezAR.UNDEFINED;
+		activeDirection = null;
+		activeCamera = null;
+		preopened = false;
+		digitalZoom = 1.0; //the listener resets the view on onPreviewStopped
+		setState(State.CLOSED);
+
+		if (previewAnnounced) {
+			previewAnnounced = false;
+			listener.onPreviewStopped(engine, capabilities, direction);
+		}
+	}
+
+	private void applyFramePipeline() {
+		engine.setFramePipeline(framePipeline.hasProcessors() ? framePipeline : null);
+	}
+
+	private String applyPowerProfile(PowerProfile profile) {
+		powerProfile = profile;
+		if (state != State.PREVIEWING) {
+			return null; //applied by open()
+		}
+
+		try {
+			if (engine.setPowerProfile(profile)) {
+				listener.onPreviewResized(engine, activeCapabilities, activeDirection);
+			}
+			return null;
+		} catch (RuntimeException e) {
+			Log.e(TAG, "Unable to set power profile", e);
+			return e.getMessage();
+		}
+	}
+
+	/**
+	 * The camera zooms as far as it can, the camera view's matrix magnifies the rest. The
+	 * digital part is computed from the zoom the camera achieved so the two chain
+	 * without a jump.
+	 */
+	private String applyZoom(double zoom) {
+		try {
+			double cameraZoom = 1.0;
+			if (activeCapabilities.isZoomSupported()) {
+				cameraZoom = engine.setZoom(getCameraZoom(zoom, activeCapabilities.maxZoom));
+			}
+			double viewZoom = getViewZoom(zoom, cameraZoom, maxDigitalZoom);
+			activeZoom = cameraZoom * viewZoom;
+			appliedZoom = zoom;
+			if (viewZoom != digitalZoom) {
+				digitalZoom = viewZoom;
+				listener.onDigitalZoomChanged(viewZoom);
+			}
+
+			//one write per preview frame, see setZoom
+			synchronized (zoomLock) {
+				nextZoomTime = SystemClock.uptimeMillis() + 1000 / powerProfile.targetFps;
+			}
+			return null;
+		} catch (RuntimeException e) {
+			Log.e(TAG, "Unable to set zoom", e);
+			return e.getMessage();
+		}
+	}
+
+	//part of the zoom the camera is asked for
+	static double getCameraZoom(double zoom, double cameraMaxZoom) {
+		return Math.min(zoom, Math.max(1.0, cameraMaxZoom));
+	}
+
+	//part of the zoom the camera view magnifies, given the zoom the camera achieved
+	static double getViewZoom(double zoom, double cameraZoom, double maxDigitalZoom) {
+		return Math.max(1.0, Math.min(zoom / cameraZoom, maxDigitalZoom));
+	}
+
+	private int findCameraId(CameraDirection cameraDir) {
+		List<CameraCapabilities> cameras = capabilityStore.getAll(engine);
+
+		int cameraIdToOpen = ezAR.UNDEFINED;
+		for (CameraCapabilities camera : cameras) {
+			if (camera.facing == cameraDir.getDirection()) {
+				cameraIdToOpen = camera.cameraId;
+				break;
+			}
+		}
+
+		if (cameraIdToOpen == ezAR.UNDEFINED) {
+			cameraIdToOpen = cameras.size() - 1;
+		}
+
+		return cameraIdToOpen;
+	}
+
+	private void setState(State newState) {
+		Log.d(TAG, "camera state " + state + " -> " + newState);
+		state = newState;
+		publicState = newState;
+	}
+
+	private static void resolve(List<CallbackContext> callbacks, String error) {
+		for (CallbackContext callbackContext : callbacks) {
+			if (error == null) {
+				callbackContext.success();
+			} else {
+				callbackContext.error(error);
+			}
+		}
+		callbacks.clear();
+	}
+}
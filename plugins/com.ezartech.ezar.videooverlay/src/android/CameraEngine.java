@@ -0,0 +1,132 @@
+/**
+ * Copyright 2016, ezAR Technologies
+ * http://ezartech.com
+ *
+ * By @wayne_parrott, @vridosh, @kwparrott
+ *
+ * Licensed under a modified MIT license.
+ * Please see LICENSE or http://ezartech.com/ezarstartupkit-license for more information
+ *
+ */
+package com.ezartech.ezar.videooverlay;
+
+import android.hardware.Camera;
+
+/**
+ * Abstracts the platform camera api that drives the video overlay preview.
+ * ezAR talks only to this interface so the legacy {@link android.hardware.Camera}
+ * implementation and the Camera2 implementation can be swapped at runtime.
+ * <p/>
+ * Engines are not thread safe; {@link CameraController} calls them only from its camera thread.
+ * <p/>
+ * Camera ids are the int ids reported to JS by init. For the legacy api they are
+ * {@link Camera#open(int)} ids; Camera2 maps them onto the position in
+ * {@code CameraManager.getCameraIdList()}.
+ */
+public interface CameraEngine {
+
+	/**
+	 * Receives the outcome of {@link #startPreview} on the camera thread. onError may also
+	 * arrive after onPreviewStarted when the camera is lost, e.g., to another app.
+	 */
+	interface Callback {
+		void onPreviewStarted(int previewWidth, int previewHeight);
+		void onError(String message);
+	}
+
+	/**
+	 * @return short name of the engine used in logs, e.g., "camera1"
+	 */
+	String getName();
+
+	int getNumberOfCameras();
+
+	/**
+	 * Query the camera's static capabilities. Slow, may open the camera; callers go
+	 * through {@link CameraCapabilityStore} instead.
+	 */
+	CameraCapabilities probe(int cameraId);
+
+	/**
+	 * Open the camera, select a preview size that fits the view and start rendering
+	 * into the surface. Completion is reported through the callback.
+	 * <p/>
+	 * A null surface only opens and configures the camera, leaving it as after
+	 * {@link #pausePreview}; onPreviewStarted then reports the camera ready.
+	 */
+	void startPreview(CameraCapabilities capabilities, PreviewSurface surface,
+					  int viewWidth, int viewHeight, Callback callback);
+
+	/**
+	 * Stop the preview and release the camera. Safe to call when not started.
+	 */
+	void stopPreview();
+
+	/**
+	 * Stop rendering and detach from the surface but keep the camera open, e.g., while
+	 * the activity is briefly paused. Either {@link #resumePreview} or {@link #stopPreview}
+	 * follows.
+	 */
+	void pausePreview();
+
+	/**
+	 * Render into the surface again after {@link #pausePreview} without reopening the
+	 * camera. Power profile and view size changes made while paused apply now.
+	 *
+	 * @return true when the preview size changed
+	 */
+	boolean resumePreview(PreviewSurface surface, int viewWidth, int viewHeight);
+
+	boolean isStarted();
+
+	int getPreviewWidth();
+
+	int getPreviewHeight();
+
+	/**
+	 * @return false when the engine can not rotate the preview itself and the caller
+	 *         must apply a view transform instead
+	 */
+	boolean hasDisplayOrientation();
+
+	/**
+	 * Rotate the preview for the current display orientation.
+	 */
+	void setDisplayOrientation(int degrees);
+
+	/**
+	 * Deliver preview frames to the pipeline, or stop delivering them when null.
+	 * May be called before or while the preview runs.
+	 */
+	void setFramePipeline(FramePipeline pipeline);
+
+	/**
+	 * Select the fps range, preview size limit and recording hint. Applies to the next
+	 * startPreview and, without closing the camera, to a running preview.
+	 *
+	 * @return true when the running preview changed size
+	 */
+	boolean setPowerProfile(PowerProfile profile);
+
+	/**
+	 * Apply night sky focus and exposure settings, or restore continuous focus and auto
+	 * exposure when null, in one update. Applies to the next startPreview and to a
+	 * running preview.
+	 */
+	void setNightSkyMode(NightSkyMode mode);
+
+	/**
+	 * Does nothing when the active camera does not support zoom. Engines may zoom
+	 * smoothly towards the target after returning.
+	 *
+	 * @param zoom magnification between 1.0 and the camera's maxZoom
+	 * @return the zoom the camera settles at, e.g., rounded to its zoom steps
+	 */
+	double setZoom(double zoom);
+
+	/**
+	 * @return the legacy camera handle shared with the flashlight and snapshot plugins
+	 *         or null when the engine is not backed by {@link android.hardware.Camera}
+	 */
+	Camera getCamera();
+}
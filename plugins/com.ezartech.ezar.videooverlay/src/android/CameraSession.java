@@ -0,0 +1,88 @@
+/**
+ * Copyright 2016, ezAR Technologies
+ * http://ezartech.com
+ *
+ * By @wayne_parrott, @vridosh, @kwparrott
+ *
+ * Licensed under a modified MIT license.
+ * Please see LICENSE or http://ezartech.com/ezarstartupkit-license for more information
+ *
+ */
+package com.ezartech.ezar.videooverlay;
+
+import android.hardware.Camera;
+import android.view.SurfaceView;
+import android.view.TextureView;
+
+/**
+ * The camera preview shared with other ezAR plugins, e.g., snapshot and flashlight.
+ * The videoOverlay plugin implements it, resolve it once through the PluginManager:
+ * <pre>
+ * CordovaPlugin plugin = webView.getPluginManager().getPlugin("videoOverlay");
+ * CameraSession session = plugin instanceof CameraSession ? (CameraSession) plugin : null;
+ * </pre>
+ * Getters may be called from any thread.
+ */
+public interface CameraSession {
+
+	/**
+	 * Called on the camera thread, keep it short. A plugin named "flashlight" that
+	 * implements it is registered automatically.
+	 */
+	interface Listener {
+		/**
+		 * @param camera the legacy camera, null for camera2
+		 */
+		void onSessionStarted(CameraSession session, CameraDirection cameraDirection, int cameraId, Camera camera);
+		void onSessionStopped(CameraSession session, CameraDirection cameraDirection, int cameraId);
+		/**
+		 * The preview size changed, e.g., after a power profile change.
+		 */
+		void onSessionReconfigured(CameraSession session);
+	}
+
+	void addSessionListener(Listener listener);
+
+	void removeSessionListener(Listener listener);
+
+	boolean isCameraRunning();
+
+	/**
+	 * @return the legacy camera, null while stopped or for camera2
+	 */
+	Camera getActiveCamera();
+
+	/**
+	 * @return ezAR.UNDEFINED while stopped
+	 */
+	int getActiveCameraId();
+
+	CameraDirection getActiveCameraDirection();
+
+	/**
+	 * @return {@link PreviewSurface#HOST_TEXTURE_VIEW} or {@link PreviewSurface#HOST_SURFACE_VIEW}
+	 */
+	String getPreviewHost();
+
+	/**
+	 * @return null when the preview host is a SurfaceView
+	 */
+	TextureView getCameraView();
+
+	/**
+	 * @return null when the preview host is a TextureView
+	 */
+	SurfaceView getCameraSurfaceView();
+
+	/**
+	 * @return preview frame width in sensor orientation, 0 while stopped
+	 */
+	int getPreviewWidth();
+
+	int getPreviewHeight();
+
+	/**
+	 * @return total zoom, the camera's zoom times the digital zoom of the camera view
+	 */
+	double getZoom();
+}
@@ -0,0 +1,117 @@
+/**
+ * Copyright 2016, ezAR Technologies
+ * http://ezartech.com
+ *
+ * By @wayne_parrott, @vridosh, @kwparrott
+ *
+ * Licensed under a modified MIT license.
+ * Please see LICENSE or http://ezartech.com/ezarstartupkit-license for more information
+ *
+ */
+package com.ezartech.ezar.videooverlay;
+
+/**
+ * Fixed set of {@link PreviewFrame}s allocated once per camera session.
+ * <p/>
+ * Without a {@link Recycler} released frames return to the pool's free list for the next
+ * {@link #acquire()}. With a recycler, e.g., the legacy engine handing buffers back to
+ * Camera.addCallbackBuffer, released frames go to the recycler instead.
+ */
+public class FrameBufferPool {
+
+	public interface Recycler {
+		/**
+		 * Called with the pool lock held, never after {@link #close()} returns.
+		 */
+		void recycle(PreviewFrame frame);
+	}
+
+	private final PreviewFrame[] frames;
+	private final PreviewFrame[] freeFrames;
+	private final Recycler recycler;
+	private int freeCount;
+	private boolean closed = false;
+
+
+	public FrameBufferPool(int count, int width, int height, Recycler recycler) {
+		this.recycler = recycler;
+
+		frames = new PreviewFrame[count];
+		freeFrames = new PreviewFrame[count];
+		for (int i = 0; i < count; i++) {
+			frames[i] = new PreviewFrame(this, width, height);
+			freeFrames[i] = frames[i];
+		}
+		freeCount = count;
+	}
+
+	public int getWidth() {
+		return frames[0].width;
+	}
+
+	public int getHeight() {
+		return frames[0].height;
+	}
+
+	/**
+	 * @return a free frame holding one reference, or null when every frame is in use
+	 */
+	public synchronized PreviewFrame acquire() {
+		if (closed || freeCount == 0) {
+			return null;
+		}
+
+		PreviewFrame frame = freeFrames[--freeCount];
+		freeFrames[freeCount] = null;
+		frame.retain();
+		return frame;
+	}
+
+	/**
+	 * Find the frame that owns a buffer, e.g., one returned by Camera.PreviewCallback.
+	 * The frame is returned holding one reference.
+	 */
+	public synchronized PreviewFrame find(byte[] data) {
+		if (closed) {
+			return null;
+		}
+
+		for (PreviewFrame frame : frames) {
+			if (frame.data == data) {
+				frame.retain();
+				return frame;
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Set the per session metadata of every frame.
+	 */
+	public synchronized void setCameraInfo(CameraCapabilities capabilities) {
+		for (PreviewFrame frame : frames) {
+			frame.orientation = capabilities.orientation;
+			frame.facing = capabilities.facing;
+			frame.horizontalViewAngle = capabilities.horizontalViewAngle;
+		}
+	}
+
+	synchronized void recycle(PreviewFrame frame) {
+		if (closed) {
+			return;
+		}
+
+		if (recycler != null) {
+			recycler.recycle(frame);
+		} else {
+			freeFrames[freeCount++] = frame;
+		}
+	}
+
+	/**
+	 * Stop recycling. Frames still held by processors are dropped when released.
+	 */
+	public synchronized void close() {
+		closed = true;
+	}
+}
@@ -0,0 +1,296 @@
+/**
+ * Copyright 2016, ezAR Technologies
+ * http://ezartech.com
+ *
+ * By @wayne_parrott, @vridosh, @kwparrott
+ *
+ * Licensed under a modified MIT license.
+ * Please see LICENSE or http://ezartech.com/ezarstartupkit-license for more information
+ *
+ */
+package com.ezartech.ezar.videooverlay;
+
+import android.os.Process;
+import android.util.Log;
+
+/**
+ * Delivers camera preview frames to registered {@link FrameProcessor}s on a small pool
+ * of worker threads.
+ * <p/>
+ * Each processor has a short queue of pending frames. When a processor falls behind its
+ * {@link DropPolicy} decides which frame is discarded, so a slow processor only holds back
+ * its own frames and the camera never waits. Idle workers pick the highest priority processor
+ * with a pending frame. Dispatching allocates nothing; frames and queues are preallocated.
+ */
+public class FramePipeline {
+	private static final String TAG = "ezAR";
+
+	public enum DropPolicy {
+		DROP_OLDEST,   //process the latest frame, e.g., tracking
+		DROP_NEWEST    //finish the frames already queued, e.g., recording
+	}
+
+	public static final int PRIORITY_LOW = 0;
+	public static final int PRIORITY_NORMAL = 5;
+	public static final int PRIORITY_HIGH = 10;
+
+	/**
+	 * Told when the first processor registers or the last one unregisters so the
+	 * camera only produces frames while somebody reads them.
+	 */
+	public interface Listener {
+		void onActiveChanged(boolean active);
+	}
+
+	private static final int QUEUE_DEPTH = 2;
+
+	private final Object lock = new Object();
+	private final int workerCount;
+	private final Listener listener;
+
+	//copy on write, sorted by descending priority
+	private Registration[] registrations = new Registration[0];
+	private Thread[] workers;
+	private boolean shutdown = false;
+
+
+	public FramePipeline(Listener listener) {
+		this.listener = listener;
+		this.workerCount = Math.max(1, Math.min(2, Runtime.getRuntime().availableProcessors() - 1));
+	}
+
+	/**
+	 * Add a processor or update the priority and policy of a registered one.
+	 *
+	 * @param priority processors with higher priority are served first when workers are busy
+	 */
+	public void register(FrameProcessor processor, int priority, DropPolicy dropPolicy) {
+		boolean activated;
+		synchronized (lock) {
+			if (shutdown) {
+				return;
+			}
+
+			Registration[] current = registrations;
+			activated = current.length == 0;
+
+			Registration[] updated = null;
+			for (Registration registration : current) {
+				if (registration.processor == processor) {
+					//update in place so the processor still never runs concurrently
+					registration.priority = priority;
+					registration.dropPolicy = dropPolicy;
+					updated = current.clone();
+				}
+			}
+			if (updated == null) {
+				updated = new Registration[current.length + 1];
+				System.arraycopy(current, 0, updated, 0, current.length);
+				updated[current.length] = new Registration(processor, priority, dropPolicy);
+			}
+
+			//insertion sort by descending priority, keeps registration order for equal priorities
+			for (int i = 1; i < updated.length; i++) {
+				Registration registration = updated[i];
+				int j = i;
+				while (j > 0 && updated[j - 1].priority < registration.priority) {
+					updated[j] = updated[j - 1];
+					j--;
+				}
+				updated[j] = registration;
+			}
+
+			registrations = updated;
+			startWorkers();
+		}
+
+		if (activated) {
+			listener.onActiveChanged(true);
+		}
+	}
+
+	public void unregister(FrameProcessor processor) {
+		boolean deactivated = false;
+		synchronized (lock) {
+			Registration[] current = registrations;
+			Registration[] updated = new Registration[current.length];
+			int count = 0;
+			for (Registration registration : current) {
+				if (registration.processor == processor) {
+					registration.clear();
+				} else {
+					updated[count++] = registration;
+				}
+			}
+			if (count == current.length) {
+				return;
+			}
+
+			registrations = trim(updated, count);
+			deactivated = count == 0;
+		}
+
+		if (deactivated) {
+			listener.onActiveChanged(false);
+		}
+	}
+
+	public boolean hasProcessors() {
+		synchronized (lock) {
+			return registrations.length > 0;
+		}
+	}
+
+	/**
+	 * Queue a frame for every registered processor. The caller keeps its own reference
+	 * and releases it afterwards.
+	 */
+	public void dispatch(PreviewFrame frame) {
+		synchronized (lock) {
+			for (Registration registration : registrations) {
+				registration.offer(frame);
+			}
+			lock.notifyAll();
+		}
+	}
+
+	/**
+	 * Stop the workers and drop pending frames.
+	 */
+	public void shutdown() {
+		synchronized (lock) {
+			shutdown = true;
+			for (Registration registration : registrations) {
+				registration.clear();
+			}
+			registrations = new Registration[0];
+			lock.notifyAll();
+		}
+	}
+
+	//lock held
+	private void startWorkers() {
+		if (workers != null) {
+			return;
+		}
+
+		workers = new Thread[workerCount];
+		for (int i = 0; i < workerCount; i++) {
+			workers[i] = new Thread(new Runnable() {
+				@Override
+				public void run() {
+					Process.setThreadPriority(Process.THREAD_PRIORITY_DISPLAY);
+					work();
+				}
+			}, "ezAR-frames-" + i);
+			workers[i].start();
+		}
+	}
+
+	private void work() {
+		while (true) {
+			Registration registration;
+			PreviewFrame frame;
+
+			synchronized (lock) {
+				while (true) {
+					if (shutdown) {
+						return;
+					}
+					registration = nextRegistration();
+					if (registration != null) {
+						break;
+					}
+					try {
+						lock.wait();
+					} catch (InterruptedException e) {
+						return;
+					}
+				}
+
+				frame = registration.poll();
+				registration.running = true;
+			}
+
+			try {
+				registration.processor.onPreviewFrame(frame);
+			} catch (RuntimeException e) {
+				Log.e(TAG, "Frame processor failed", e);
+			}
+
+			synchronized (lock) {
+				registration.running = false;
+				registration.processed++;
+				if (registration.size > 0) {
+					lock.notifyAll();
+				}
+			}
+			frame.release();
+		}
+	}
+
+	//lock held; registrations are sorted by priority
+	private Registration nextRegistration() {
+		for (Registration registration : registrations) {
+			if (!registration.running && registration.size > 0) {
+				return registration;
+			}
+		}
+		return null;
+	}
+
+	private static Registration[] trim(Registration[] registrations, int count) {
+		Registration[] trimmed = new Registration[count];
+		System.arraycopy(registrations, 0, trimmed, 0, count);
+		return trimmed;
+	}
+
+
+	//guarded by the pipeline lock
+	private static class Registration {
+		final FrameProcessor processor;
+		int priority;
+		DropPolicy dropPolicy;
+
+		final PreviewFrame[] queue = new PreviewFrame[QUEUE_DEPTH];
+		int head = 0;
+		int size = 0;
+		boolean running = false;
+		long processed = 0;
+		long dropped = 0;
+
+		Registration(FrameProcessor processor, int priority, DropPolicy dropPolicy) {
+			this.processor = processor;
+			this.priority = priority;
+			this.dropPolicy = dropPolicy;
+		}
+
+		void offer(PreviewFrame frame) {
+			if (size == QUEUE_DEPTH) {
+				dropped++;
+				if (dropPolicy == DropPolicy.DROP_NEWEST) {
+					return;
+				}
+				poll().release();
+			}
+
+			frame.retain();
+			queue[(head + size) % QUEUE_DEPTH] = frame;
+			size++;
+		}
+
+		PreviewFrame poll() {
+			PreviewFrame frame = queue[head];
+			queue[head] = null;
+			head = (head + 1) % QUEUE_DEPTH;
+			size--;
+			return frame;
+		}
+
+		void clear() {
+			while (size > 0) {
+				poll().release();
+			}
+		}
+	}
+}
@@ -0,0 +1,24 @@
+/**
+ * Copyright 2016, ezAR Technologies
+ * http://ezartech.com
+ *
+ * By @wayne_parrott, @vridosh, @kwparrott
+ *
+ * Licensed under a modified MIT license.
+ * Please see LICENSE or http://ezartech.com/ezarstartupkit-license for more information
+ *
+ */
+package com.ezartech.ezar.videooverlay;
+
+/**
+ * Analyses camera preview frames, see {@link FramePipeline#register}.
+ * <p/>
+ * Called on a pipeline worker thread, never concurrently for the same processor.
+ */
+public interface FrameProcessor {
+
+	/**
+	 * The frame and its data are only valid until this method returns.
+	 */
+	void onPreviewFrame(PreviewFrame frame);
+}
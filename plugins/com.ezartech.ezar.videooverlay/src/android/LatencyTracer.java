@@ -0,0 +1,145 @@
+/**
+ * Copyright 2016, ezAR Technologies
+ * http://ezartech.com
+ *
+ * By @wayne_parrott, @vridosh, @kwparrott
+ *
+ * Licensed under a modified MIT license.
+ * Please see LICENSE or http://ezartech.com/ezarstartupkit-license for more information
+ *
+ */
+package com.ezartech.ezar.videooverlay;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+/**
+ * Timing spans of the camera bring-up, e.g., Camera.open or the first preview frame,
+ * kept in a ring buffer of the latest {@link #CAPACITY} spans. Timestamps are
+ * System.nanoTime(), monotonic and unaffected by wall clock changes. Thread safe.
+ */
+public class LatencyTracer {
+
+	//span names
+	public static final String INIT = "init";                   //init action, capabilities of every camera
+	public static final String PROBE = "probe";                 //capabilities of a camera not cached yet
+	public static final String OPEN = "open";                   //Camera.open, CameraManager.openCamera
+	public static final String INIT_CAMERA = "initCamera";      //preview size, fps and parameters
+	public static final String ATTACH_SURFACE = "setPreviewTexture";
+	public static final String START_PREVIEW = "startPreview";  //camera2: capture session configured
+	public static final String LAYOUT = "layout";               //preview layout update
+	public static final String FIRST_FRAME = "firstFrame";      //startCamera until the first frame is shown
+
+	static final int CAPACITY = 256;
+
+	private final long originNanos = System.nanoTime();
+	private final String[] names = new String[CAPACITY];
+	private final long[] starts = new long[CAPACITY];
+	private final long[] durations = new long[CAPACITY];
+	private int next = 0;
+	private int count = 0;
+
+	//start of the startCamera request waiting for its first frame, 0 when none
+	private volatile long firstFrameStart = 0;
+
+
+	public static long now() {
+		return System.nanoTime();
+	}
+
+	/**
+	 * Record a span that ends now.
+	 *
+	 * @param startNanos {@link #now()} when the span started
+	 */
+	public synchronized void record(String name, long startNanos) {
+		names[next] = name;
+		starts[next] = startNanos;
+		durations[next] = System.nanoTime() - startNanos;
+		next = (next + 1) % CAPACITY;
+		count = Math.min(count + 1, CAPACITY);
+	}
+
+	/**
+	 * Start the {@link #FIRST_FRAME} span, ended by the next {@link #frameShown}.
+	 */
+	public void startFirstFrame() {
+		firstFrameStart = System.nanoTime();
+	}
+
+	/**
+	 * Called for every frame shown, only the first after {@link #startFirstFrame} is recorded.
+	 */
+	public void frameShown() {
+		long start = firstFrameStart;
+		if (start != 0) {
+			firstFrameStart = 0;
+			record(FIRST_FRAME, start);
+		}
+	}
+
+	public synchronized void clear() {
+		next = 0;
+		count = 0;
+	}
+
+	/**
+	 * @return {spans: [{name, start, duration}], summary: {name: {count, p50, p95, max}}},
+	 * 			oldest span first; times in ms, starts relative to the tracer's creation
+	 */
+	public synchronized JSONObject toJSON() throws JSONException {
+		JSONArray spans = new JSONArray();
+		Map<String, List<Long>> durationsByName = new LinkedHashMap<String, List<Long>>();
+
+		for (int i = 0; i < count; i++) {
+			int index = (next - count + i + CAPACITY) % CAPACITY;
+			JSONObject span = new JSONObject();
+			span.put("name", names[index]);
+			span.put("start", toMillis(starts[index] - originNanos));
+			span.put("duration", toMillis(durations[index]));
+			spans.put(span);
+
+			List<Long> values = durationsByName.get(names[index]);
+			if (values == null) {
+				values = new ArrayList<Long>();
+				durationsByName.put(names[index], values);
+			}
+			values.add(durations[index]);
+		}
+
+		JSONObject summary = new JSONObject();
+		for (Map.Entry<String, List<Long>> entry : durationsByName.entrySet()) {
+			List<Long> values = entry.getValue();
+			Collections.sort(values);
+
+			JSONObject stats = new JSONObject();
+			stats.put("count", values.size());
+			stats.put("p50", toMillis(percentile(values, 50)));
+			stats.put("p95", toMillis(percentile(values, 95)));
+			stats.put("max", toMillis(values.get(values.size() - 1)));
+			summary.put(entry.getKey(), stats);
+		}
+
+		JSONObject json = new JSONObject();
+		json.put("spans", spans);
+		json.put("summary", summary);
+		return json;
+	}
+
+	//nearest rank of sorted values
+	private static long percentile(List<Long> sorted, int percent) {
+		int rank = (int) Math.ceil(percent / 100.0 * sorted.size());
+		return sorted.get(Math.max(0, rank - 1));
+	}
+
+	private static double toMillis(long nanos) {
+		return nanos / 1000000.0;
+	}
+}
@@ -0,0 +1,593 @@
+/**
+ * Copyright 2016, ezAR Technologies
+ * http://ezartech.com
+ *
+ * By @wayne_parrott, @vridosh, @kwparrott
+ *
+ * Licensed under a modified MIT license.
+ * Please see LICENSE or http://ezartech.com/ezarstartupkit-license for more information
+ *
+ */
+package com.ezartech.ezar.videooverlay;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import android.hardware.Camera;
+import android.hardware.Camera.Parameters;
+import android.util.Log;
+
+/**
+ * {@link CameraEngine} built on the original {@link android.hardware.Camera} api.
+ * Used on devices without Camera2 or whose Camera2 support is only the legacy HAL shim.
+ */
+public class LegacyCameraEngine implements CameraEngine {
+	private static final String TAG = "ezAR";
+
+	//buffers handed to Camera.addCallbackBuffer, enough for the camera to fill one while
+	//others wait in processor queues
+	private static final int FRAME_BUFFER_COUNT = 4;
+
+	private final LatencyTracer tracer;
+	private Camera camera = null;
+	private final SizeSelector sizeSelector = new SizeSelector();
+	private SizeSelector.Selection previewSelection = null;
+	private CameraCapabilities activeCapabilities;
+	private PowerProfile powerProfile = PowerProfile.BALANCED;
+	private NightSkyMode nightSkyMode;
+	private PreviewSurface previewSurface;
+	private int viewWidth;
+	private int viewHeight;
+
+	//zoom, see setZoom
+	private boolean smoothZoomSupported;
+	private int zoomIndex;                //index the camera is at or smoothly zooming to
+	private int zoomPosition;             //index last reported by the smooth zoom
+	private boolean smoothZooming = false;
+	private int pendingZoomIndex = -1;    //next smooth zoom target once the running one stops
+
+	private final Camera.OnZoomChangeListener zoomChangeListener = new Camera.OnZoomChangeListener() {
+		@Override
+		public void onZoomChange(int zoomValue, boolean stopped, Camera camera) {
+			zoomPosition = zoomValue;
+			if (!stopped) {
+				return;
+			}
+
+			smoothZooming = false;
+			int next = pendingZoomIndex;
+			pendingZoomIndex = -1;
+			if (next >= 0 && next != zoomValue && camera == LegacyCameraEngine.this.camera) {
+				smoothZooming = true;
+				camera.startSmoothZoom(next);
+			}
+		}
+	};
+
+	private FramePipeline framePipeline;
+	private FrameBufferPool frameBufferPool;
+	private long frameSequence = 0;
+
+	private final Camera.PreviewCallback previewCallback = new Camera.PreviewCallback() {
+		@Override
+		public void onPreviewFrame(byte[] data, Camera camera) {
+			FrameBufferPool pool = frameBufferPool;
+			FramePipeline pipeline = framePipeline;
+			if (pool == null || pipeline == null) {
+				return;
+			}
+
+			PreviewFrame frame = pool.find(data);
+			if (frame == null) {
+				return;
+			}
+
+			frame.timestamp = System.nanoTime();
+			frame.sequence = frameSequence++;
+			frame.zoom = getFrameZoom();
+			pipeline.dispatch(frame);
+			frame.release();
+		}
+	};
+
+
+	public LegacyCameraEngine(LatencyTracer tracer) {
+		this.tracer = tracer;
+	}
+
+	@Override
+	public String getName() {
+		return "camera1";
+	}
+
+	@Override
+	public int getNumberOfCameras() {
+		return Camera.getNumberOfCameras();
+	}
+
+	@Override
+	public CameraCapabilities probe(int cameraId) {
+		Camera.CameraInfo cameraInfo = new Camera.CameraInfo();
+		Camera.getCameraInfo(cameraId, cameraInfo);
+
+		CameraCapabilities capabilities = new CameraCapabilities();
+		capabilities.cameraId = cameraId;
+		capabilities.facing = cameraInfo.facing;
+		capabilities.orientation = cameraInfo.orientation;
+
+		//the remaining capabilities are only available from an open camera
+		Parameters parameters;
+		Camera open = null;
+		try {
+			open = Camera.open(cameraId);
+			parameters = open.getParameters();
+		} catch (RuntimeException e) {
+			Log.e(TAG, "Unable to probe camera " + cameraId, e);
+			capabilities.complete = false;
+			return capabilities;
+		} finally {
+			if (open != null) {
+				open.release();
+			}
+		}
+
+		capabilities.horizontalViewAngle = parameters.getHorizontalViewAngle();
+
+		if (parameters.isZoomSupported()) {
+			capabilities.maxZoomIndex = parameters.getMaxZoom();
+			capabilities.maxZoom = (parameters.getMaxZoom() + 1) / 10.0;
+			capabilities.zoom = Math.min(parameters.getZoom() / 10.0 + 1, capabilities.maxZoom);
+			if (parameters.getZoomRatios() != null) {
+				capabilities.zoomRatios.addAll(parameters.getZoomRatios());
+			}
+		}
+
+		Camera.Size preferredSize = parameters.getPreferredPreviewSizeForVideo();
+		if (preferredSize != null) {
+			capabilities.preferredPreviewSize = new CameraCapabilities.Size(preferredSize.width, preferredSize.height);
+		}
+		capabilities.previewSizes = toSizes(parameters.getSupportedPreviewSizes());
+		capabilities.pictureSizes = toSizes(parameters.getSupportedPictureSizes());
+
+		List<int[]> fpsRanges = parameters.getSupportedPreviewFpsRange();
+		if (fpsRanges != null) {
+			capabilities.fpsRanges.addAll(fpsRanges);
+		}
+		List<String> focusModes = parameters.getSupportedFocusModes();
+		if (focusModes != null) {
+			capabilities.focusModes.addAll(focusModes);
+		}
+
+		capabilities.minExposureCompensation = parameters.getMinExposureCompensation();
+		capabilities.maxExposureCompensation = parameters.getMaxExposureCompensation();
+		capabilities.exposureCompensationStep = parameters.getExposureCompensationStep();
+		capabilities.maxMeteringAreas = parameters.getMaxNumMeteringAreas();
+		capabilities.maxFocusAreas = parameters.getMaxNumFocusAreas();
+		capabilities.autoExposureLockSupported = parameters.isAutoExposureLockSupported();
+		capabilities.autoWhiteBalanceLockSupported = parameters.isAutoWhiteBalanceLockSupported();
+
+		return capabilities;
+	}
+
+	@Override
+	public void startPreview(CameraCapabilities capabilities, PreviewSurface surface,
+							 int viewWidth, int viewHeight,
+							 final Callback callback) {
+		int cameraId = capabilities.cameraId;
+		long openStart = LatencyTracer.now();
+		try {
+			camera = Camera.open(cameraId);
+			tracer.record(LatencyTracer.OPEN, openStart);
+		} catch (RuntimeException e) {
+			Log.e(TAG, "Unable to open camera " + cameraId, e);
+			camera = null;
+		}
+
+		if (camera == null) {
+			callback.onError("No camera available");
+			return;
+		}
+
+		camera.setZoomChangeListener(zoomChangeListener);
+		camera.setErrorCallback(new Camera.ErrorCallback() {
+			@Override
+			public void onError(int error, Camera camera) {
+				//delivered on the thread that opened the camera
+				Log.e(TAG, "Camera error: " + error);
+				callback.onError("Camera error " + error);
+			}
+		});
+
+		try {
+			activeCapabilities = capabilities;
+			previewSurface = surface;
+			this.viewWidth = viewWidth;
+			this.viewHeight = viewHeight;
+			initCamera(camera, capabilities, surface, viewWidth, viewHeight);
+			if (surface != null) { //otherwise opened paused, see resumePreview
+				updatePreviewCallback();
+				startCameraPreview();
+			}
+		} catch (RuntimeException e) {
+			Log.e(TAG, "Error during preview create", e);
+			stopPreview();
+			callback.onError(e.getMessage());
+			return;
+		}
+
+		callback.onPreviewStarted(previewSelection.previewSize.width, previewSelection.previewSize.height);
+	}
+
+	@Override
+	public void stopPreview() {
+		if (camera == null) {
+			return;
+		}
+
+		try {
+			camera.setPreviewCallbackWithBuffer(null);
+			camera.stopPreview();
+			if (previewSurface != null) {
+				previewSurface.detach(camera);
+			}
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+
+		//frames still held by processors must not be handed back to a released camera
+		closeFrameBufferPool();
+
+		camera.release();
+		camera = null;
+		previewSurface = null;
+	}
+
+	@Override
+	public void pausePreview() {
+		if (camera == null) {
+			return;
+		}
+
+		camera.setPreviewCallbackWithBuffer(null);
+		camera.stopPreview();
+		closeFrameBufferPool();
+		try {
+			if (previewSurface != null) {
+				previewSurface.detach(camera);
+			}
+		} catch (IOException e) {
+			Log.e(TAG, "Unable to detach preview from camera", e);
+		}
+		previewSurface = null;
+	}
+
+	@Override
+	public boolean resumePreview(PreviewSurface surface, int viewWidth, int viewHeight) {
+		CameraCapabilities.Size previousSize = previewSelection.previewSize;
+		previewSurface = surface;
+		this.viewWidth = viewWidth;
+		this.viewHeight = viewHeight;
+
+		//parameters only, cheap compared to Camera.open
+		initCamera(camera, activeCapabilities, surface, viewWidth, viewHeight);
+		updatePreviewCallback();
+		startCameraPreview();
+
+		return !previousSize.equals(previewSelection.previewSize);
+	}
+
+	@Override
+	public boolean isStarted() {
+		return camera != null;
+	}
+
+	@Override
+	public int getPreviewWidth() {
+		return previewSelection != null ? previewSelection.previewSize.width : 0;
+	}
+
+	@Override
+	public int getPreviewHeight() {
+		return previewSelection != null ? previewSelection.previewSize.height : 0;
+	}
+
+	@Override
+	public boolean hasDisplayOrientation() {
+		return true;
+	}
+
+	@Override
+	public void setDisplayOrientation(int degrees) {
+		if (camera != null) {
+			camera.setDisplayOrientation(degrees);
+		}
+	}
+
+	@Override
+	public void setFramePipeline(FramePipeline pipeline) {
+		framePipeline = pipeline;
+		if (camera != null && previewSurface != null) { //paused, see resumePreview
+			updatePreviewCallback();
+		}
+	}
+
+	private void updatePreviewCallback() {
+		if (framePipeline == null) {
+			camera.setPreviewCallbackWithBuffer(null);
+			closeFrameBufferPool();
+			return;
+		}
+
+		if (frameBufferPool == null) {
+			final Camera bufferCamera = camera;
+			frameBufferPool = new FrameBufferPool(FRAME_BUFFER_COUNT,
+					previewSelection.previewSize.width, previewSelection.previewSize.height,
+					new FrameBufferPool.Recycler() {
+						@Override
+						public void recycle(PreviewFrame frame) {
+							bufferCamera.addCallbackBuffer(frame.data);
+						}
+					});
+			frameBufferPool.setCameraInfo(activeCapabilities);
+
+			PreviewFrame frame;
+			while ((frame = frameBufferPool.acquire()) != null) {
+				frame.release(); //recycles into the camera
+			}
+		}
+		camera.setPreviewCallbackWithBuffer(previewCallback);
+	}
+
+	private void closeFrameBufferPool() {
+		if (frameBufferPool != null) {
+			frameBufferPool.close();
+			frameBufferPool = null;
+		}
+	}
+
+	@Override
+	public boolean setPowerProfile(PowerProfile profile) {
+		PowerProfile previousProfile = powerProfile;
+		powerProfile = profile;
+		if (camera == null || previewSurface == null || profile == previousProfile) {
+			return false; //closed or paused, applied by startPreview or resumePreview
+		}
+
+		CameraCapabilities.Size previousSize = previewSelection.previewSize;
+		SizeSelector.Selection selection = sizeSelector.select(activeCapabilities, viewWidth, viewHeight, profile);
+		boolean sizeChanged = !previousSize.equals(selection.previewSize);
+
+		if (!sizeChanged && profile.recordingHint == previousProfile.recordingHint) {
+			//the fps range can change while the preview runs
+			Camera.Parameters parameters = camera.getParameters();
+			setFpsRange(parameters, activeCapabilities);
+			camera.setParameters(parameters);
+			return false;
+		}
+
+		//the preview size and recording hint only change while the preview is stopped
+		camera.setPreviewCallbackWithBuffer(null);
+		camera.stopPreview();
+		closeFrameBufferPool();
+		initCamera(camera, activeCapabilities, previewSurface, viewWidth, viewHeight);
+		updatePreviewCallback();
+		startCameraPreview();
+
+		return sizeChanged;
+	}
+
+	@Override
+	public void setNightSkyMode(NightSkyMode mode) {
+		nightSkyMode = mode;
+		if (camera == null) {
+			return;
+		}
+
+		Camera.Parameters parameters = camera.getParameters();
+		setFocusAndExposure(parameters, activeCapabilities);
+		camera.setParameters(parameters);
+	}
+
+	/**
+	 * Zooms with startSmoothZoom where supported, a new target arriving mid zoom continues
+	 * from where the camera is. Otherwise writes the zoom parameter, skipped when the
+	 * zoom index does not change.
+	 */
+	@Override
+	public double setZoom(double newZoom) {
+		int maxZoom = activeCapabilities.maxZoomIndex;
+		if (!activeCapabilities.isZoomSupported() || maxZoom <= 0) {
+			//do nothing
+			return 1.0;
+		}
+
+		int androidZoom = toZoomIndex(newZoom, maxZoom);
+
+		if (androidZoom != zoomIndex) {
+			if (smoothZoomSupported) {
+				smoothZoomTo(androidZoom);
+			} else {
+				Parameters parameters = camera.getParameters();
+				parameters.setZoom(androidZoom);
+				camera.setParameters(parameters);
+			}
+			zoomIndex = androidZoom;
+		}
+
+		return toZoom(androidZoom, maxZoom);
+	}
+
+	//magnification the camera is at, from its zoom ratios where reported, camera thread only
+	private float getFrameZoom() {
+		int maxZoom = activeCapabilities != null ? activeCapabilities.maxZoomIndex : 0;
+		if (maxZoom <= 0) {
+			return 1;
+		}
+		int index = smoothZooming ? zoomPosition : zoomIndex;
+		if (index < activeCapabilities.zoomRatios.size()) {
+			return activeCapabilities.zoomRatios.get(index) / 100f;
+		}
+		return (float) toZoom(index, maxZoom);
+	}
+
+	/**
+	 * Zoom 1..10 maps linearly onto the camera's zoom indexes 0..maxZoomIndex.
+	 */
+	static int toZoomIndex(double zoom, int maxZoomIndex) {
+		float scale = (float)(10-1) / (float)maxZoomIndex;
+		int index = (int) Math.round((Math.max(1.0, zoom) - 1) / scale);
+		return Math.min(index, maxZoomIndex);
+	}
+
+	static double toZoom(int zoomIndex, int maxZoomIndex) {
+		return 1 + zoomIndex * ((float)(10-1) / (float)maxZoomIndex);
+	}
+
+	/**
+	 * @return true when a new target lies on the other side of the smooth zoom's position
+	 * 			than the target it is running to
+	 */
+	static boolean reversesSmoothZoom(int target, int position, int runningTarget) {
+		return (target - position) * (runningTarget - position) < 0;
+	}
+
+	private void smoothZoomTo(int index) {
+		if (!smoothZooming) {
+			smoothZooming = true;
+			camera.startSmoothZoom(index);
+			return;
+		}
+
+		//retarget once the running zoom stops, stop it right away when it heads the other way
+		pendingZoomIndex = index;
+		if (reversesSmoothZoom(index, zoomPosition, zoomIndex)) {
+			camera.stopSmoothZoom();
+		}
+	}
+
+	@Override
+	public Camera getCamera() {
+		return camera;
+	}
+
+	private void startCameraPreview() {
+		long startTime = LatencyTracer.now();
+		camera.startPreview();
+		tracer.record(LatencyTracer.START_PREVIEW, startTime);
+	}
+
+	private void initCamera(Camera camera, CameraCapabilities capabilities,
+							PreviewSurface surface, int viewWidth, int viewHeight) {
+		long startTime = LatencyTracer.now();
+		Camera.Parameters cameraParameters = camera.getParameters();
+
+		setFocusAndExposure(cameraParameters, capabilities);
+
+//		camera.enableShutterSound(true);  //requires api 17
+
+		previewSelection = sizeSelector.select(capabilities, viewWidth, viewHeight, powerProfile);
+		if (previewSelection == null) {
+			throw new IllegalStateException("No preview sizes available");
+		}
+
+		Log.d(TAG, "preview size: " + previewSelection.previewSize.width + ":" + previewSelection.previewSize.height);
+
+		cameraParameters.setPreviewSize(previewSelection.previewSize.width, previewSelection.previewSize.height);
+		CameraCapabilities.Size picSize = previewSelection.pictureSize != null ? previewSelection.pictureSize : previewSelection.previewSize;
+		cameraParameters.setPictureSize(picSize.width,picSize.height);
+
+		Log.d(TAG, "picture size: " + picSize.width + ":" + picSize.height);
+
+		setFpsRange(cameraParameters, capabilities);
+		cameraParameters.setRecordingHint(powerProfile.recordingHint);
+
+		smoothZoomSupported = cameraParameters.isSmoothZoomSupported();
+		zoomIndex = cameraParameters.isZoomSupported() ? cameraParameters.getZoom() : 0;
+		zoomPosition = zoomIndex;
+		smoothZooming = false;
+		pendingZoomIndex = -1;
+
+		camera.setParameters(cameraParameters);
+		tracer.record(LatencyTracer.INIT_CAMERA, startTime);
+
+		try {
+			if (surface != null) {
+				startTime = LatencyTracer.now();
+				surface.attach(camera);
+				tracer.record(LatencyTracer.ATTACH_SURFACE, startTime);
+			}
+		} catch (IOException e) {
+			Log.e(TAG, "Unable to attach preview to camera!", e);
+		}
+	}
+
+
+	private void setFocusAndExposure(Camera.Parameters cameraParameters, CameraCapabilities capabilities) {
+		NightSkyMode mode = nightSkyMode;
+		if (mode == null) {
+			if (capabilities.hasFocusMode(Camera.Parameters.FOCUS_MODE_CONTINUOUS_VIDEO)) {
+				cameraParameters.setFocusMode(Camera.Parameters.FOCUS_MODE_CONTINUOUS_VIDEO);
+			}
+			if (capabilities.maxFocusAreas > 0) {
+				cameraParameters.setFocusAreas(null);
+			}
+			if (capabilities.maxMeteringAreas > 0) {
+				cameraParameters.setMeteringAreas(null);
+			}
+			cameraParameters.setExposureCompensation(0);
+			if (capabilities.autoExposureLockSupported) {
+				cameraParameters.setAutoExposureLock(false);
+			}
+			if (capabilities.autoWhiteBalanceLockSupported) {
+				cameraParameters.setAutoWhiteBalanceLock(false);
+			}
+			return;
+		}
+
+		if (mode.infinityFocus && capabilities.hasFocusMode(Camera.Parameters.FOCUS_MODE_INFINITY)) {
+			cameraParameters.setFocusMode(Camera.Parameters.FOCUS_MODE_INFINITY);
+		} else if (mode.infinityFocus && capabilities.hasFocusMode(Camera.Parameters.FOCUS_MODE_FIXED)) {
+			cameraParameters.setFocusMode(Camera.Parameters.FOCUS_MODE_FIXED);
+		} else if (capabilities.hasFocusMode(Camera.Parameters.FOCUS_MODE_CONTINUOUS_VIDEO)) {
+			cameraParameters.setFocusMode(Camera.Parameters.FOCUS_MODE_CONTINUOUS_VIDEO);
+		}
+
+		//camera areas span -1000..1000 over the current field of view in sensor orientation
+		List<Camera.Area> areas = Collections.singletonList(
+				new Camera.Area(mode.getMeteringRect(-1000, -1000, 2000, 2000), 1000));
+		if (capabilities.maxFocusAreas > 0) {
+			cameraParameters.setFocusAreas(areas);
+		}
+		if (capabilities.maxMeteringAreas > 0) {
+			cameraParameters.setMeteringAreas(areas);
+		}
+
+		cameraParameters.setExposureCompensation(mode.getExposureIndex(capabilities));
+		if (capabilities.autoExposureLockSupported) {
+			cameraParameters.setAutoExposureLock(mode.lockExposure);
+		}
+		if (capabilities.autoWhiteBalanceLockSupported) {
+			cameraParameters.setAutoWhiteBalanceLock(mode.lockWhiteBalance);
+		}
+	}
+
+	private void setFpsRange(Camera.Parameters cameraParameters, CameraCapabilities capabilities) {
+		int[] fpsRange = powerProfile.selectFpsRange(capabilities.fpsRanges);
+		if (fpsRange != null) {
+			Log.d(TAG, powerProfile.getName() + " fps range: " + fpsRange[0] + "-" + fpsRange[1]);
+			cameraParameters.setPreviewFpsRange(fpsRange[0], fpsRange[1]);
+		}
+	}
+
+	private static List<CameraCapabilities.Size> toSizes(List<Camera.Size> cameraSizes) {
+		List<CameraCapabilities.Size> sizes = new ArrayList<CameraCapabilities.Size>();
+		if (cameraSizes != null) {
+			for (Camera.Size size : cameraSizes) {
+				sizes.add(new CameraCapabilities.Size(size.width, size.height));
+			}
+		}
+		return sizes;
+	}
+}
@@ -0,0 +1,436 @@
+/**
+ * Copyright 2016, ezAR Technologies
+ * http://ezartech.com
+ *
+ * By @wayne_parrott, @vridosh, @kwparrott
+ *
+ * Licensed under a modified MIT license.
+ * Please see LICENSE or http://ezartech.com/ezarstartupkit-license for more information
+ *
+ */
+package com.ezartech.ezar.videooverlay;
+
+/**
+ * Finds the moon, the brightest near circular blob, in the luma plane of preview frames.
+ * <p/>
+ * The Y plane is reduced to a pyramid by 2x2 averaging. The search starts on the coarsest
+ * level on which the moon, about 0.5 degrees across, is still a few pixels in radius given
+ * the frame's view angle and zoom. There pixels above a threshold between the mean and peak
+ * luma are grouped into connected blobs and the blob with the best size and roundness is
+ * kept. Its centroid and radius are then refined on the next finer level. When nothing is
+ * found the next finer level is searched, down to a level at most {@link #SEARCH_WIDTH}
+ * wide. Without a view angle the search starts on the coarsest level. Working buffers are
+ * allocated when the frame size changes, never per frame, and the reported {@link Result}
+ * is reused.
+ */
+public class MoonDetector implements FrameProcessor {
+
+	public static class Result {
+		public boolean found;
+		public float x;             //center in frame pixels, sensor orientation
+		public float y;
+		public float radius;        //frame pixels
+		public float confidence;    //0..1
+		public int frameWidth;
+		public int frameHeight;
+		public int orientation;     //rotation of the frame, see PreviewFrame.orientation
+		public int facing;
+		public long timestamp;
+		public long sequence;
+		public long processingNanos;
+		public boolean tracked;     //found by MoonTracker near the previous position
+
+		void set(Result other) {
+			found = other.found;
+			x = other.x;
+			y = other.y;
+			radius = other.radius;
+			confidence = other.confidence;
+			frameWidth = other.frameWidth;
+			frameHeight = other.frameHeight;
+			orientation = other.orientation;
+			facing = other.facing;
+			timestamp = other.timestamp;
+			sequence = other.sequence;
+			processingNanos = other.processingNanos;
+			tracked = other.tracked;
+		}
+	}
+
+	/**
+	 * Called on the pipeline worker for every analysed frame. The result is reused
+	 * for the next frame, copy what must be kept.
+	 */
+	public interface Listener {
+		void onMoonDetection(Result result);
+	}
+
+	private static final int TARGET_WIDTH = 160;      //coarsest level is at most this wide
+	private static final int SEARCH_WIDTH = 1024;     //finest level searched is at most this wide
+	static final int MIN_PEAK_LUMA = 100;             //darker peaks are never the moon
+	static final int MIN_CONTRAST = 40;               //peak luma above mean luma
+	static final double MOON_DIAMETER = 0.52;         //degrees, seen from earth
+	private static final float MIN_SEARCH_RADIUS = 2; //moon radius on the level searched
+	private static final int MIN_AREA = 12;           //pixels of a blob, a disc of MIN_SEARCH_RADIUS
+
+	private final Listener listener;
+	private final Result result = new Result();
+
+	private volatile int frameInterval = 1;
+	private volatile float minConfidence = 0.5f;
+	private long frameCount = 0;
+
+	//pyramid, level 0 is the frame's Y plane
+	private int frameWidth;
+	private int frameHeight;
+	private byte[][] levels;
+	private int[] levelWidths;
+	private int[] levelHeights;
+	private int levelCount;
+	private int finestSearchLevel;
+
+	//connected component scratch for the levels searched
+	private int[] labels;
+	private int[] stack;
+
+	//best blob of the current frame
+	private int blobArea;
+	private int blobMinX;
+	private int blobMinY;
+	private int blobMaxX;
+	private int blobMaxY;
+	private long blobSumX;
+	private long blobSumY;
+	private boolean blobTouchesEdge;
+
+
+	public MoonDetector(Listener listener) {
+		this.listener = listener;
+	}
+
+	/**
+	 * @param frameInterval analyse every Nth frame
+	 */
+	public void setFrameInterval(int frameInterval) {
+		this.frameInterval = Math.max(1, frameInterval);
+	}
+
+	/**
+	 * @param minConfidence blobs with a lower confidence are reported as not found
+	 */
+	public void setMinConfidence(float minConfidence) {
+		this.minConfidence = minConfidence;
+	}
+
+	@Override
+	public void onPreviewFrame(PreviewFrame frame) {
+		if (frameCount++ % frameInterval != 0) {
+			return;
+		}
+
+		long startTime = System.nanoTime();
+		detect(frame);
+		result.processingNanos = System.nanoTime() - startTime;
+
+		listener.onMoonDetection(result);
+	}
+
+	/**
+	 * Analyse one frame, the outcome is left in the reusable result.
+	 */
+	public Result detect(PreviewFrame frame) {
+		result.found = false;
+		result.confidence = 0;
+		result.frameWidth = frame.width;
+		result.frameHeight = frame.height;
+		result.orientation = frame.orientation;
+		result.facing = frame.facing;
+		result.timestamp = frame.timestamp;
+		result.sequence = frame.sequence;
+
+		prepare(frame.width, frame.height);
+		levels[0] = frame.data;
+		int start = getStartLevel(frame);
+		for (int level = 1; level <= start; level++) {
+			downsample(levels[level - 1], levelWidths[level - 1],
+					levels[level], levelWidths[level], levelHeights[level]);
+		}
+
+		//a known view angle places the moon on the start level, allow for one level of error
+		int finest = getFocalLength(frame) > 0 ? Math.max(finestSearchLevel, start - 1) : finestSearchLevel;
+		for (int level = start; level >= finest && !result.found; level--) {
+			search(level);
+		}
+		return result;
+	}
+
+	/**
+	 * @return pinhole focal length in frame pixels at the frame's zoom, 0 when the view
+	 * 			angle is unknown
+	 */
+	static double getFocalLength(PreviewFrame frame) {
+		if (frame.horizontalViewAngle <= 0) {
+			return 0;
+		}
+		//the view angle spans the frame width at 1x
+		return frame.width / 2.0 / Math.tan(Math.toRadians(frame.horizontalViewAngle) / 2) *
+				Math.max(1f, frame.zoom);
+	}
+
+	/**
+	 * @return the coarsest level on which the moon is at least MIN_SEARCH_RADIUS pixels in
+	 * 			radius, the coarsest level when the view angle is unknown
+	 */
+	private int getStartLevel(PreviewFrame frame) {
+		int coarsest = levelCount - 1;
+		double focal = getFocalLength(frame);
+		if (focal <= 0) {
+			return coarsest;
+		}
+
+		double radius = focal * Math.tan(Math.toRadians(MOON_DIAMETER / 2));
+		int level = finestSearchLevel;
+		while (level < coarsest && radius / (1 << (level + 1)) >= MIN_SEARCH_RADIUS) {
+			level++;
+		}
+		return level;
+	}
+
+	/**
+	 * Look for the moon on one pyramid level, sets the result when found.
+	 */
+	private void search(int level) {
+		byte[] luma = levels[level];
+		int width = levelWidths[level];
+		int height = levelHeights[level];
+		int size = width * height;
+
+		//background and peak
+		int peak = 0;
+		long sum = 0;
+		for (int i = 0; i < size; i++) {
+			int value = luma[i] & 0xff;
+			sum += value;
+			if (value > peak) {
+				peak = value;
+			}
+		}
+		int mean = (int) (sum / size);
+		if (peak < MIN_PEAK_LUMA || peak - mean < MIN_CONTRAST) {
+			return;
+		}
+		int threshold = mean + (peak - mean) / 2;
+
+		if (!findBestBlob(luma, width, height, threshold)) {
+			return;
+		}
+
+		//roundness of the blob: a disc fills pi/4 of its bounding box and has equal sides
+		int blobWidth = blobMaxX - blobMinX + 1;
+		int blobHeight = blobMaxY - blobMinY + 1;
+		float fill = blobArea / (float) (Math.PI / 4 * blobWidth * blobHeight);
+		float aspect = Math.min(blobWidth, blobHeight) / (float) Math.max(blobWidth, blobHeight);
+		float roundness = Math.min(fill, 1 / fill) * aspect;
+		float contrast = Math.min(1f, (peak - mean) / 128f);
+
+		float confidence = roundness * (0.5f + 0.5f * contrast);
+		if (blobTouchesEdge) {
+			confidence *= 0.5f; //partially visible, the center is unreliable
+		}
+
+		refine(level, threshold);
+
+		result.confidence = confidence;
+		result.found = confidence >= minConfidence;
+	}
+
+	//allocates only when the frame size changes
+	private void prepare(int width, int height) {
+		if (width == frameWidth && height == frameHeight) {
+			return;
+		}
+		frameWidth = width;
+		frameHeight = height;
+
+		levelCount = 1;
+		int w = width;
+		int h = height;
+		while (w > TARGET_WIDTH && h >= 2) {
+			w /= 2;
+			h /= 2;
+			levelCount++;
+		}
+
+		levels = new byte[levelCount][];
+		levelWidths = new int[levelCount];
+		levelHeights = new int[levelCount];
+		w = width;
+		h = height;
+		for (int level = 0; level < levelCount; level++) {
+			levelWidths[level] = w;
+			levelHeights[level] = h;
+			if (level > 0) {
+				levels[level] = new byte[w * h];
+			}
+			w /= 2;
+			h /= 2;
+		}
+
+		finestSearchLevel = 0;
+		while (finestSearchLevel < levelCount - 1 && levelWidths[finestSearchLevel] > SEARCH_WIDTH) {
+			finestSearchLevel++;
+		}
+		int searchSize = levelWidths[finestSearchLevel] * levelHeights[finestSearchLevel];
+		labels = new int[searchSize];
+		stack = new int[searchSize];
+	}
+
+	private static void downsample(byte[] src, int srcWidth, byte[] dst, int dstWidth, int dstHeight) {
+		for (int y = 0; y < dstHeight; y++) {
+			int row0 = 2 * y * srcWidth;
+			int row1 = row0 + srcWidth;
+			int out = y * dstWidth;
+			for (int x = 0; x < dstWidth; x++) {
+				int i = 2 * x;
+				int value = (src[row0 + i] & 0xff) + (src[row0 + i + 1] & 0xff) +
+						(src[row1 + i] & 0xff) + (src[row1 + i + 1] & 0xff);
+				dst[out + x] = (byte) (value >> 2);
+			}
+		}
+	}
+
+	/**
+	 * Label 4-connected blobs above the threshold and keep the one with the best
+	 * area * roundness score.
+	 */
+	private boolean findBestBlob(byte[] luma, int width, int height, int threshold) {
+		int size = width * height;
+		for (int i = 0; i < size; i++) {
+			labels[i] = 0;
+		}
+
+		float bestScore = 0;
+		int label = 0;
+		for (int start = 0; start < size; start++) {
+			if (labels[start] != 0 || (luma[start] & 0xff) < threshold) {
+				continue;
+			}
+
+			label++;
+			int area = 0;
+			long sumX = 0;
+			long sumY = 0;
+			int minX = width, minY = height, maxX = -1, maxY = -1;
+
+			int top = 0;
+			stack[top++] = start;
+			labels[start] = label;
+			while (top > 0) {
+				int i = stack[--top];
+				int x = i % width;
+				int y = i / width;
+
+				area++;
+				sumX += x;
+				sumY += y;
+				if (x < minX) minX = x;
+				if (x > maxX) maxX = x;
+				if (y < minY) minY = y;
+				if (y > maxY) maxY = y;
+
+				if (x > 0) top = push(luma, i - 1, label, threshold, top);
+				if (x < width - 1) top = push(luma, i + 1, label, threshold, top);
+				if (y > 0) top = push(luma, i - width, label, threshold, top);
+				if (y < height - 1) top = push(luma, i + width, label, threshold, top);
+			}
+
+			if (area < MIN_AREA) {
+				continue;
+			}
+
+			int blobWidth = maxX - minX + 1;
+			int blobHeight = maxY - minY + 1;
+			float fill = area / (float) (Math.PI / 4 * blobWidth * blobHeight);
+			float aspect = Math.min(blobWidth, blobHeight) / (float) Math.max(blobWidth, blobHeight);
+			float roundness = Math.min(fill, 1 / fill) * aspect;
+			float score = area * roundness * roundness;
+
+			if (score > bestScore) {
+				bestScore = score;
+				blobArea = area;
+				blobSumX = sumX;
+				blobSumY = sumY;
+				blobMinX = minX;
+				blobMinY = minY;
+				blobMaxX = maxX;
+				blobMaxY = maxY;
+				blobTouchesEdge = minX == 0 || minY == 0 || maxX == width - 1 || maxY == height - 1;
+			}
+		}
+
+		return bestScore > 0;
+	}
+
+	private int push(byte[] luma, int i, int label, int threshold, int top) {
+		if (labels[i] == 0 && (luma[i] & 0xff) >= threshold) {
+			labels[i] = label;
+			stack[top++] = i;
+		}
+		return top;
+	}
+
+	/**
+	 * Luma weighted centroid and area of the blob on the next finer level, scaled to
+	 * frame pixels. Falls back to the coarse blob when there is no finer level.
+	 */
+	private void refine(int top, int threshold) {
+		int scale = 1 << top;
+		if (top == 0) {
+			result.x = blobSumX / (float) blobArea;
+			result.y = blobSumY / (float) blobArea;
+			result.radius = (float) Math.sqrt(blobArea / Math.PI);
+			return;
+		}
+
+		int level = top - 1;
+		byte[] luma = levels[level];
+		int width = levelWidths[level];
+		int height = levelHeights[level];
+
+		//blob bounds on the finer level with a 2 pixel margin
+		int minX = Math.max(0, blobMinX * 2 - 2);
+		int minY = Math.max(0, blobMinY * 2 - 2);
+		int maxX = Math.min(width - 1, blobMaxX * 2 + 3);
+		int maxY = Math.min(height - 1, blobMaxY * 2 + 3);
+
+		long weightSum = 0;
+		long weightedX = 0;
+		long weightedY = 0;
+		int area = 0;
+		for (int y = minY; y <= maxY; y++) {
+			int row = y * width;
+			for (int x = minX; x <= maxX; x++) {
+				int weight = (luma[row + x] & 0xff) - threshold;
+				if (weight >= 0) {
+					weight++;
+					weightSum += weight;
+					weightedX += (long) weight * x;
+					weightedY += (long) weight * y;
+					area++;
+				}
+			}
+		}
+
+		int levelScale = scale / 2;
+		if (weightSum == 0) {
+			result.x = (blobSumX / (float) blobArea + 0.5f) * scale;
+			result.y = (blobSumY / (float) blobArea + 0.5f) * scale;
+			result.radius = (float) Math.sqrt(blobArea / Math.PI) * scale;
+			return;
+		}
+
+		result.x = (weightedX / (float) weightSum + 0.5f) * levelScale;
+		result.y = (weightedY / (float) weightSum + 0.5f) * levelScale;
+		result.radius = (float) Math.sqrt(area / Math.PI) * levelScale;
+	}
+}
@@ -0,0 +1,282 @@
+/**
+ * Copyright 2016, ezAR Technologies
+ * http://ezartech.com
+ *
+ * By @wayne_parrott, @vridosh, @kwparrott
+ *
+ * Licensed under a modified MIT license.
+ * Please see LICENSE or http://ezartech.com/ezarstartupkit-license for more information
+ *
+ */
+package com.ezartech.ezar.videooverlay;
+
+import android.hardware.Camera.CameraInfo;
+
+/**
+ * Keeps the moon locked once {@link MoonDetector} has found it.
+ * <p/>
+ * While locked only a window around the previous position is searched, shifted by the
+ * device rotation reported by the {@link MotionPrior}, and sampled at a step proportional
+ * to the moon's radius, so the cost per frame no longer depends on the frame size. The
+ * full frame detector runs again, in the same frame, whenever the tracked blob is lost,
+ * leaves the window or its confidence drops.
+ */
+public class MoonTracker implements FrameProcessor {
+
+	private static final int MIN_MARGIN = 24;         //frame pixels searched beyond the moon's rim
+	private static final int SAMPLES_PER_RADIUS = 16; //sampling density across the moon's radius
+
+	private final MoonDetector detector;
+	private final MotionPrior motionPrior;            //may be null
+	private final MoonDetector.Listener listener;
+	private final MoonDetector.Result result = new MoonDetector.Result();
+	private final float[] rotation = new float[2];
+
+	private volatile int frameInterval = 1;
+	private volatile float minConfidence = 0.5f;
+	private volatile boolean trackingEnabled = true;
+	private long frameCount = 0;
+
+	//last lock, only used by the worker running onPreviewFrame
+	private boolean locked = false;
+	private float lockX;
+	private float lockY;
+	private float lockRadius;
+	private int lockWidth;
+	private int lockHeight;
+
+	//scene motion since the previous analysed frame in frame pixels
+	private float shiftX;
+	private float shiftY;
+
+
+	public MoonTracker(MotionPrior motionPrior, MoonDetector.Listener listener) {
+		this.detector = new MoonDetector(null);
+		this.motionPrior = motionPrior;
+		this.listener = listener;
+	}
+
+	/**
+	 * @param frameInterval analyse every Nth frame
+	 */
+	public void setFrameInterval(int frameInterval) {
+		this.frameInterval = Math.max(1, frameInterval);
+	}
+
+	/**
+	 * @param minConfidence blobs with a lower confidence are reported as not found
+	 */
+	public void setMinConfidence(float minConfidence) {
+		this.minConfidence = minConfidence;
+		detector.setMinConfidence(minConfidence);
+	}
+
+	/**
+	 * @param trackingEnabled false to run the full frame detector on every analysed frame
+	 */
+	public void setTrackingEnabled(boolean trackingEnabled) {
+		this.trackingEnabled = trackingEnabled;
+	}
+
+	public boolean isTrackingEnabled() {
+		return trackingEnabled;
+	}
+
+	@Override
+	public void onPreviewFrame(PreviewFrame frame) {
+		if (frameCount++ % frameInterval != 0) {
+			return;
+		}
+
+		long startTime = System.nanoTime();
+		predict(frame);
+
+		if (locked && (frame.width != lockWidth || frame.height != lockHeight)) {
+			locked = false;
+		}
+		if (!(locked && trackingEnabled && track(frame))) {
+			result.set(detector.detect(frame));
+			result.tracked = false;
+		}
+
+		locked = result.found;
+		if (locked) {
+			lockX = result.x;
+			lockY = result.y;
+			lockRadius = result.radius;
+			lockWidth = frame.width;
+			lockHeight = frame.height;
+		}
+
+		result.processingNanos = System.nanoTime() - startTime;
+		listener.onMoonDetection(result);
+	}
+
+	/**
+	 * Convert the gyroscope rotation since the previous analysed frame into a shift of
+	 * the scene in frame pixels. Only the back camera is predicted, the front camera's
+	 * preview is mirrored.
+	 */
+	private void predict(PreviewFrame frame) {
+		shiftX = 0;
+		shiftY = 0;
+
+		boolean moved = motionPrior != null && motionPrior.takeRotation(rotation);
+		double focal = MoonDetector.getFocalLength(frame); //grows with the zoom
+		if (!moved || frame.facing != CameraInfo.CAMERA_FACING_BACK || focal <= 0) {
+			return;
+		}
+
+		//scene shift in the device's natural orientation, y down. Turning the device
+		//left (+y) moves the scene right, tilting it up (+x) moves the scene down.
+		float dx = (float) (focal * rotation[1]);
+		float dy = (float) (focal * rotation[0]);
+
+		//frames are the natural orientation rotated counter clockwise by the sensor orientation
+		int turns = (frame.orientation / 90) % 4;
+		for (int i = 0; i < turns; i++) {
+			float x = dx;
+			dx = dy;
+			dy = -x;
+		}
+
+		shiftX = dx;
+		shiftY = dy;
+	}
+
+	/**
+	 * Search the window around the predicted position on the frame's Y plane.
+	 *
+	 * @return false when the full frame detector must run instead
+	 */
+	private boolean track(PreviewFrame frame) {
+		int width = frame.width;
+		int height = frame.height;
+		byte[] luma = frame.data;
+
+		float centerX = lockX + shiftX;
+		float centerY = lockY + shiftY;
+		float motion = (float) Math.sqrt(shiftX * shiftX + shiftY * shiftY);
+		int half = (int) Math.max(3 * lockRadius, lockRadius + MIN_MARGIN + motion / 2);
+		int step = Math.max(1, (int) (lockRadius / SAMPLES_PER_RADIUS));
+
+		int minX = Math.max(0, (int) (centerX - half));
+		int minY = Math.max(0, (int) (centerY - half));
+		int maxX = Math.min(width - 1, (int) (centerX + half));
+		int maxY = Math.min(height - 1, (int) (centerY + half));
+		if (maxX - minX < 2 * step || maxY - minY < 2 * step) {
+			return false; //predicted outside of the frame
+		}
+		//last sampled column and row
+		maxX = minX + (maxX - minX) / step * step;
+		maxY = minY + (maxY - minY) / step * step;
+
+		//background and peak of the window
+		int peak = 0;
+		long sum = 0;
+		int count = 0;
+		for (int y = minY; y <= maxY; y += step) {
+			int row = y * width;
+			for (int x = minX; x <= maxX; x += step) {
+				int value = luma[row + x] & 0xff;
+				sum += value;
+				count++;
+				if (value > peak) {
+					peak = value;
+				}
+			}
+		}
+		int mean = (int) (sum / count);
+		if (peak < MoonDetector.MIN_PEAK_LUMA || peak - mean < MoonDetector.MIN_CONTRAST) {
+			return false;
+		}
+		int threshold = mean + (peak - mean) / 2;
+
+		//luma weighted centroid of everything above the threshold
+		long weightSum = 0;
+		long weightedX = 0;
+		long weightedY = 0;
+		for (int y = minY; y <= maxY; y += step) {
+			int row = y * width;
+			for (int x = minX; x <= maxX; x += step) {
+				int weight = (luma[row + x] & 0xff) - threshold;
+				if (weight >= 0) {
+					weight++;
+					weightSum += weight;
+					weightedX += (long) weight * x;
+					weightedY += (long) weight * y;
+				}
+			}
+		}
+
+		//centroid and extent of the samples near it, bright stars further out in the
+		//window would stretch the extent and fail the roundness test
+		float reach = 1.5f * lockRadius + 2 * step;
+		float roughX = weightedX / (float) weightSum;
+		float roughY = weightedY / (float) weightSum;
+		int nearMinX = minX + Math.max(0, (int) Math.ceil((roughX - reach - minX) / step)) * step;
+		int nearMinY = minY + Math.max(0, (int) Math.ceil((roughY - reach - minY) / step)) * step;
+		int nearMaxX = Math.min(maxX, (int) (roughX + reach));
+		int nearMaxY = Math.min(maxY, (int) (roughY + reach));
+		weightSum = 0;
+		weightedX = 0;
+		weightedY = 0;
+		int area = 0;
+		int blobMinX = maxX, blobMinY = maxY, blobMaxX = minX, blobMaxY = minY;
+		for (int y = nearMinY; y <= nearMaxY; y += step) {
+			int row = y * width;
+			for (int x = nearMinX; x <= nearMaxX; x += step) {
+				int weight = (luma[row + x] & 0xff) - threshold;
+				float dx = x - roughX;
+				float dy = y - roughY;
+				if (weight >= 0 && dx * dx + dy * dy <= reach * reach) {
+					weight++;
+					weightSum += weight;
+					weightedX += (long) weight * x;
+					weightedY += (long) weight * y;
+					area++;
+					if (x < blobMinX) blobMinX = x;
+					if (x > blobMaxX) blobMaxX = x;
+					if (y < blobMinY) blobMinY = y;
+					if (y > blobMaxY) blobMaxY = y;
+				}
+			}
+		}
+
+		//a blob reaching the window border is partially outside of it or not the moon
+		if (area == 0 || blobMinX == minX || blobMinY == minY || blobMaxX == maxX || blobMaxY == maxY) {
+			return false;
+		}
+
+		//same roundness measure as the detector, in samples
+		int blobWidth = (blobMaxX - blobMinX) / step + 1;
+		int blobHeight = (blobMaxY - blobMinY) / step + 1;
+		float fill = area / (float) (Math.PI / 4 * blobWidth * blobHeight);
+		float aspect = Math.min(blobWidth, blobHeight) / (float) Math.max(blobWidth, blobHeight);
+		float roundness = Math.min(fill, 1 / fill) * aspect;
+		float contrast = Math.min(1f, (peak - mean) / 128f);
+
+		//the moon's size barely changes between frames
+		float radius = (float) Math.sqrt(area * step * step / Math.PI);
+		float consistency = Math.min(radius, lockRadius) / Math.max(radius, lockRadius);
+
+		float confidence = roundness * (0.5f + 0.5f * contrast) * consistency;
+		if (confidence < minConfidence) {
+			return false;
+		}
+
+		result.found = true;
+		result.tracked = true;
+		result.x = weightedX / (float) weightSum + 0.5f; //pixel centers, as the detector
+		result.y = weightedY / (float) weightSum + 0.5f;
+		result.radius = radius;
+		result.confidence = confidence;
+		result.frameWidth = width;
+		result.frameHeight = height;
+		result.orientation = frame.orientation;
+		result.facing = frame.facing;
+		result.timestamp = frame.timestamp;
+		result.sequence = frame.sequence;
+		return true;
+	}
+}
@@ -0,0 +1,102 @@
+/**
+ * Copyright 2016, ezAR Technologies
+ * http://ezartech.com
+ *
+ * By @wayne_parrott, @vridosh, @kwparrott
+ *
+ * Licensed under a modified MIT license.
+ * Please see LICENSE or http://ezartech.com/ezarstartupkit-license for more information
+ *
+ */
+package com.ezartech.ezar.videooverlay;
+
+import android.content.Context;
+import android.hardware.Sensor;
+import android.hardware.SensorEvent;
+import android.hardware.SensorEventListener;
+import android.hardware.SensorManager;
+
+/**
+ * Integrates the gyroscope between preview frames so a tracker can predict where the
+ * scene moved before it searches a frame.
+ * <p/>
+ * Rotations are in radians around the device's natural x and y axes.
+ */
+public class MotionPrior implements SensorEventListener {
+
+	private static final float NS2S = 1.0f / 1000000000.0f;
+
+	private final SensorManager sensorManager;
+	private final Sensor gyroscope;
+	private boolean started = false;
+
+	//guarded by this
+	private float rotationX;
+	private float rotationY;
+	private long lastTimestamp;
+	private boolean valid;
+
+
+	public MotionPrior(Context context) {
+		this((SensorManager) context.getSystemService(Context.SENSOR_SERVICE));
+	}
+
+	MotionPrior(SensorManager sensorManager) {
+		this.sensorManager = sensorManager;
+		gyroscope = sensorManager == null ? null : sensorManager.getDefaultSensor(Sensor.TYPE_GYROSCOPE);
+	}
+
+	public boolean isAvailable() {
+		return gyroscope != null;
+	}
+
+	public synchronized void start() {
+		if (started || gyroscope == null) {
+			return;
+		}
+		started = true;
+		lastTimestamp = 0;
+		valid = false;
+		sensorManager.registerListener(this, gyroscope, SensorManager.SENSOR_DELAY_GAME);
+	}
+
+	public synchronized void stop() {
+		if (!started) {
+			return;
+		}
+		started = false;
+		sensorManager.unregisterListener(this);
+	}
+
+	/**
+	 * Rotation since the previous call.
+	 *
+	 * @param rotation receives the rotation around the x and y axes
+	 * @return false when no gyroscope samples were received since the previous call
+	 */
+	public synchronized boolean takeRotation(float[] rotation) {
+		rotation[0] = rotationX;
+		rotation[1] = rotationY;
+		rotationX = 0;
+		rotationY = 0;
+
+		boolean result = valid;
+		valid = false;
+		return result;
+	}
+
+	@Override
+	public synchronized void onSensorChanged(SensorEvent event) {
+		if (lastTimestamp != 0) {
+			float dt = (event.timestamp - lastTimestamp) * NS2S;
+			rotationX += event.values[0] * dt;
+			rotationY += event.values[1] * dt;
+			valid = true;
+		}
+		lastTimestamp = event.timestamp;
+	}
+
+	@Override
+	public void onAccuracyChanged(Sensor sensor, int accuracy) {
+	}
+}
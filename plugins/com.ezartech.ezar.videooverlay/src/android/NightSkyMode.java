@@ -0,0 +1,86 @@
+/**
+ * Copyright 2016, ezAR Technologies
+ * http://ezartech.com
+ *
+ * By @wayne_parrott, @vridosh, @kwparrott
+ *
+ * Licensed under a modified MIT license.
+ * Please see LICENSE or http://ezartech.com/ezarstartupkit-license for more information
+ *
+ */
+package com.ezartech.ezar.videooverlay;
+
+import android.graphics.Rect;
+
+/**
+ * 3A settings for photographing the night sky: focus fixed at infinity instead of
+ * hunting against a dark sky, and exposure metered on a small area, e.g., the moon,
+ * instead of the whole black frame.
+ * <p/>
+ * Engines apply every setting in a single parameter update or capture request.
+ * Coordinates are relative to the preview frame in sensor orientation, the same
+ * space as {@link MoonDetector.Result}.
+ */
+public class NightSkyMode {
+
+	//smallest metering area side, smaller areas are rounded away by the cameras
+	static final float MIN_METERING_SIZE = 0.02f;
+
+	public boolean infinityFocus = true;
+	public float meteringX = 0.5f;          //0..1 across the frame width
+	public float meteringY = 0.5f;          //0..1 across the frame height
+	public float meteringSize = 0.1f;       //side of the metering area, fraction of the frame
+	public float exposureCompensation = 0;  //EV, rounded to the camera's steps
+	public boolean lockExposure = false;
+	public boolean lockWhiteBalance = false;
+
+
+	public NightSkyMode() {
+	}
+
+	public NightSkyMode(NightSkyMode other) {
+		infinityFocus = other.infinityFocus;
+		meteringX = other.meteringX;
+		meteringY = other.meteringY;
+		meteringSize = other.meteringSize;
+		exposureCompensation = other.exposureCompensation;
+		lockExposure = other.lockExposure;
+		lockWhiteBalance = other.lockWhiteBalance;
+	}
+
+	/**
+	 * Metering area in the given coordinate space, clamped to
+	 * [left, left + width - 1] x [top, top + height - 1] and at least one unit wide and
+	 * high. Legacy camera areas use -1000..1000, camera2 regions use the crop region of
+	 * the active array.
+	 */
+	Rect getMeteringRect(int left, int top, int width, int height) {
+		int right = left + width - 1;
+		int bottom = top + height - 1;
+		float half = meteringSize / 2;
+		int areaLeft = Math.min(right - 1, left + (int) (clamp(meteringX - half) * width));
+		int areaTop = Math.min(bottom - 1, top + (int) (clamp(meteringY - half) * height));
+		int areaRight = left + (int) (clamp(meteringX + half) * width);
+		int areaBottom = top + (int) (clamp(meteringY + half) * height);
+		return new Rect(areaLeft, areaTop,
+				Math.min(right, Math.max(areaLeft + 1, areaRight)),
+				Math.min(bottom, Math.max(areaTop + 1, areaBottom)));
+	}
+
+	/**
+	 * @return exposure compensation index within the camera's range, 0 when unsupported
+	 */
+	int getExposureIndex(CameraCapabilities capabilities) {
+		if (capabilities.exposureCompensationStep <= 0) {
+			return 0;
+		}
+
+		int index = Math.round(exposureCompensation / capabilities.exposureCompensationStep);
+		return Math.max(capabilities.minExposureCompensation,
+				Math.min(capabilities.maxExposureCompensation, index));
+	}
+
+	private static float clamp(float value) {
+		return Math.max(0f, Math.min(1f, value));
+	}
+}
@@ -0,0 +1,107 @@
+/**
+ * Copyright 2016, ezAR Technologies
+ * http://ezartech.com
+ *
+ * By @wayne_parrott, @vridosh, @kwparrott
+ *
+ * Licensed under a modified MIT license.
+ * Please see LICENSE or http://ezartech.com/ezarstartupkit-license for more information
+ *
+ */
+package com.ezartech.ezar.videooverlay;
+
+import android.content.Context;
+import android.os.SystemClock;
+import android.view.MotionEvent;
+import android.view.ScaleGestureDetector;
+import android.view.View;
+
+/**
+ * Pinch to zoom applied natively, without a JS round trip per touch event. The webview
+ * covers the camera view and receives the touches, so the detector watches the webview's
+ * touch stream and passes every event on to the web content. The listener is told about
+ * zoom changes at most once per event interval, and once more when the pinch ends, so JS
+ * can keep its zoom controls in sync. Used on the UI thread.
+ */
+public class PinchZoom implements View.OnTouchListener, ScaleGestureDetector.OnScaleGestureListener {
+
+	public interface Listener {
+		void onZoomChanged(double zoom);
+	}
+
+	private final ScaleGestureDetector detector;
+	private final CameraController controller;
+	private final Listener listener;
+	private long eventInterval;   //ms between zoom change events during a pinch
+	private double maxZoom = 0;   //0 while no camera with zoom is previewing
+	private double zoom;
+	private double reportedZoom;
+	private long reportTime;
+
+
+	public PinchZoom(Context context, CameraController controller, long eventInterval, Listener listener) {
+		this.detector = new ScaleGestureDetector(context, this);
+		this.controller = controller;
+		this.eventInterval = eventInterval;
+		this.listener = listener;
+	}
+
+	public void setEventInterval(long eventInterval) {
+		this.eventInterval = eventInterval;
+	}
+
+	/**
+	 * @param maxZoom the previewing camera's maxZoom, 0 to ignore pinches
+	 */
+	public void setMaxZoom(double maxZoom) {
+		this.maxZoom = maxZoom;
+	}
+
+	@Override
+	public boolean onTouch(View view, MotionEvent event) {
+		detector.onTouchEvent(event);
+		return false;
+	}
+
+	@Override
+	public boolean onScaleBegin(ScaleGestureDetector detector) {
+		if (maxZoom <= 1.0) {
+			return false;
+		}
+
+		zoom = Math.max(1.0, controller.getZoom());
+		reportedZoom = zoom;
+		reportTime = 0;
+		return true;
+	}
+
+	@Override
+	public boolean onScale(ScaleGestureDetector detector) {
+		double next = Math.max(1.0, Math.min(maxZoom, zoom * detector.getScaleFactor()));
+		if (next == zoom) {
+			return true;
+		}
+
+		zoom = next;
+		controller.setZoom(zoom, null);
+
+		long now = SystemClock.uptimeMillis();
+		if (now - reportTime >= eventInterval) {
+			report(now);
+		}
+		return true;
+	}
+
+	@Override
+	public void onScaleEnd(ScaleGestureDetector detector) {
+		if (zoom != reportedZoom) {
+			report(SystemClock.uptimeMillis());
+		}
+	}
+
+	private void report(long now) {
+		reportedZoom = zoom;
+		reportTime = now;
+		listener.onZoomChanged(zoom);
+	}
+}
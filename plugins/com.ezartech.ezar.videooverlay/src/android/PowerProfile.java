@@ -0,0 +1,76 @@
+/**
+ * Copyright 2016, ezAR Technologies
+ * http://ezartech.com
+ *
+ * By @wayne_parrott, @vridosh, @kwparrott
+ *
+ * Licensed under a modified MIT license.
+ * Please see LICENSE or http://ezartech.com/ezarstartupkit-license for more information
+ *
+ */
+package com.ezartech.ezar.videooverlay;
+
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Trades preview smoothness for camera power draw. A profile picks the preview fps range,
+ * caps the preview resolution and sets the recording hint, which moves the camera onto
+ * its video pipeline (camera2: TEMPLATE_RECORD). That pipeline keeps a steady frame rate
+ * at a higher power draw, so only SMOOTH uses it.
+ */
+public enum PowerProfile {
+	BATTERY(15, 1280, false),   //long night sky sessions
+	BALANCED(24, 1920, false),
+	SMOOTH(30, 0, true);
+
+	final int targetFps;
+	final int maxPreviewSide;   //longest preview side in pixels, 0 for no limit
+	final boolean recordingHint;
+
+
+	PowerProfile(int targetFps, int maxPreviewSide, boolean recordingHint) {
+		this.targetFps = targetFps;
+		this.maxPreviewSide = maxPreviewSide;
+		this.recordingHint = recordingHint;
+	}
+
+	/**
+	 * @param name profile name as used by JS, e.g., "battery"
+	 * @throws IllegalArgumentException for an unknown name
+	 */
+	public static PowerProfile fromName(String name) {
+		return valueOf(name.toUpperCase(Locale.US));
+	}
+
+	public String getName() {
+		return name().toLowerCase(Locale.US);
+	}
+
+	/**
+	 * Pick the range whose upper bound is closest to the profile's fps. Among equal upper
+	 * bounds BATTERY prefers the lowest lower bound so auto exposure may slow the frame rate
+	 * further in the dark, the other profiles prefer a steady frame rate.
+	 *
+	 * @param fpsRanges supported ranges scaled by 1000, see CameraCapabilities.fpsRanges
+	 * @return null when the camera reports no ranges
+	 */
+	public int[] selectFpsRange(List<int[]> fpsRanges) {
+		int target = targetFps * 1000;
+		int[] best = null;
+		for (int[] range : fpsRanges) {
+			if (best == null) {
+				best = range;
+				continue;
+			}
+
+			int diff = Math.abs(range[1] - target);
+			int bestDiff = Math.abs(best[1] - target);
+			if (diff < bestDiff ||
+					(diff == bestDiff && (this == BATTERY ? range[0] < best[0] : range[0] > best[0]))) {
+				best = range;
+			}
+		}
+		return best;
+	}
+}
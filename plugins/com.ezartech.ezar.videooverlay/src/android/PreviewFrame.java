@@ -0,0 +1,67 @@
+/**
+ * Copyright 2016, ezAR Technologies
+ * http://ezartech.com
+ *
+ * By @wayne_parrott, @vridosh, @kwparrott
+ *
+ * Licensed under a modified MIT license.
+ * Please see LICENSE or http://ezartech.com/ezarstartupkit-license for more information
+ *
+ */
+package com.ezartech.ezar.videooverlay;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import android.graphics.ImageFormat;
+
+/**
+ * A camera preview frame in NV21 layout backed by a buffer of a {@link FrameBufferPool}.
+ * <p/>
+ * Frames are reused: a {@link FrameProcessor} may only read a frame until it returns
+ * from onPreviewFrame and must copy anything it wants to keep.
+ */
+public class PreviewFrame {
+
+	public final byte[] data;
+	public final int width;
+	public final int height;
+	public final int format = ImageFormat.NV21;
+
+	//set by the engine for every frame
+	public long timestamp;      //nanoseconds on the System.nanoTime() clock for either engine
+	public long sequence;       //increases by 1 per frame delivered by the camera
+	public float zoom = 1;      //camera zoom the frame was captured at, 1 without zoom
+
+	//set by the engine once per session
+	public int orientation;     //sensor orientation in degrees
+	public int facing;          //Camera.CameraInfo.CAMERA_FACING_XXX
+	public float horizontalViewAngle; //degrees across the frame width, 0 when unknown
+
+	private final FrameBufferPool pool;
+	private final AtomicInteger refCount = new AtomicInteger(0);
+
+
+	PreviewFrame(FrameBufferPool pool, int width, int height) {
+		this.pool = pool;
+		this.width = width;
+		this.height = height;
+		this.data = new byte[getBufferSize(width, height)];
+	}
+
+	public static int getBufferSize(int width, int height) {
+		return width * height * 3 / 2; //NV21: 8 bits of Y, 4 of interleaved VU per pixel
+	}
+
+	void retain() {
+		refCount.incrementAndGet();
+	}
+
+	/**
+	 * Returns the frame to its pool once every holder has released it.
+	 */
+	void release() {
+		if (refCount.decrementAndGet() == 0) {
+			pool.recycle(this);
+		}
+	}
+}
@@ -0,0 +1,221 @@
+/**
+ * Copyright 2016, ezAR Technologies
+ * http://ezartech.com
+ *
+ * By @wayne_parrott, @vridosh, @kwparrott
+ *
+ * Licensed under a modified MIT license.
+ * Please see LICENSE or http://ezartech.com/ezarstartupkit-license for more information
+ *
+ */
+package com.ezartech.ezar.videooverlay;
+
+import java.io.IOException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import android.graphics.Rect;
+import android.graphics.SurfaceTexture;
+import android.hardware.Camera;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+import android.view.Surface;
+import android.view.SurfaceHolder;
+
+/**
+ * Where an engine renders the preview: the {@link SurfaceTexture} of a TextureView or
+ * the {@link Surface} of a SurfaceView. A TextureView can be transformed and read back
+ * but costs an extra GPU composition pass per frame; the display hardware composes a
+ * SurfaceView directly.
+ */
+public abstract class PreviewSurface {
+	private static final String TAG = "ezAR";
+
+	//preview host names, see EzarPreviewHost preference
+	public static final String HOST_TEXTURE_VIEW = "textureview";
+	public static final String HOST_SURFACE_VIEW = "surfaceview";
+
+
+	public static PreviewSurface of(SurfaceTexture texture) {
+		return new TextureSurface(texture);
+	}
+
+	public static PreviewSurface of(SurfaceHolder holder) {
+		return new HolderSurface(holder);
+	}
+
+	public abstract String getHostName();
+
+	/**
+	 * Legacy api, render the camera's preview into this surface.
+	 */
+	abstract void attach(Camera camera) throws IOException;
+
+	abstract void detach(Camera camera) throws IOException;
+
+	/**
+	 * Camera2 api, surface sized for the preview. Release it with {@link #releaseSurface}.
+	 * Called on the camera thread, may block until the surface has the size.
+	 */
+	abstract Surface createSurface(int width, int height);
+
+	abstract void releaseSurface(Surface surface);
+
+	/**
+	 * Called once no engine renders into this surface anymore.
+	 */
+	abstract void release();
+
+
+	private static class TextureSurface extends PreviewSurface {
+		private final SurfaceTexture texture;
+
+		TextureSurface(SurfaceTexture texture) {
+			this.texture = texture;
+		}
+
+		@Override
+		public String getHostName() {
+			return HOST_TEXTURE_VIEW;
+		}
+
+		@Override
+		void attach(Camera camera) throws IOException {
+			camera.setPreviewTexture(texture);
+		}
+
+		@Override
+		void detach(Camera camera) throws IOException {
+			camera.setPreviewTexture(null);
+		}
+
+		@Override
+		Surface createSurface(int width, int height) {
+			texture.setDefaultBufferSize(width, height);
+			return new Surface(texture);
+		}
+
+		@Override
+		void releaseSurface(Surface surface) {
+			surface.release();
+		}
+
+		@Override
+		void release() {
+			//TextureView handed ownership to us in onSurfaceTextureDestroyed
+			texture.release();
+		}
+
+		@Override
+		public boolean equals(Object other) {
+			return other instanceof TextureSurface && ((TextureSurface) other).texture == texture;
+		}
+
+		@Override
+		public int hashCode() {
+			return texture.hashCode();
+		}
+	}
+
+	private static class HolderSurface extends PreviewSurface {
+		private static final long RESIZE_TIMEOUT_MS = 1000;
+
+		private final SurfaceHolder holder;
+		private final Handler uiHandler = new Handler(Looper.getMainLooper());
+
+		HolderSurface(SurfaceHolder holder) {
+			this.holder = holder;
+		}
+
+		@Override
+		public String getHostName() {
+			return HOST_SURFACE_VIEW;
+		}
+
+		@Override
+		void attach(Camera camera) throws IOException {
+			camera.setPreviewDisplay(holder);
+		}
+
+		@Override
+		void detach(Camera camera) throws IOException {
+			camera.setPreviewDisplay(null);
+		}
+
+		@Override
+		Surface createSurface(final int width, final int height) {
+			Rect frame = holder.getSurfaceFrame();
+			if (frame.width() == width && frame.height() == height) {
+				return holder.getSurface();
+			}
+			if (Looper.myLooper() == Looper.getMainLooper()) {
+				throw new IllegalStateException("SurfaceView resized on the UI thread");
+			}
+
+			//camera2 configures its stream with the surface's size, a session created before
+			//the SurfaceView has the preview size would get a size of the camera's choosing.
+			//Only the UI thread may resize it, wait for surfaceChanged to report the size.
+			final CountDownLatch resized = new CountDownLatch(1);
+			final SurfaceHolder.Callback callback = new SurfaceHolder.Callback() {
+				@Override
+				public void surfaceCreated(SurfaceHolder holder) {
+				}
+
+				@Override
+				public void surfaceChanged(SurfaceHolder holder, int format, int newWidth, int newHeight) {
+					if (newWidth == width && newHeight == height) {
+						resized.countDown();
+					}
+				}
+
+				@Override
+				public void surfaceDestroyed(SurfaceHolder holder) {
+				}
+			};
+			uiHandler.post(new Runnable() {
+				@Override
+				public void run() {
+					holder.addCallback(callback);
+					holder.setFixedSize(width, height);
+				}
+			});
+
+			try {
+				if (!resized.await(RESIZE_TIMEOUT_MS, TimeUnit.MILLISECONDS)) {
+					Log.w(TAG, "SurfaceView not resized to " + width + "x" + height);
+				}
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			} finally {
+				uiHandler.post(new Runnable() {
+					@Override
+					public void run() {
+						holder.removeCallback(callback);
+					}
+				});
+			}
+			return holder.getSurface();
+		}
+
+		@Override
+		void releaseSurface(Surface surface) {
+			//owned by the SurfaceView
+		}
+
+		@Override
+		void release() {
+			//owned by the SurfaceView
+		}
+
+		@Override
+		public boolean equals(Object other) {
+			return other instanceof HolderSurface && ((HolderSurface) other).holder == holder;
+		}
+
+		@Override
+		public int hashCode() {
+			return holder.hashCode();
+		}
+	}
+}
@@ -0,0 +1,163 @@
+/**
+ * Copyright 2016, ezAR Technologies
+ * http://ezartech.com
+ *
+ * By @wayne_parrott, @vridosh, @kwparrott
+ *
+ * Licensed under a modified MIT license.
+ * Please see LICENSE or http://ezartech.com/ezarstartupkit-license for more information
+ *
+ */
+package com.ezartech.ezar.videooverlay;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Chooses the preview size, and a picture size of the same aspect ratio, for a view.
+ * <p/>
+ * Every preview size is scored on how far its aspect ratio is from the view's, how far
+ * its long side is from the pixel budget (the view's long side capped by the
+ * {@link PowerProfile}) and whether a picture size of the same aspect ratio exists. Some
+ * devices distort the preview when the picture size has a different aspect ratio. Picture
+ * sizes are sorted by aspect ratio once so each preview size finds its pair by binary
+ * search, O(n log n) overall. Results are memoized per camera, view size and profile.
+ * Not thread safe, engines use it on the camera thread.
+ */
+public class SizeSelector {
+
+	public static class Selection {
+		public final CameraCapabilities.Size previewSize;
+		public final CameraCapabilities.Size pictureSize; //null when no picture size has the preview's aspect ratio
+
+		Selection(CameraCapabilities.Size previewSize, CameraCapabilities.Size pictureSize) {
+			this.previewSize = previewSize;
+			this.pictureSize = pictureSize;
+		}
+	}
+
+	//aspect ratios closer than this are the same, e.g., 1920x1088 and 1920x1080
+	private static final float ASPECT_RATIO_TOLERANCE = 0.01f;
+
+	//penalties, in log units so a 2x mismatch costs the same at any resolution
+	private static final double ASPECT_WEIGHT = 2.0;     //letterboxing
+	private static final double OVERSIZE_WEIGHT = 2.0;  //cpu and memory for pixels nobody sees
+	private static final double UNDERSIZE_WEIGHT = 1.0; //upscaling blur
+	private static final double UNPAIRED_PENALTY = 1.0; //no picture size of the same aspect ratio
+	private static final double PREFERRED_BONUS = 0.05; //the camera's preferred size for video
+
+	private static final Comparator<CameraCapabilities.Size> BY_ASPECT_THEN_LARGEST =
+			new Comparator<CameraCapabilities.Size>() {
+				@Override
+				public int compare(CameraCapabilities.Size a, CameraCapabilities.Size b) {
+					int byAspect = Float.compare(aspectRatio(a), aspectRatio(b));
+					if (byAspect != 0) {
+						return byAspect;
+					}
+					return (b.width * b.height) - (a.width * a.height);
+				}
+			};
+
+	private final Map<String, Selection> selections = new HashMap<String, Selection>();
+	private final Map<Integer, CameraCapabilities.Size[]> sortedPictureSizes =
+			new HashMap<Integer, CameraCapabilities.Size[]>();
+
+
+	/**
+	 * @return the best preview size for the view, null when the camera reports no preview sizes
+	 */
+	public Selection select(CameraCapabilities capabilities, int viewWidth, int viewHeight, PowerProfile profile) {
+		String key = capabilities.cameraId + "/" + viewWidth + "x" + viewHeight + "/" + profile;
+		Selection selection = selections.get(key);
+		if (selection == null && !selections.containsKey(key)) {
+			selection = compute(capabilities, viewWidth, viewHeight, profile);
+			selections.put(key, selection);
+		}
+		return selection;
+	}
+
+	private Selection compute(CameraCapabilities capabilities, int viewWidth, int viewHeight, PowerProfile profile) {
+		CameraCapabilities.Size[] pictureSizes = getSortedPictureSizes(capabilities);
+
+		//camera sizes are landscape, compare the view in the same orientation
+		int viewLong = Math.max(1, Math.max(viewWidth, viewHeight));
+		int viewShort = Math.max(1, Math.min(viewWidth, viewHeight));
+		double viewAspect = (double) viewLong / viewShort;
+		int budget = profile.maxPreviewSide > 0 ? Math.min(viewLong, profile.maxPreviewSide) : viewLong;
+
+		CameraCapabilities.Size bestPreview = null;
+		CameraCapabilities.Size bestPicture = null;
+		double bestScore = Double.MAX_VALUE;
+		for (CameraCapabilities.Size size : capabilities.previewSizes) {
+			int longSide = Math.max(size.width, size.height);
+			int shortSide = Math.max(1, Math.min(size.width, size.height));
+
+			double score = ASPECT_WEIGHT * Math.abs(Math.log((double) longSide / shortSide / viewAspect));
+			if (longSide > budget) {
+				score += OVERSIZE_WEIGHT * Math.log((double) longSide / budget);
+			} else {
+				score += UNDERSIZE_WEIGHT * Math.log((double) budget / longSide);
+			}
+
+			CameraCapabilities.Size pictureSize = findPictureSize(pictureSizes, aspectRatio(size));
+			if (pictureSize == null && pictureSizes.length > 0) {
+				score += UNPAIRED_PENALTY;
+			}
+			if (size.equals(capabilities.preferredPreviewSize)) {
+				score -= PREFERRED_BONUS;
+			}
+
+			if (score < bestScore ||
+					(score == bestScore && size.width * size.height > bestPreview.width * bestPreview.height)) {
+				bestScore = score;
+				bestPreview = size;
+				bestPicture = pictureSize;
+			}
+		}
+
+		return bestPreview != null ? new Selection(bestPreview, bestPicture) : null;
+	}
+
+	private CameraCapabilities.Size[] getSortedPictureSizes(CameraCapabilities capabilities) {
+		CameraCapabilities.Size[] sorted = sortedPictureSizes.get(capabilities.cameraId);
+		if (sorted == null) {
+			sorted = capabilities.pictureSizes.toArray(new CameraCapabilities.Size[capabilities.pictureSizes.size()]);
+			Arrays.sort(sorted, BY_ASPECT_THEN_LARGEST);
+			sortedPictureSizes.put(capabilities.cameraId, sorted);
+		}
+		return sorted;
+	}
+
+	/**
+	 * @return the largest picture size within the aspect ratio tolerance, or null
+	 */
+	private static CameraCapabilities.Size findPictureSize(CameraCapabilities.Size[] sorted, float aspect) {
+		//first entry with aspect >= aspect - tolerance, the largest of its aspect ratio
+		int low = 0;
+		int high = sorted.length;
+		float from = aspect - ASPECT_RATIO_TOLERANCE;
+		while (low < high) {
+			int mid = (low + high) >>> 1;
+			if (aspectRatio(sorted[mid]) < from) {
+				low = mid + 1;
+			} else {
+				high = mid;
+			}
+		}
+
+		//several aspect ratios may fall within the tolerance, keep the largest size
+		CameraCapabilities.Size best = null;
+		for (int i = low; i < sorted.length && aspectRatio(sorted[i]) <= aspect + ASPECT_RATIO_TOLERANCE; i++) {
+			if (best == null || sorted[i].width * sorted[i].height > best.width * best.height) {
+				best = sorted[i];
+			}
+		}
+		return best;
+	}
+
+	private static float aspectRatio(CameraCapabilities.Size size) {
+		return (float) size.width / (float) size.height;
+	}
+}
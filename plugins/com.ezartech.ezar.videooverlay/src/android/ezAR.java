@@ -10,11 +10,10 @@
  */
 package com.ezartech.ezar.videooverlay;
 
-import java.io.IOException;
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
-import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 import org.apache.cordova.CallbackContext;
 import org.apache.cordova.CordovaInterface;
@@ -27,17 +26,27 @@ import org.json.JSONObject;
 
 import android.Manifest;
 import android.app.Activity;
+import android.annotation.TargetApi;
+import android.content.Context;
 import android.content.pm.PackageManager;
+import android.content.res.Configuration;
 import android.graphics.Color;
+import android.graphics.Matrix;
+import android.graphics.RectF;
 import android.graphics.SurfaceTexture;
 import android.hardware.Camera;
-import android.hardware.Camera.Parameters;
+import android.hardware.display.DisplayManager;
+import android.os.Build;
+import android.os.SystemClock;
 import android.util.DisplayMetrics;
 import android.util.Log;
 import android.util.SparseIntArray;
+import android.view.Choreographer;
 import android.view.Display;
 import android.view.Gravity;
 import android.view.Surface;
+import android.view.SurfaceHolder;
+import android.view.SurfaceView;
 import android.view.TextureView;
 import android.view.View;
 import android.view.ViewGroup;
@@ -50,31 +59,79 @@ import android.widget.FrameLayout;
 /**
  * Implements the ezAR VideoOverlay api for Android.
  */
-public class ezAR extends CordovaPlugin {
+public class ezAR extends CordovaPlugin implements CameraSession {
 	private static final String TAG = "ezAR";
 
-	//event type code
 	static final int UNDEFINED = -1;
-	static final int STARTED = 0;
-	static final int STOPPED = 1;
 
 	private CallbackContext callbackContext;
 
+	private final List<CameraSession.Listener> sessionListeners = new CopyOnWriteArrayList<CameraSession.Listener>();
+	private volatile int sessionPreviewWidth;  //camera thread writes, see CameraSession
+	private volatile int sessionPreviewHeight;
+
 	private Activity activity;
 	private FrameLayout cordovaViewContainer;
 	private View webViewView;
 	private TextureView cameraView;
-
-	private Camera camera = null;
-	private int cameraId = -1;
-	private CameraDirection cameraDirection;
-	private SizePair previewSizePair = null;
-	private double currentZoom;
+	private SurfaceView cameraSurfaceView; //replaces cameraView when EzarPreviewHost is surfaceview
+	private String previewHost = PreviewSurface.HOST_TEXTURE_VIEW;
+
+	//camera api selection, see EzarCameraApi preference
+	static final String CAMERA_API_AUTO = "auto";
+	static final String CAMERA_API_LEGACY = "camera1";
+	static final String CAMERA_API_CAMERA2 = "camera2";
+
+	private String cameraApi = CAMERA_API_AUTO;
+	private volatile CameraController cameraController;
+	private final LatencyTracer latencyTracer = new LatencyTracer();
+	private int pauseGracePeriod = 0; //ms, see EzarPauseGracePeriod preference
+	private double maxDigitalZoom = 1; //magnification past the camera's maxZoom, see EzarMaxDigitalZoom preference
+
+	//preview scaling, see EzarPreviewScaling preference
+	static final String PREVIEW_SCALING_CONTAINER = "container"; //shrink the webview container to the preview aspect ratio
+	static final String PREVIEW_SCALING_FIT = "fit";             //full screen webview, letterbox the preview
+	static final String PREVIEW_SCALING_CROP = "crop";           //full screen webview, center crop the preview
+
+	private String previewScaling = PREVIEW_SCALING_CONTAINER;
+
+	//webview rendering, see EzarWebViewLayer preference
+	static final String WEBVIEW_LAYER_SOFTWARE = "software"; //rasterize the overlay on the cpu
+	static final String WEBVIEW_LAYER_HARDWARE = "hardware"; //composite the transparent overlay on the gpu
+
+	private String webViewLayer = WEBVIEW_LAYER_SOFTWARE;
+	private boolean previewLayoutPending = false;
+	private int displayRotation = -1;       //Surface.ROTATION_XXX the preview was last laid out for
+	private float previewContentScaleX = 1; //displayed preview size relative to the camera view
+	private float previewContentScaleY = 1;
+	private float digitalZoom = 1;          //preview magnification by the camera view's matrix
+
+	//UI thread copy of the running preview, updated from the controller's listener
 	private boolean isPreviewing = false;
-	private boolean isPaused = false;
+	private int previewWidth;
+	private int previewHeight;
+	private int cameraFacing;
+	private int sensorOrientation;
+	private boolean engineRotatesPreview = true;
 
 	private boolean supportSnapshot;
 
+	//native pinch to zoom, UI thread
+	private PinchZoom pinchZoom;
+	private volatile CallbackContext pinchZoomCallbackContext;
+	private double previewMaxZoom = 0;
+
+	//moon detection stream, see watchMoon
+	private MoonTracker moonTracker;
+	private MotionPrior motionPrior;
+	private volatile CallbackContext moonCallbackContext;
+	private boolean moonFound = false;
+
+	//night sky metering that follows the moon, see setNightSkyMode
+	private static final long MOON_METERING_INTERVAL = 500; //ms between metering updates
+	private NightSkyMode moonMeteringMode;
+	private long moonMeteringTime;
+
 	protected final static String[] permissions = {Manifest.permission.CAMERA};
 	public final static int PERMISSION_DENIED_ERROR = 20;
 	public final static int CAMERA_SEC = 0;
@@ -90,7 +147,28 @@ public class ezAR extends CordovaPlugin {
 					}
 
 					if (isPreviewing) {
-						updateCordovaViewContainerSize();
+						requestPreviewLayout();
+					}
+				}
+			};
+
+	/**
+	 * Flipping the device by 180 degrees changes neither the configuration nor the layout,
+	 * only the display reports it. API 17 and later.
+	 */
+	private DisplayManager.DisplayListener displayListener;
+
+	/**
+	 * Applies the preview layout at most once per frame, however many layout changes,
+	 * starts and resizes asked for it since the last frame.
+	 */
+	private Choreographer.FrameCallback previewLayoutCallback =
+			new Choreographer.FrameCallback() {
+				@Override
+				public void doFrame(long frameTimeNanos) {
+					previewLayoutPending = false;
+					if (isPreviewing) {
+						updatePreviewLayout();
 					}
 				}
 			};
@@ -105,26 +183,158 @@ public class ezAR extends CordovaPlugin {
 				@Override
 				public void onSurfaceTextureAvailable(SurfaceTexture surfaceTexture,
 													  int width, int height) {
-					if (isPreviewing) { //only called from onResume
-						isPreviewing = false; //must set isPreviewing false before calling startPreview else NOP occurs
-						startPreview(cameraDirection, currentZoom, null);
-					}
+					//a pending or paused preview starts as soon as the controller has a surface
+					getCameraController().setSurface(PreviewSurface.of(surfaceTexture), width, height);
 				}
 
 				@Override
 				public void onSurfaceTextureSizeChanged(SurfaceTexture surfaceTexture,
 														int width, int height) {
+					getCameraController().setViewSize(width, height);
 				}
 
 				@Override
 				public boolean onSurfaceTextureDestroyed(SurfaceTexture surfaceTexture) {
-					return true;
+					//the camera may still be rendering into it, controller releases it once closed
+					getCameraController().setSurface(null, 0, 0);
+					return false;
 				}
 
 				@Override
 				public void onSurfaceTextureUpdated(SurfaceTexture surfaceTexture) {
+					latencyTracer.frameShown();
+				}
+
+			};
+
+	/**
+	 * SurfaceView counterpart of mSurfaceTextureListener. The surface's buffers have the
+	 * preview size, so the camera sizes its preview for the container instead.
+	 */
+	private SurfaceHolder.Callback surfaceHolderCallback =
+			new SurfaceHolder.Callback() {
+
+				@Override
+				public void surfaceCreated(SurfaceHolder holder) {
+					getCameraController().setSurface(PreviewSurface.of(holder),
+							cordovaViewContainer.getWidth(), cordovaViewContainer.getHeight());
+				}
+
+				@Override
+				public void surfaceChanged(SurfaceHolder holder, int format, int width, int height) {
+					getCameraController().setViewSize(
+							cordovaViewContainer.getWidth(), cordovaViewContainer.getHeight());
+				}
+
+				@Override
+				public void surfaceDestroyed(SurfaceHolder holder) {
+					getCameraController().setSurface(null, 0, 0);
+				}
+			};
+
+	/**
+	 * Mirrors the controller's session into the UI and notifies the flashlight plugin.
+	 * Called on the camera thread.
+	 */
+	private CameraController.Listener cameraListener =
+			new CameraController.Listener() {
+
+				@Override
+				public void onPreviewStarted(CameraEngine engine, CameraCapabilities capabilities,
+											 CameraDirection cameraDirection) {
+					final int width = engine.getPreviewWidth();
+					final int height = engine.getPreviewHeight();
+					final int facing = capabilities.facing;
+					final int orientation = capabilities.orientation;
+					final boolean rotatesPreview = engine.hasDisplayOrientation();
+					final double maxZoom = getCameraController().getMaxZoom(capabilities);
+
+					sessionPreviewWidth = width;
+					sessionPreviewHeight = height;
+					for (CameraSession.Listener sessionListener : sessionListeners) {
+						sessionListener.onSessionStarted(ezAR.this, cameraDirection, capabilities.cameraId, engine.getCamera());
+					}
+
+					activity.runOnUiThread(new Runnable() {
+						@Override
+						public void run() {
+							isPreviewing = true;
+							previewWidth = width;
+							previewHeight = height;
+							cameraFacing = facing;
+							sensorOrientation = orientation;
+							engineRotatesPreview = rotatesPreview;
+							previewMaxZoom = maxZoom;
+							if (pinchZoom != null) {
+								pinchZoom.setMaxZoom(maxZoom);
+							}
+
+							//configure scaled CVG size & preview matrix
+							requestPreviewLayout();
+
+							webViewView.setBackgroundColor(Color.TRANSPARENT);
+						}
+					});
+				}
+
+				@Override
+				public void onPreviewStopped(CameraEngine engine, CameraCapabilities capabilities,
+											 CameraDirection cameraDirection) {
+					sessionPreviewWidth = 0;
+					sessionPreviewHeight = 0;
+					for (CameraSession.Listener sessionListener : sessionListeners) {
+						sessionListener.onSessionStopped(ezAR.this, cameraDirection, capabilities.cameraId);
+					}
+
+					activity.runOnUiThread(new Runnable() {
+						@Override
+						public void run() {
+							isPreviewing = false;
+							previewMaxZoom = 0;
+							digitalZoom = 1;
+							if (pinchZoom != null) {
+								pinchZoom.setMaxZoom(0);
+							}
+							webViewView.setBackgroundColor(Color.BLACK);
+							resetCordovaViewContainerSize();
+						}
+					});
 				}
 
+				@Override
+				public void onPreviewResized(CameraEngine engine, CameraCapabilities capabilities,
+											 CameraDirection cameraDirection) {
+					final int width = engine.getPreviewWidth();
+					final int height = engine.getPreviewHeight();
+
+					sessionPreviewWidth = width;
+					sessionPreviewHeight = height;
+					for (CameraSession.Listener sessionListener : sessionListeners) {
+						sessionListener.onSessionReconfigured(ezAR.this);
+					}
+
+					activity.runOnUiThread(new Runnable() {
+						@Override
+						public void run() {
+							previewWidth = width;
+							previewHeight = height;
+							requestPreviewLayout();
+						}
+					});
+				}
+
+				@Override
+				public void onDigitalZoomChanged(final double zoom) {
+					activity.runOnUiThread(new Runnable() {
+						@Override
+						public void run() {
+							digitalZoom = (float) zoom;
+							if (isPreviewing) {
+								updateCameraViewTransform();
+							}
+						}
+					});
+				}
 			};
 
 
@@ -134,15 +344,39 @@ public class ezAR extends CordovaPlugin {
 		super.initialize(cordova, cvWebView);
 
 		webViewView = cvWebView.getView();
+		cameraApi = preferences.getString("EzarCameraApi", CAMERA_API_AUTO).toLowerCase();
+		previewScaling = preferences.getString("EzarPreviewScaling", PREVIEW_SCALING_CONTAINER).toLowerCase();
+		webViewLayer = preferences.getString("EzarWebViewLayer", WEBVIEW_LAYER_SOFTWARE).toLowerCase();
+		previewHost = preferences.getString("EzarPreviewHost", PreviewSurface.HOST_TEXTURE_VIEW).toLowerCase();
+		pauseGracePeriod = Math.max(0, preferences.getInteger("EzarPauseGracePeriod", 0));
+		maxDigitalZoom = Math.max(1.0, preferences.getDouble("EzarMaxDigitalZoom", 1.0));
+		String preopenCamera = preferences.getString("EzarPreopenCamera", "none").toUpperCase();
 
 		activity = cordova.getActivity();
+
+		//open the camera while the splash screen shows and the app boots, startCamera attaches
+		//the preview, requires onload in plugin.xml and an earlier permission grant
+		if (("BACK".equals(preopenCamera) || "FRONT".equals(preopenCamera)) &&
+				PermissionHelper.hasPermission(this, permissions[0])) {
+			//no view yet, the full screen is the best guess for the preview size
+			DisplayMetrics metrics = new DisplayMetrics();
+			activity.getWindowManager().getDefaultDisplay().getMetrics(metrics);
+			getCameraController().preopen(CameraDirection.valueOf(preopenCamera),
+					metrics.widthPixels, metrics.heightPixels);
+		}
+
 		activity.runOnUiThread(new Runnable() {
 			@Override
 			public void run() {
 
 				//configure webview
 				webViewView.setKeepScreenOn(true);
-				webViewView.setLayerType(WebView.LAYER_TYPE_SOFTWARE, null);
+				if (isWebViewHardwareAccelerated()) {
+					//no offscreen layer, the window composites the transparent webview over the camera view
+					webViewView.setLayerType(View.LAYER_TYPE_NONE, null);
+				} else {
+					webViewView.setLayerType(WebView.LAYER_TYPE_SOFTWARE, null);
+				}
 				webViewView.setBackgroundColor(Color.BLACK);
 
 				//temporarily remove webview from view stack
@@ -157,13 +391,26 @@ public class ezAR extends CordovaPlugin {
 
 				//create & add videoOverlay to view stack
 
-				cameraView = new TextureView(activity);
-				cameraView.setBackgroundColor(Color.BLACK);
-				cameraView.setSurfaceTextureListener(mSurfaceTextureListener);
-				cordovaViewContainer.addView(cameraView,
-						new ViewGroup.LayoutParams(
-								LayoutParams.MATCH_PARENT,
-								LayoutParams.MATCH_PARENT));
+				if (PreviewSurface.HOST_SURFACE_VIEW.equals(previewHost)) {
+					//composed by the display hardware behind the window, the webview stays on top
+					cameraSurfaceView = new SurfaceView(activity);
+					cameraSurfaceView.setZOrderMediaOverlay(true);
+					cameraSurfaceView.getHolder().addCallback(surfaceHolderCallback);
+					cordovaViewContainer.addView(cameraSurfaceView,
+							new FrameLayout.LayoutParams(
+									LayoutParams.MATCH_PARENT,
+									LayoutParams.MATCH_PARENT,
+									Gravity.CENTER));
+				} else {
+					previewHost = PreviewSurface.HOST_TEXTURE_VIEW;
+					cameraView = new TextureView(activity);
+					cameraView.setBackgroundColor(Color.BLACK);
+					cameraView.setSurfaceTextureListener(mSurfaceTextureListener);
+					cordovaViewContainer.addView(cameraView,
+							new ViewGroup.LayoutParams(
+									LayoutParams.MATCH_PARENT,
+									LayoutParams.MATCH_PARENT));
+				}
 
 
 				//add webview on top of videoOverlay
@@ -174,6 +421,10 @@ public class ezAR extends CordovaPlugin {
 
 				((FrameLayout)cordovaViewContainer.getParent()).setBackgroundColor(Color.BLACK);
 				((FrameLayout)cordovaViewContainer.getParent()).addOnLayoutChangeListener(layoutChangeListener);
+
+				if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN_MR1) {
+					registerDisplayListener();
+				}
 			}
 		});
 	}
@@ -190,8 +441,13 @@ public class ezAR extends CordovaPlugin {
 			this.startPreview(
 					args.getString(0),
 					getDoubleOrNull(args, 1),
+					args.isNull(2) ? null : args.getString(2),
 					callbackContext);
 
+			return true;
+		} else if (action.equals("setPowerProfile")) {
+			this.setPowerProfile(args.getString(0), callbackContext);
+
 			return true;
 		} else if (action.equals("stopCamera")) {
 			this.stopPreview(callbackContext);
@@ -200,6 +456,30 @@ public class ezAR extends CordovaPlugin {
 		} else if (action.equals("setZoom")) {
 			this.setZoom(getDoubleOrNull(args, 0), callbackContext);
 
+			return true;
+		} else if (action.equals("enablePinchZoom")) {
+			this.enablePinchZoom(args.optInt(0, 100), callbackContext);
+
+			return true;
+		} else if (action.equals("disablePinchZoom")) {
+			this.disablePinchZoom(callbackContext);
+
+			return true;
+		} else if (action.equals("watchMoon")) {
+			this.watchMoon(args.optInt(0, 1), args.optDouble(1, 0.5), args.optBoolean(2, true), callbackContext);
+
+			return true;
+		} else if (action.equals("clearMoonWatch")) {
+			this.clearMoonWatch(callbackContext);
+
+			return true;
+		} else if (action.equals("setNightSkyMode")) {
+			this.setNightSkyMode(args.optJSONObject(0), callbackContext);
+
+			return true;
+		} else if (action.equals("getMetrics")) {
+			this.getMetrics(args.optBoolean(0, false), callbackContext);
+
 			return true;
 		}
 
@@ -216,64 +496,53 @@ public class ezAR extends CordovaPlugin {
 			return;
 		}
 
-		JSONObject jsonObject = new JSONObject();
-		try {
-			Display display = activity.getWindowManager().getDefaultDisplay();
-			DisplayMetrics m = new DisplayMetrics();
-			display.getMetrics(m);
-
-			jsonObject.put("displayWidth", m.widthPixels);
-			jsonObject.put("displayHeight", m.heightPixels);
-
-			int mNumberOfCameras = Camera.getNumberOfCameras();
-			Log.d(TAG, "Cameras:" + mNumberOfCameras);
-
-			// Find the ID of the back-facing ("default") camera
-			Camera.CameraInfo cameraInfo = new Camera.CameraInfo();
-			for (int i = 0; i < mNumberOfCameras; i++) {
-				Camera.getCameraInfo(i, cameraInfo);
-
-				Parameters parameters;
-				Camera open = null;
+		Display display = activity.getWindowManager().getDefaultDisplay();
+		final DisplayMetrics m = new DisplayMetrics();
+		display.getMetrics(m);
+
+		//cameras are only opened to read their zoom range until the capabilities are cached,
+		//even then it must not block the bridge
+		final long startTime = LatencyTracer.now();
+		final CameraController controller = getCameraController();
+		controller.post(new Runnable() {
+			@Override
+			public void run() {
+				JSONObject jsonObject = new JSONObject();
 				try {
-					open = Camera.open(i);
-					parameters = open.getParameters();
-				} finally {
-					if (open != null) {
-						open.release();
+					jsonObject.put("displayWidth", m.widthPixels);
+					jsonObject.put("displayHeight", m.heightPixels);
+
+					List<CameraCapabilities> cameras = controller.getCapabilities();
+					Log.d(TAG, "Cameras:" + cameras.size() + " engine: " + controller.getEngine().getName());
+
+					// Find the ID of the back-facing ("default") camera
+					for (CameraCapabilities capabilities : cameras) {
+						Log.d(TAG, "Camera facing:" + capabilities.facing);
+
+						CameraDirection type = null;
+						for (CameraDirection f : CameraDirection.values()) {
+							if (f.getDirection() == capabilities.facing) {
+								type = f;
+							}
+						}
+
+						if (type != null) {
+							JSONObject jsonCamera = new JSONObject();
+							jsonCamera.put("id", capabilities.cameraId);
+							jsonCamera.put("position", type.toString());
+							jsonCamera.put("zoom", capabilities.zoom);
+							jsonCamera.put("maxZoom", getCameraController().getMaxZoom(capabilities));
+							jsonObject.put(type.toString(), jsonCamera);
+						}
 					}
+				} catch (JSONException e) {
+					Log.e(TAG, "Can't set exception", e);
 				}
 
-				Log.d(TAG, "Camera facing:" + cameraInfo.facing);
-
-				CameraDirection type = null;
-				for (CameraDirection f : CameraDirection.values()) {
-					if (f.getDirection() == cameraInfo.facing) {
-						type = f;
-					}
-				}
-
-				if (type != null) {
-					double zoom = 0;
-					double maxZoom = 0;
-					if (parameters.isZoomSupported()) {
-						maxZoom = (parameters.getMaxZoom() + 1) / 10.0;
-						zoom = Math.min(parameters.getZoom() / 10.0 + 1, maxZoom);
-					}
-
-					JSONObject jsonCamera = new JSONObject();
-					jsonCamera.put("id", i);
-					jsonCamera.put("position", type.toString());
-					jsonCamera.put("zoom", zoom);
-					jsonCamera.put("maxZoom", maxZoom);
-					jsonObject.put(type.toString(), jsonCamera);
-				}
+				latencyTracer.record(LatencyTracer.INIT, startTime);
+				callbackContext.success(jsonObject);
 			}
-		} catch (JSONException e) {
-			Log.e(TAG, "Can't set exception", e);
-		}
-
-		callbackContext.success(jsonObject);
+		});
 	}
 
 	@Override
@@ -294,196 +563,366 @@ public class ezAR extends CordovaPlugin {
 
 	private void startPreview(final String cameraDirName,
 							  final double zoom,
+							  final String powerProfileName,
 							  final CallbackContext callbackContext) {
 
 		CameraDirection cameraDir = CameraDirection.valueOf(cameraDirName);
+		PowerProfile powerProfile = null;
+		if (powerProfileName != null) {
+			try {
+				powerProfile = PowerProfile.fromName(powerProfileName);
+			} catch (IllegalArgumentException e) {
+				callbackContext.error("Unknown power profile: " + powerProfileName);
+				return;
+			}
+		}
 
 		Log.d(TAG, "startPreview called " + cameraDir +
 				" " + zoom +
-				" " + "isShown " + cameraView.isShown() +
-				" " + cameraView.getWidth() + ", " + cameraView.getHeight());
+				" " + powerProfileName +
+				" " + previewHost +
+				" " + cordovaViewContainer.getWidth() + ", " + cordovaViewContainer.getHeight());
 
-		startPreview(cameraDir, zoom, callbackContext);
+		//a missing zoom starts unzoomed, NaN would never compare equal to the applied zoom
+		double startZoom = Double.isNaN(zoom) || Double.isInfinite(zoom) ? 1.0 : zoom;
+		startPreview(cameraDir, startZoom, powerProfile, callbackContext);
 	}
 
 
 	private void startPreview(final CameraDirection cameraDir,
 							  final double zoom,
+							  final PowerProfile powerProfile,
 							  final CallbackContext callbackContext) {
 
 		if (activity == null || activity.isFinishing()) {
 			return;
 		}
 
-		if (isPreviewing) {
-			if (cameraId != getCameraId(cameraDir)) {
-				stopPreview(null);
-			}
+		//only a TextureView reports when it shows a frame
+		if (PreviewSurface.HOST_TEXTURE_VIEW.equals(previewHost) && !isCameraRunning()) {
+			latencyTracer.startFirstFrame();
 		}
 
-		cameraId = getCameraId(cameraDir);
-		cameraDirection = cameraDir;
+		//completes once the preview runs, or immediately when it already does
+		getCameraController().start(cameraDir, zoom, powerProfile, callbackContext);
+	}
 
-		if (cameraId != UNDEFINED) {
-			camera = Camera.open(cameraId);
-		}
+	private void stopPreview(final CallbackContext callbackContext) {
+		Log.d(TAG, "stopPreview called");
+
+		getCameraController().stop(callbackContext);
+	}
 
-		if (camera == null) {
-			if (callbackContext != null) callbackContext.error("No camera available");
+	private void setZoom(final double newZoom, final CallbackContext callbackContext) {
+		//null from JS arrives as NaN, which would never compare equal to the applied zoom
+		if (Double.isNaN(newZoom) || Double.isInfinite(newZoom)) {
+			callbackContext.error("Invalid zoom: " + newZoom);
 			return;
 		}
+		getCameraController().setZoom(newZoom, callbackContext);
+	}
 
-		initCamera(camera);
+	/**
+	 * Zoom the preview natively on pinch gestures until disablePinchZoom. Zoom changes are
+	 * sent to JS at most every eventInterval ms, and once when the pinch ends.
+	 */
+	private void enablePinchZoom(final long eventInterval, final CallbackContext callbackContext) {
+		CallbackContext previousCallbackContext = pinchZoomCallbackContext;
+		pinchZoomCallbackContext = callbackContext;
+		if (previousCallbackContext != null) {
+			previousCallbackContext.success();
+		}
 
-		cordova.getActivity().runOnUiThread(new Runnable() {
+		activity.runOnUiThread(new Runnable() {
 			@Override
 			public void run() {
-				try {
-					isPreviewing = true;
-					updateCameraDisplayOrientation();
+				if (pinchZoom == null) {
+					pinchZoom = new PinchZoom(activity, getCameraController(), eventInterval, pinchZoomListener);
+					pinchZoom.setMaxZoom(previewMaxZoom);
+					webViewView.setOnTouchListener(pinchZoom);
+				} else {
+					pinchZoom.setEventInterval(eventInterval);
+				}
+			}
+		});
 
-					//configure scaled CVG size & preview matrix
-					updateCordovaViewContainerSize();
+		PluginResult result = new PluginResult(PluginResult.Status.NO_RESULT);
+		result.setKeepCallback(true);
+		callbackContext.sendPluginResult(result);
+	}
+
+	private void disablePinchZoom(CallbackContext callbackContext) {
+		activity.runOnUiThread(new Runnable() {
+			@Override
+			public void run() {
+				if (pinchZoom != null) {
+					webViewView.setOnTouchListener(null);
+					pinchZoom = null;
+				}
+			}
+		});
 
-					camera.startPreview();
-					webViewView.setBackgroundColor(Color.TRANSPARENT);
-					setZoom(zoom, null);
+		CallbackContext watchCallbackContext = pinchZoomCallbackContext;
+		pinchZoomCallbackContext = null;
+		if (watchCallbackContext != null) {
+			watchCallbackContext.success();
+		}
 
-					sendFlashlightEvent(STARTED, cameraDirection, cameraId, camera);
+		callbackContext.success();
+	}
 
-					if (callbackContext != null) {
-						callbackContext.success();
+	//called on the UI thread
+	private PinchZoom.Listener pinchZoomListener =
+			new PinchZoom.Listener() {
+				@Override
+				public void onZoomChanged(double zoom) {
+					CallbackContext watchCallbackContext = pinchZoomCallbackContext;
+					if (watchCallbackContext == null) {
+						return;
 					}
 
-				} catch (Exception e) {
-					Log.e(TAG, "Error during preview create", e);
-					if (callbackContext != null) callbackContext.error(TAG + ": " + e.getMessage());
+					PluginResult pluginResult = new PluginResult(PluginResult.Status.OK, (float) zoom);
+					pluginResult.setKeepCallback(true);
+					watchCallbackContext.sendPluginResult(pluginResult);
 				}
+			};
 
-			}
+	private void setPowerProfile(final String powerProfileName, final CallbackContext callbackContext) {
+		PowerProfile powerProfile;
+		try {
+			powerProfile = PowerProfile.fromName(powerProfileName);
+		} catch (IllegalArgumentException e) {
+			callbackContext.error("Unknown power profile: " + powerProfileName);
+			return;
+		}
 
-		});
+		getCameraController().setPowerProfile(powerProfile, callbackContext);
 	}
 
-	private void stopPreview(final CallbackContext callbackContext) {
-		Log.d(TAG, "stopPreview called");
-
-		if (!isPreviewing) { //do nothing if not currently previewing
-			if (callbackContext != null) {
-				callbackContext.success();
+	/**
+	 * Timing spans of the camera bring-up with p50/p95 per span, see LatencyTracer.
+	 */
+	private void getMetrics(boolean clear, CallbackContext callbackContext) {
+		try {
+			JSONObject metrics = latencyTracer.toJSON();
+			if (clear) {
+				latencyTracer.clear();
 			}
-			return;
+			callbackContext.success(metrics);
+		} catch (JSONException e) {
+			Log.e(TAG, "Can't get metrics", e);
+			callbackContext.error(e.getMessage());
 		}
+	}
 
-		try {
-			camera.stopPreview();
-			camera.setPreviewDisplay(null);
-			sendFlashlightEvent(STOPPED, cameraDirection, cameraId, null);
-			camera.release();
-			cordova.getActivity().runOnUiThread(new Runnable() {
-				@Override
-				public void run() {
-					webViewView.setBackgroundColor(Color.BLACK);
-					resetCordovaViewContainerSize();
-				}
-			});
+	/**
+	 * Stream moon detections from the preview frames to JS until clearMoonWatch.
+	 * Results are sent for every analysed frame with a detection and once when the moon is lost.
+	 * With track the moon is followed near its last position until it is lost.
+	 */
+	private synchronized void watchMoon(int frameInterval, double minConfidence, boolean track,
+										final CallbackContext callbackContext) {
+		if (moonTracker == null) {
+			motionPrior = new MotionPrior(cordova.getActivity());
+			moonTracker = new MoonTracker(motionPrior, moonListener);
+		}
+		moonTracker.setFrameInterval(frameInterval);
+		moonTracker.setMinConfidence((float) minConfidence);
+		moonTracker.setTrackingEnabled(track);
+		if (track) {
+			motionPrior.start();
+		} else {
+			motionPrior.stop();
+		}
 
-		} catch (IOException e) {
-			e.printStackTrace();
+		CallbackContext previousCallbackContext = moonCallbackContext;
+		moonCallbackContext = callbackContext;
+		if (previousCallbackContext != null) {
+			previousCallbackContext.success();
 		}
 
-		cameraId = UNDEFINED;
-		camera = null;
-		isPreviewing = false;
+		getFramePipeline().register(moonTracker, FramePipeline.PRIORITY_NORMAL,
+				FramePipeline.DropPolicy.DROP_OLDEST);
 
-		if (callbackContext != null) {
-			callbackContext.success();
-		}
+		PluginResult result = new PluginResult(PluginResult.Status.NO_RESULT);
+		result.setKeepCallback(true);
+		callbackContext.sendPluginResult(result);
 	}
 
-	private void setZoom(final double newZoom, final CallbackContext callbackContext) {
-		try {
-			Parameters parameters = camera.getParameters();
-			if (!parameters.isZoomSupported()) {
-				//do nothing
-				if (callbackContext != null) {
-					callbackContext.success();
-				}
-				return;
-			}
+	private synchronized void clearMoonWatch(CallbackContext callbackContext) {
+		if (moonTracker != null) {
+			getFramePipeline().unregister(moonTracker);
+			motionPrior.stop();
+		}
 
-			int maxZoom = parameters.getMaxZoom();
-			double normalizedNewZoom = Math.max(1.0, newZoom);
-			float scale = (float)(10-1) / (float)maxZoom;
-			int androidZoom = (int) Math.round((normalizedNewZoom - 1) / scale);
-			androidZoom = Math.min(androidZoom, maxZoom);
+		CallbackContext watchCallbackContext = moonCallbackContext;
+		moonCallbackContext = null;
+		moonFound = false;
+		if (watchCallbackContext != null) {
+			watchCallbackContext.success();
+		}
 
-			parameters.setZoom(androidZoom);
-			camera.setParameters(parameters);
-			currentZoom = normalizedNewZoom;
+		callbackContext.success();
+	}
 
-			if (callbackContext != null) {
-				callbackContext.success();
-			}
-		} catch (Throwable e) {
-			if (callbackContext != null) {
-				callbackContext.error(e.getMessage());
+	/**
+	 * Fix focus at infinity and meter exposure on a point of the camera view, or restore
+	 * continuous focus and auto exposure when options is null. With followMoon the metering
+	 * area follows the moon found by watchMoon.
+	 */
+	private void setNightSkyMode(final JSONObject options, final CallbackContext callbackContext) {
+		if (options == null) {
+			synchronized (this) {
+				moonMeteringMode = null;
+				getCameraController().setNightSkyMode(null, callbackContext);
 			}
+			return;
 		}
+
+		final NightSkyMode mode = new NightSkyMode();
+		mode.infinityFocus = options.optBoolean("infinityFocus", true);
+		double size = options.optDouble("size", mode.meteringSize);
+		if (!Double.isNaN(size)) {
+			mode.meteringSize = (float) Math.max(NightSkyMode.MIN_METERING_SIZE, Math.min(1.0, size));
+		}
+		mode.exposureCompensation = (float) options.optDouble("exposureCompensation", 0);
+		mode.lockExposure = options.optBoolean("lockExposure", false);
+		mode.lockWhiteBalance = options.optBoolean("lockWhiteBalance", false);
+		final float x = (float) options.optDouble("x", 0.5);
+		final float y = (float) options.optDouble("y", 0.5);
+		final boolean followMoon = options.optBoolean("followMoon", false);
+
+		//the view to frame mapping depends on the display rotation and the active camera
+		activity.runOnUiThread(new Runnable() {
+			@Override
+			public void run() {
+				float[] point = viewToFramePoint(x, y);
+				mode.meteringX = point[0];
+				mode.meteringY = point[1];
+
+				synchronized (ezAR.this) {
+					moonMeteringMode = followMoon ? mode : null;
+					moonMeteringTime = 0;
+					getCameraController().setNightSkyMode(mode, callbackContext);
+				}
+			}
+		});
 	}
 
-	private void initCamera(Camera camera) {
-		Camera.Parameters cameraParameters = camera.getParameters();
+	//called on a frame pipeline worker, moves the night sky metering area onto the moon
+	private synchronized void followMoon(MoonDetector.Result result) {
+		NightSkyMode mode = moonMeteringMode;
+		long now = SystemClock.uptimeMillis();
+		if (mode == null || now - moonMeteringTime < MOON_METERING_INTERVAL) {
+			return;
+		}
 
-		List<String> focusModes = cameraParameters.getSupportedFocusModes();
-		if (focusModes.contains(Camera.Parameters.FOCUS_MODE_CONTINUOUS_VIDEO)) {
-			cameraParameters.setFocusMode(Camera.Parameters.FOCUS_MODE_CONTINUOUS_VIDEO);
+		float x = result.x / result.frameWidth;
+		float y = result.y / result.frameHeight;
+		float size = Math.max(NightSkyMode.MIN_METERING_SIZE, 3 * result.radius / result.frameWidth);
+		float tolerance = mode.meteringSize / 4;
+		if (Math.abs(x - mode.meteringX) < tolerance && Math.abs(y - mode.meteringY) < tolerance &&
+				Math.abs(size - mode.meteringSize) < tolerance) {
+			return;
 		}
 
-//		camera.enableShutterSound(true);  //requires api 17
+		NightSkyMode next = new NightSkyMode(mode);
+		next.meteringX = x;
+		next.meteringY = y;
+		next.meteringSize = size;
+		moonMeteringMode = next;
+		moonMeteringTime = now;
+		getCameraController().setNightSkyMode(next, null);
+	}
 
-		previewSizePair = selectSizePair(
-				cameraParameters.getPreferredPreviewSizeForVideo(),
-				cameraParameters.getSupportedPreviewSizes(),
-				cameraParameters.getSupportedPictureSizes(),
-				cameraView.getWidth(),
-				cameraView.getHeight());
+	//called on a frame pipeline worker
+	private MoonDetector.Listener moonListener =
+			new MoonDetector.Listener() {
+				@Override
+				public void onMoonDetection(MoonDetector.Result result) {
+					CallbackContext watchCallbackContext = moonCallbackContext;
+					if (watchCallbackContext == null || (!result.found && !moonFound)) {
+						return;
+					}
+					moonFound = result.found;
+					if (result.found) {
+						followMoon(result);
+					}
 
-		Log.d(TAG, "preview size: " + previewSizePair.previewSize.width + ":" + previewSizePair.previewSize.height);
+					try {
+						JSONObject jsonObject = new JSONObject();
+						jsonObject.put("found", result.found);
+						jsonObject.put("x", result.x);
+						jsonObject.put("y", result.y);
+						jsonObject.put("radius", result.radius);
+						jsonObject.put("confidence", result.confidence);
+						jsonObject.put("tracked", result.tracked);
+						jsonObject.put("frameWidth", result.frameWidth);
+						jsonObject.put("frameHeight", result.frameHeight);
+						jsonObject.put("orientation", result.orientation);
+						jsonObject.put("timestamp", result.timestamp);
+						jsonObject.put("processingTime", result.processingNanos / 1000000.0);
+
+						PluginResult pluginResult = new PluginResult(PluginResult.Status.OK, jsonObject);
+						pluginResult.setKeepCallback(true);
+						watchCallbackContext.sendPluginResult(pluginResult);
+					} catch (JSONException e) {
+						Log.e(TAG, "Can't set exception", e);
+					}
+				}
+			};
 
-		cameraParameters.setPreviewSize(previewSizePair.previewSize.width, previewSizePair.previewSize.height);
-		Camera.Size picSize = previewSizePair.pictureSize != null ? previewSizePair.pictureSize : previewSizePair.previewSize;
-		cameraParameters.setPictureSize(picSize.width,picSize.height);
+	/**
+	 * Create the camera controller and select its camera api once per plugin instance.
+	 * Camera2 is used when the device has full Camera2 support, unless the EzarCameraApi
+	 * preference forces an api or the flashlight plugin, which drives the torch through
+	 * the legacy Camera, is installed.
+	 */
+	private synchronized CameraController getCameraController() {
+		if (cameraController != null) {
+			return cameraController;
+		}
 
-		Log.d(TAG, "picture size: " + picSize.width + ":" + picSize.height);
+		boolean useCamera2;
+		if (CAMERA_API_CAMERA2.equals(cameraApi)) {
+			useCamera2 = Build.VERSION.SDK_INT >= Build.VERSION_CODES.LOLLIPOP;
+		} else if (CAMERA_API_LEGACY.equals(cameraApi)) {
+			useCamera2 = false;
+		} else {
+			useCamera2 = getFlashlightPlugin() == null && Camera2Engine.isSupported(activity);
+		}
 
-		camera.setParameters(cameraParameters);
+		cameraController = new CameraController(activity, useCamera2,
+				CAMERA_API_AUTO.equals(cameraApi), latencyTracer, cameraListener);
+		cameraController.setPauseGracePeriod(pauseGracePeriod);
+		//only a TextureView can magnify the preview
+		cameraController.setMaxDigitalZoom(
+				PreviewSurface.HOST_SURFACE_VIEW.equals(previewHost) ? 1.0 : maxDigitalZoom);
 
-		try {
-			if (cameraView.getSurfaceTexture() != null) {
-				camera.setPreviewTexture(cameraView.getSurfaceTexture());
-			}
-		} catch (IOException e) {
-			Log.e(TAG, "Unable to attach preview to camera!", e);
+		//resolve the flashlight plugin once, older versions only have reflective entry points
+		CordovaPlugin flashlightPlugin = getFlashlightPlugin();
+		if (flashlightPlugin instanceof CameraSession.Listener) {
+			addSessionListener((CameraSession.Listener) flashlightPlugin);
+		} else if (flashlightPlugin != null) {
+			addSessionListener(new FlashlightBridge(flashlightPlugin));
 		}
+
+		return cameraController;
 	}
 
 
 	@Override
 	public void onPause(boolean multitasking) {
 		super.onPause((multitasking));
-		if (isPreviewing) {
-			int camId = cameraId;
-			CameraDirection camDir = cameraDirection;
-			stopPreview(null);
 
-			//reset state so it can be restored onResume
-			isPreviewing = true;
-			this.cameraId = camId;
-			this.cameraDirection = camDir;
+		//controller pauses or closes the camera but keeps the requested camera to restore onResume,
+		//see EzarPauseGracePeriod
+		if (cameraController != null) {
+			cameraController.setPaused(true);
+		}
+		if (motionPrior != null) {
+			motionPrior.stop();
 		}
-
-		isPaused = true;
 	}
 
 
@@ -491,109 +930,182 @@ public class ezAR extends CordovaPlugin {
 	public void onResume(boolean multitasking) {
 		super.onResume(multitasking);
 
-		//must wait until surfaceTexture is available for use by camera before starting preview
-		//see onSurfaceTextureAvailable
-
-		isPaused = false;
+		//preview restarts, or resumes within the grace period, once the surfaceTexture
+		//is available again, see onSurfaceTextureAvailable
+		if (cameraController != null) {
+			cameraController.setPaused(false);
+		}
+		resumeMotionPrior();
 	}
 
-	//only call from UI thread
-	private void updateCordovaViewContainerSize() {
-
-		cordova.getActivity().runOnUiThread(new Runnable() {
-			@Override
-			public void run() {
-				FrameLayout.LayoutParams paramsX = (FrameLayout.LayoutParams) cordovaViewContainer.getLayoutParams();
-				Log.d(TAG,"updateCordovaViewContainer PRE invalidate: " + paramsX.width + ":" + paramsX.height);
+	private synchronized void resumeMotionPrior() {
+		if (moonCallbackContext != null && moonTracker != null && moonTracker.isTrackingEnabled()) {
+			motionPrior.start();
+		}
+	}
 
-				Size sz = getDefaultWebViewSize();
-				int previewWidth = previewSizePair.previewSize.width;
-				int previewHeight = previewSizePair.previewSize.height;
+	/**
+	 * Rotation is handled in place, see configChanges in plugin.xml: the camera stays open
+	 * and keeps its surface, only the display orientation and preview transform change.
+	 */
+	@Override
+	public void onConfigurationChanged(Configuration newConfig) {
+		super.onConfigurationChanged(newConfig);
 
-				if (isPortraitOrientation()) {
-					previewWidth = previewSizePair.previewSize.height;
-					previewHeight = previewSizePair.previewSize.width;
-				}
+		if (isPreviewing) {
+			requestPreviewLayout();
+		}
+	}
 
-				float scale = Math.min((float) sz.width / (float) previewWidth, (float) sz.height / (float) previewHeight);
-				float dx = Math.abs(sz.width - previewWidth * scale) / 2f;
-				float dy = Math.abs(sz.height - previewHeight * scale) / 2f;
+	@Override
+	public void onDestroy() {
+		super.onDestroy();
 
-				Log.d(TAG, "computeTransform, scale: " + scale);
+		if (displayListener != null) {
+			DisplayManager displayManager = (DisplayManager) activity.getSystemService(Context.DISPLAY_SERVICE);
+			displayManager.unregisterDisplayListener(displayListener);
+			displayListener = null;
+		}
+		if (cameraController != null) {
+			cameraController.shutdown();
+		}
+	}
 
-				int cvcWidth = (int)(previewWidth * scale);
-				int cvcHt = (int)(previewHeight * scale);
+	//only call from UI thread
+	@TargetApi(Build.VERSION_CODES.JELLY_BEAN_MR1)
+	private void registerDisplayListener() {
+		displayListener = new DisplayManager.DisplayListener() {
+			@Override
+			public void onDisplayAdded(int displayId) {
+			}
 
-				Log.d(TAG, "updateCordovaViewContainer cvs size: " + cvcWidth + ":" + cvcHt);
+			@Override
+			public void onDisplayRemoved(int displayId) {
+			}
 
-				FrameLayout.LayoutParams params = (FrameLayout.LayoutParams) cordovaViewContainer.getLayoutParams();
-				params.width = cvcWidth;
-				params.height = cvcHt;
-				params.gravity = Gravity.CENTER;
-				cordovaViewContainer.setLayoutParams(params);
+			@Override
+			public void onDisplayChanged(int displayId) {
+				if (isPreviewing &&
+						activity.getWindowManager().getDefaultDisplay().getRotation() != displayRotation) {
+					requestPreviewLayout();
+				}
+			}
+		};
 
-				View v = cordova.getActivity().findViewById(android.R.id.content);
-				v.requestLayout();
+		DisplayManager displayManager = (DisplayManager) activity.getSystemService(Context.DISPLAY_SERVICE);
+		displayManager.registerDisplayListener(displayListener, null); //UI thread
+	}
 
-				updateCameraDisplayOrientation();
+	//only call from UI thread
+	private void requestPreviewLayout() {
+		if (!previewLayoutPending) {
+			previewLayoutPending = true;
+			Choreographer.getInstance().postFrameCallback(previewLayoutCallback);
+		}
+	}
 
-				paramsX = (FrameLayout.LayoutParams) cordovaViewContainer.getLayoutParams();
-				Log.d(TAG, "updateCordovaViewContainer POST invalidate: " + paramsX.width + ":" + paramsX.height);
-			}
-		});
+	//only call from UI thread
+	private void updatePreviewLayout() {
+		long startTime = LatencyTracer.now();
+		if (PREVIEW_SCALING_CONTAINER.equals(previewScaling)) {
+			updateCordovaViewContainerSize();
+		} else if (cameraSurfaceView != null) {
+			updateCameraSurfaceViewSize();
+		} else {
+			//webview stays full screen, only the camera view's transform changes
+			updateCameraDisplayOrientation();
+		}
+		latencyTracer.record(LatencyTracer.LAYOUT, startTime);
 	}
 
-	private void resetCordovaViewContainerSize() {
-		cordova.getActivity().runOnUiThread(new Runnable() {
-			@Override
-			public void run() {
-				Size sz = getDefaultWebViewSize();
-				int cvcWidth = sz.width;
-				int cvcHt =  sz.height;
-
-				FrameLayout.LayoutParams params = (FrameLayout.LayoutParams)cordovaViewContainer.getLayoutParams();
-				params.width = cvcWidth;
-				params.height = cvcHt;
-				params.gravity = Gravity.FILL;
-				cordovaViewContainer.setLayoutParams(params);
-
-				View v = cordova.getActivity().findViewById(android.R.id.content);
-				v.requestLayout();
+	/**
+	 * A SurfaceView can not be transformed, fit or crop the preview by sizing the
+	 * SurfaceView itself. The webview is its sibling and keeps its size.
+	 * Only call from UI thread.
+	 */
+	private void updateCameraSurfaceViewSize() {
+		int viewWidth = cordovaViewContainer.getWidth();
+		int viewHeight = cordovaViewContainer.getHeight();
+		if (viewWidth > 0 && viewHeight > 0) {
+			computePreviewContentScale(viewWidth, viewHeight, PREVIEW_SCALING_CROP.equals(previewScaling));
+			int width = Math.round(viewWidth * previewContentScaleX);
+			int height = Math.round(viewHeight * previewContentScaleY);
+
+			FrameLayout.LayoutParams params = (FrameLayout.LayoutParams) cameraSurfaceView.getLayoutParams();
+			if (params.width != width || params.height != height) {
+				params.width = width;
+				params.height = height;
+				params.gravity = Gravity.CENTER;
+				cameraSurfaceView.setLayoutParams(params);
 			}
-		});
+		}
+
+		updateCameraDisplayOrientation();
 	}
 
-	private int getCameraId(CameraDirection cameraDir) {
+	//only call from UI thread
+	private void updateCordovaViewContainerSize() {
+		Size sz = getDefaultWebViewSize();
+		int previewWidth = this.previewWidth;
+		int previewHeight = this.previewHeight;
 
-		// Find number of cameras available
-		int numberOfCameras = Camera.getNumberOfCameras();
-		Log.d(TAG, "Cameras:" + numberOfCameras);
+		if (isPortraitOrientation()) {
+			previewWidth = this.previewHeight;
+			previewHeight = this.previewWidth;
+		}
 
-		// Find ID of the back-facing ("default") camera
-		Camera.CameraInfo cameraInfo = new Camera.CameraInfo();
-		int cameraIdToOpen = UNDEFINED;
-		for (int i = 0; i < numberOfCameras; i++) {
-			Camera.getCameraInfo(i, cameraInfo);
+		float scale = Math.min((float) sz.width / (float) previewWidth, (float) sz.height / (float) previewHeight);
+		Log.d(TAG, "computeTransform, scale: " + scale);
 
-			Log.d(TAG, "Camera facing:" + cameraInfo.facing);
+		int cvcWidth = (int)(previewWidth * scale);
+		int cvcHt = (int)(previewHeight * scale);
 
-			if (cameraInfo.facing == cameraDir.getDirection()) {
-				cameraIdToOpen = i;
-				break;
-			}
-		}
+		Log.d(TAG, "updateCordovaViewContainer cvs size: " + cvcWidth + ":" + cvcHt);
 
-		if (cameraIdToOpen == UNDEFINED) {
-			cameraIdToOpen = numberOfCameras - 1;
+		//every container change relayouts the webview, skip it when nothing changed
+		FrameLayout.LayoutParams params = (FrameLayout.LayoutParams) cordovaViewContainer.getLayoutParams();
+		if (params.width != cvcWidth || params.height != cvcHt || params.gravity != Gravity.CENTER) {
+			params.width = cvcWidth;
+			params.height = cvcHt;
+			params.gravity = Gravity.CENTER;
+			cordovaViewContainer.setLayoutParams(params);
+
+			View v = cordova.getActivity().findViewById(android.R.id.content);
+			v.requestLayout();
 		}
 
-		return cameraIdToOpen;
+		updateCameraDisplayOrientation();
 	}
 
+	//only call from UI thread
+	private void resetCordovaViewContainerSize() {
+		if (!PREVIEW_SCALING_CONTAINER.equals(previewScaling)) {
+			return;
+		}
 
+		Size sz = getDefaultWebViewSize();
+		int cvcWidth = sz.width;
+		int cvcHt =  sz.height;
+
+		FrameLayout.LayoutParams params = (FrameLayout.LayoutParams)cordovaViewContainer.getLayoutParams();
+		params.width = cvcWidth;
+		params.height = cvcHt;
+		params.gravity = Gravity.FILL;
+		cordovaViewContainer.setLayoutParams(params);
+
+		View v = cordova.getActivity().findViewById(android.R.id.content);
+		v.requestLayout();
+	}
+
+	//only call from UI thread
 	public void updateCameraDisplayOrientation() {
-		int result = getRoatationAngle(cameraId);
-		camera.setDisplayOrientation(result);
+		displayRotation = activity.getWindowManager().getDefaultDisplay().getRotation();
+		int result = getRoatationAngle(cameraFacing, sensorOrientation);
+		if (engineRotatesPreview) {
+			getCameraController().setDisplayOrientation(result);
+		}
+
+		updateCameraViewTransform();
 
 //moved to snapshot plugin
 //		Camera.Parameters params = camera.getParameters();
@@ -607,15 +1119,41 @@ public class ezAR extends CordovaPlugin {
 		Log.i(TAG, "updateCameraDeviceOrientation: " + result);
 	}
 
+	/**
+	 * Fit or fill the camera view with the preview and apply the digital zoom. Only the
+	 * TextureView's matrix changes, the camera is not reconfigured.
+	 * Only call from UI thread.
+	 */
+	private void updateCameraViewTransform() {
+		if (cameraView == null) {
+			//SurfaceView host, camera2 rotates the surface's buffers itself
+			return;
+		}
+
+		FrameLayout.LayoutParams params = (FrameLayout.LayoutParams) cordovaViewContainer.getLayoutParams();
+		int viewWidth = params.width > 0 ? params.width : cameraView.getWidth();
+		int viewHeight = params.height > 0 ? params.height : cameraView.getHeight();
+		if (engineRotatesPreview && PREVIEW_SCALING_CONTAINER.equals(previewScaling)) {
+			//container already has the preview's aspect ratio
+			previewContentScaleX = 1;
+			previewContentScaleY = 1;
+			Matrix matrix = new Matrix();
+			matrix.setScale(digitalZoom, digitalZoom, viewWidth / 2f, viewHeight / 2f);
+			cameraView.setTransform(matrix);
+		} else if (viewWidth > 0 && viewHeight > 0) {
+			boolean fill = !PREVIEW_SCALING_FIT.equals(previewScaling);
+			cameraView.setTransform(computePreviewTransform(viewWidth, viewHeight, fill));
+		}
+	}
+
 	/**
 	 * Get Rotation Angle
 	 *
-	 * @param cameraId probably front cam
+	 * @param facing Camera.CameraInfo.CAMERA_FACING_XXX of the camera
+	 * @param orientation sensor orientation of the camera
 	 * @return angel to rotate
 	 */
-	public int getRoatationAngle(int cameraId) {
-		Camera.CameraInfo info = new android.hardware.Camera.CameraInfo();
-		Camera.getCameraInfo(cameraId, info);
+	public int getRoatationAngle(int facing, int orientation) {
 		int rotation = activity.getWindowManager().getDefaultDisplay().getRotation();
 		int degrees = 0;
 		switch (rotation) {
@@ -633,167 +1171,117 @@ public class ezAR extends CordovaPlugin {
 				break;
 		}
 		int result;
-		if (info.facing == Camera.CameraInfo.CAMERA_FACING_FRONT) {
-			result = (info.orientation + degrees) % 360;
+		if (facing == Camera.CameraInfo.CAMERA_FACING_FRONT) {
+			result = (orientation + degrees) % 360;
 			result = (360 - result) % 360; // compensate the mirror
 		} else { // back-facing
-			result = (info.orientation - degrees + 360) % 360;
+			result = (orientation - degrees + 360) % 360;
 		}
 
 		return result;
 	}
 
-	private boolean isPortraitOrientation() {
-		Display display = activity.getWindowManager().getDefaultDisplay();
-		boolean isPortrait = display.getRotation() == Surface.ROTATION_0 || display.getRotation() == Surface.ROTATION_180;
-		return isPortrait;
-	}
-
-
 	/**
-	 * Selects the most suitable preview and picture size, given the desired width and height.
-	 * <p/>
-	 * Even though we may only need the preview size, it's necessary to find both the preview
-	 * size and the picture size of the camera together, because these need to have the same aspect
-	 * ratio.  On some hardware, if you would only set the preview size, you will get a distorted
-	 * image.
-	 *
-	 * @param preferredVideoSize  the best preview size
-	 * @param desiredWidth  the desired width of the camera preview frames
-	 * @param desiredHeight the desired height of the camera preview frames
-	 * @return the selected preview and picture size pair
+	 * Map a point of the camera view, 0..1 in display orientation, onto the preview frame,
+	 * 0..1 in sensor orientation. Front camera previews are mirrored before they are rotated.
+	 * Only call from UI thread.
 	 */
-	//code influenced by https://github.com/googlesamples/android-vision/blob/master/visionSamples/barcode-reader/app/src/main/java/com/google/android/gms/samples/vision/barcodereader/ui/camera/CameraSource.java
-	private static SizePair selectSizePair(Camera.Size preferredVideoSize,
-										   List<android.hardware.Camera.Size> supportedPreviewSizes,
-										   List<android.hardware.Camera.Size> supportedPictureSizes,
-										   int desiredWidth, int desiredHeight) {
-		List<SizePair> validPreviewSizes =
-				generateValidPreviewSizeList(supportedPreviewSizes,supportedPictureSizes);
-
-		// The method for selecting the best size is to minimize the sum of the differences between
-		// the desired values and the actual values for width and height.  This is certainly not the
-		// only way to select the best size, but it provides a decent tradeoff between using the
-		// closest aspect ratio vs. using the closest pixel area.
-		SizePair selectedPair = null;
-		int minDiff = Integer.MAX_VALUE;
-		for (SizePair sizePair : validPreviewSizes) {
-
-			if (preferredVideoSize != null && preferredVideoSize.equals(sizePair.previewSize)) {
-				return sizePair;
-			}
+	private float[] viewToFramePoint(float x, float y) {
+		//undo the digital zoom and the fit or crop of the preview within the camera view
+		x = 0.5f + (x - 0.5f) / (previewContentScaleX * digitalZoom);
+		y = 0.5f + (y - 0.5f) / (previewContentScaleY * digitalZoom);
 
-			if (supportedPictureSizes != null && sizePair.pictureSize == null) {
-				//req'd picture size not avail for this previewSize; skip it
-				continue;
-			}
+		int rotation = getRoatationAngle(cameraFacing, sensorOrientation);
 
-			//find largest previewSize w/ area < desired area
-			Camera.Size size = sizePair.previewSize;
-			int diff = (desiredWidth + desiredHeight) - (size.width + size.height);
-			if (0 <= diff && diff < minDiff) {
-				selectedPair = sizePair;
-				minDiff = diff;
-			}
+		float frameX;
+		float frameY;
+		switch (rotation) {
+			case 90:
+				frameX = y;
+				frameY = 1 - x;
+				break;
+			case 180:
+				frameX = 1 - x;
+				frameY = 1 - y;
+				break;
+			case 270:
+				frameX = 1 - y;
+				frameY = x;
+				break;
+			default:
+				frameX = x;
+				frameY = y;
 		}
 
-		return selectedPair;
+		if (cameraFacing == Camera.CameraInfo.CAMERA_FACING_FRONT) {
+			frameX = 1 - frameX;
+		}
+		return new float[] {frameX, frameY};
 	}
 
-
-	/**
-	 * If the absolute difference between a preview size aspect ratio and a picture size aspect
-	 * ratio is less than this tolerance, they are considered to be the same aspect ratio.
-	 */
-	private static final float ASPECT_RATIO_TOLERANCE = 0.01f;
-
 	/**
-	 * Stores a preview size and a corresponding same-aspect-ratio picture size.  To avoid distorted
-	 * preview images on some devices, the picture size must be set to a size that is the same
-	 * aspect ratio as the preview size or the preview may end up being distorted.  If the picture
-	 * size is null, then there is no picture size with the same aspect ratio as the preview size.
-	 * https://github.com/googlesamples/android-vision/blob/master/visionSamples/barcode-reader/app/src/main/java/com/google/android/gms/samples/vision/barcodereader/ui/camera/CameraSource.java
+	 * Matrix that scales the upright preview to fit or fill the camera view, center
+	 * cropping when it fills, then magnifies it by the digital zoom. Engines that can not rotate the preview themselves (camera2)
+	 * render sensor oriented buffers, the matrix rotates them to the display rotation too.
 	 */
-	private static class SizePair {
-
-		public Camera.Size previewSize;
-		public Camera.Size pictureSize;
-		public float previewAspectRatio;
+	private Matrix computePreviewTransform(int viewWidth, int viewHeight, boolean fill) {
+		Matrix matrix = new Matrix();
+		int rotation = activity.getWindowManager().getDefaultDisplay().getRotation();
 
-		public SizePair(Camera.Size previewSize,
-						Camera.Size pictureSize) {
-			this.previewSize = previewSize;
-			this.pictureSize = pictureSize;
-			this.previewAspectRatio = this.previewSize.width / this.previewSize.height;
+		float scale = computePreviewContentScale(viewWidth, viewHeight, fill);
+
+		RectF viewRect = new RectF(0, 0, viewWidth, viewHeight);
+		float centerX = viewRect.centerX();
+		float centerY = viewRect.centerY();
+
+		if (!engineRotatesPreview && (rotation == Surface.ROTATION_90 || rotation == Surface.ROTATION_270)) {
+			RectF bufferRect = new RectF(0, 0, previewHeight, previewWidth);
+			bufferRect.offset(centerX - bufferRect.centerX(), centerY - bufferRect.centerY());
+			matrix.setRectToRect(viewRect, bufferRect, Matrix.ScaleToFit.FILL);
+			matrix.postScale(scale, scale, centerX, centerY);
+			matrix.postRotate(90 * (rotation - 2), centerX, centerY);
+		} else {
+			//the preview is upright but stretched over the view, restore its aspect ratio
+			matrix.setScale(previewContentScaleX, previewContentScaleY, centerX, centerY);
+			if (!engineRotatesPreview && rotation == Surface.ROTATION_180) {
+				matrix.postRotate(180, centerX, centerY);
+			}
 		}
+		matrix.postScale(digitalZoom, digitalZoom, centerX, centerY);
 
-
+		return matrix;
 	}
 
 	/**
-	 * Generates a list of acceptable preview sizes.  Preview sizes are not acceptable if there is
-	 * not a corresponding picture size of the same aspect ratio.  If there is a corresponding
-	 * picture size of the same aspect ratio, the picture size is paired up with the preview size.
-	 * <p/>
-	 * This is necessary because even if we don't use still pictures, the still picture size must be
-	 * set to a size that is the same aspect ratio as the preview size we choose.  Otherwise, the
-	 * preview images may be distorted on some devices.
+	 * Scale of the upright preview that fits or fills the view. Records the displayed
+	 * preview size relative to the view for {@link #viewToFramePoint}.
 	 */
-	private static List<SizePair> generateValidPreviewSizeList(
-			List<android.hardware.Camera.Size> supportedPreviewSizes,
-			List<android.hardware.Camera.Size> supportedPictureSizes) {
+	private float computePreviewContentScale(int viewWidth, int viewHeight, boolean fill) {
+		boolean isPortrait = isPortraitOrientation();
+		int contentWidth = isPortrait ? previewHeight : previewWidth;
+		int contentHeight = isPortrait ? previewWidth : previewHeight;
+		float scale = fill ?
+				Math.max((float) viewWidth / contentWidth, (float) viewHeight / contentHeight) :
+				Math.min((float) viewWidth / contentWidth, (float) viewHeight / contentHeight);
+		previewContentScaleX = contentWidth * scale / viewWidth;
+		previewContentScaleY = contentHeight * scale / viewHeight;
+		return scale;
+	}
 
-		List<SizePair> validPreviewSizes = new ArrayList<SizePair>();
-//		for (android.hardware.Camera.Size previewSize : supportedPreviewSizes) {
-////			Log.v(TAG, "PV:  " + previewSize.width + ":" + previewSize.height);
-//
-//			//if no supported picture sizes then leave this loop
-//			if (supportedPictureSizes == null) break;
-//
-//			float previewAspectRatio = (float) previewSize.width / (float) previewSize.height;
-//			Camera.Size bestPictureSize = null;
-//			float  bestScale = Float.MAX_VALUE;
-//
-//			// By looping through the picture sizes in order, we favor the higher resolutions.
-//			// We choose the highest resolution in order to support taking the full resolution
-//			// picture later.
-//			for (Camera.Size pictureSize : supportedPictureSizes) {
-////				Log.v(TAG, "PIC:  " + pictureSize.width + ":" + pictureSize.height);
-//
-//				float pictureAspectRatio = (float) pictureSize.width / (float) pictureSize.height;
-//				if (Math.abs(previewAspectRatio - pictureAspectRatio) < ASPECT_RATIO_TOLERANCE) {
-//
-//					float scale = (float) pictureSize.width / (float) previewSize.width;
-//					if (1.0f <= scale && scale <= 1.5f && (bestPictureSize == null || scale < bestScale)) {
-//						bestScale = scale;
-//						bestPictureSize = pictureSize;
-//						//break;
-//						if (bestScale == 1.0f) break;
-//					} else if (scale < 1.0f && bestScale > 1.5f) {
-//						bestScale = scale;
-//						bestPictureSize = pictureSize;
-//						break;
-//					}
-//				}
-//			}
-//			if (bestPictureSize != null) {
-//				validPreviewSizes.add(new SizePair(previewSize, bestPictureSize));
-//			}
-//		}
+	private boolean isPortraitOrientation() {
+		Display display = activity.getWindowManager().getDefaultDisplay();
+		boolean isPortrait = display.getRotation() == Surface.ROTATION_0 || display.getRotation() == Surface.ROTATION_180;
+		return isPortrait;
+	}
 
-		// If there are no picture sizes with the same aspect ratio as any preview sizes, allow all
-		// of the preview sizes and hope that the camera can handle it.  Probably unlikely, but we
-		// still account for it.
-		if (validPreviewSizes.size() == 0) {
-			Log.d(TAG, "No preview sizes have a corresponding same-aspect-ratio picture size");
-			for (Camera.Size previewSize : supportedPreviewSizes) {
-				Log.d(TAG, "PV:  " + previewSize.width + ":" + previewSize.height);
-				// The null picture size will let us know that we shouldn't set a picture size.
-				validPreviewSizes.add(new SizePair(previewSize, null));
-			}
-		}
 
-		return validPreviewSizes;
+	/**
+	 * Chromium based webviews (KitKat and newer) keep a transparent background when
+	 * hardware accelerated, older ones paint it black over the camera view.
+	 */
+	private boolean isWebViewHardwareAccelerated() {
+		return WEBVIEW_LAYER_HARDWARE.equals(webViewLayer) &&
+				Build.VERSION.SDK_INT >= Build.VERSION_CODES.KITKAT;
 	}
 
 	private Size getDefaultWebViewSize() {
@@ -842,71 +1330,153 @@ public class ezAR extends CordovaPlugin {
 	}
 
 
-  //------------- used by Flashlight plugin --------------------
-  //HACK using IPC between videoOverlayPlugin and flashlight plugin
-  //TODO: refactor to use events and listener pattern
+  //------------- CameraSession, used by the snapshot and flashlight plugins --------------------
+  //older plugin versions find these methods by reflection, keep their names
+
+	@Override
+	public void addSessionListener(CameraSession.Listener listener) {
+		sessionListeners.add(listener);
+	}
 
+	@Override
+	public void removeSessionListener(CameraSession.Listener listener) {
+		sessionListeners.remove(listener);
+	}
+
+	@Override
 	public Camera getActiveCamera() {
-		return camera;
+		CameraController controller = cameraController;
+		return controller != null ? controller.getCamera() : null;
 	}
 
-	public Integer getActiveCameraId() {
-		return Integer.valueOf(cameraId);
+	@Override
+	public boolean isCameraRunning() {
+		CameraController controller = cameraController;
+		return controller != null && controller.isPreviewing();
+	}
+
+	@Override
+	public int getActiveCameraId() {
+		CameraController controller = cameraController;
+		return controller != null ? controller.getCameraId() : UNDEFINED;
+	}
+
+	/**
+	 * @return total zoom of the running camera, the camera's own zoom times the digital
+	 * 			zoom of the camera view, which TextureView.getBitmap includes
+	 */
+	@Override
+	public double getZoom() {
+		CameraController controller = cameraController;
+		return controller != null && controller.isPreviewing() ? controller.getZoom() : 1.0;
+	}
+
+	@Override
+	public int getPreviewWidth() {
+		return sessionPreviewWidth;
+	}
+
+	@Override
+	public int getPreviewHeight() {
+		return sessionPreviewHeight;
+	}
+
+	@Override
+	public CameraDirection getActiveCameraDirection() {
+		CameraController controller = cameraController;
+		return controller != null ? controller.getCameraDirection() : null;
 	}
 
 	public Camera getBackCamera() {
 		Camera camera = null;
-		if (cameraDirection == CameraDirection.BACK) {
-			camera = this.camera;
+		if (getActiveCameraDirection() == CameraDirection.BACK) {
+			camera = getActiveCamera();
 		}
 		return camera;
 	}
 
 	public Camera getFrontCamera() {
 		Camera camera = null;
-		if (cameraDirection == CameraDirection.FRONT) {
-			camera = this.camera;
+		if (getActiveCameraDirection() == CameraDirection.FRONT) {
+			camera = getActiveCamera();
 		}
 		return camera;
 	}
 
+	/**
+	 * @return null when the preview host is a SurfaceView, see getPreviewHost
+	 */
+	@Override
 	public TextureView getCameraView() {
 		return cameraView;
 	}
 
-	//reflectively access VideoOverlay plugin to get camera in same direction as lightLoc
-	private void sendFlashlightEvent(int state, CameraDirection cameraDirection, int cameraId, Camera camera) {
+	@Override
+	public SurfaceView getCameraSurfaceView() {
+		return cameraSurfaceView;
+	}
+
+	/**
+	 * @return "textureview" or "surfaceview", see EzarPreviewHost preference. Only a
+	 *         TextureView can be read back with getBitmap.
+	 */
+	@Override
+	public String getPreviewHost() {
+		return previewHost;
+	}
 
-		CordovaPlugin flashlightPlugin = getFlashlightPlugin();
-		if (flashlightPlugin == null) {
-			return;
+	/**
+	 * Register {@link FrameProcessor}s to analyse camera preview frames.
+	 */
+	public FramePipeline getFramePipeline() {
+		return getCameraController().getFramePipeline();
+	}
+
+	/**
+	 * Forwards session events to a flashlight plugin without CameraSession support,
+	 * its videoOverlayStarted/Stopped methods are looked up once.
+	 */
+	private static class FlashlightBridge implements CameraSession.Listener {
+		private final CordovaPlugin flashlightPlugin;
+		private Method startedMethod;
+		private Method stoppedMethod;
+
+		FlashlightBridge(CordovaPlugin flashlightPlugin) {
+			this.flashlightPlugin = flashlightPlugin;
+			try {
+				startedMethod = flashlightPlugin.getClass().getMethod("videoOverlayStarted", int.class, int.class, Camera.class);
+				stoppedMethod = flashlightPlugin.getClass().getMethod("videoOverlayStopped", int.class, int.class, Camera.class);
+			} catch (NoSuchMethodException e) {
+				Log.w(TAG, "Flashlight plugin does not handle camera events", e);
+			}
 		}
 
-		Method method = null;
+		@Override
+		public void onSessionStarted(CameraSession session, CameraDirection cameraDirection, int cameraId, Camera camera) {
+			invoke(startedMethod, cameraDirection, cameraId, camera);
+		}
 
-		try {
-			if (state == STARTED) {
-				method = flashlightPlugin.getClass().getMethod("videoOverlayStarted", int.class, int.class, Camera.class );
-			} else {
-				method = flashlightPlugin.getClass().getMethod("videoOverlayStopped", int.class, int.class, Camera.class );
-			}
-		} catch (SecurityException e) {
-			//e.printStackTrace();
-		} catch (NoSuchMethodException e) {
-			//e.printStackTrace();
+		@Override
+		public void onSessionStopped(CameraSession session, CameraDirection cameraDirection, int cameraId) {
+			invoke(stoppedMethod, cameraDirection, cameraId, null);
 		}
 
-		try {
-			if (method == null) return;
+		@Override
+		public void onSessionReconfigured(CameraSession session) {
+		}
 
-			method.invoke(flashlightPlugin, cameraDirection.ordinal(), cameraId, camera);
+		private void invoke(Method method, CameraDirection cameraDirection, int cameraId, Camera camera) {
+			if (method == null) {
+				return;
+			}
 
-		} catch (IllegalArgumentException e) { // exception handling omitted for brevity
-			//e.printStackTrace();
-		} catch (IllegalAccessException e) { // exception handling omitted for brevity
-			//e.printStackTrace();
-		} catch (InvocationTargetException e) { // exception handling omitted for brevity
-			//e.printStackTrace();
+			try {
+				method.invoke(flashlightPlugin, cameraDirection.ordinal(), cameraId, camera);
+			} catch (IllegalAccessException e) {
+				Log.e(TAG, "Unable to notify flashlight plugin", e);
+			} catch (InvocationTargetException e) {
+				Log.e(TAG, "Flashlight plugin failed", e.getCause());
+			}
 		}
 	}
 
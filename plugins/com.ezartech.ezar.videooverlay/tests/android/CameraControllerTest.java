@@ -0,0 +1,58 @@
+/**
+ * Copyright 2016, ezAR Technologies
+ * http://ezartech.com
+ *
+ * By @wayne_parrott, @vridosh, @kwparrott
+ *
+ * Licensed under a modified MIT license.
+ * Please see LICENSE or http://ezartech.com/ezarstartupkit-license for more information
+ *
+ */
+package com.ezartech.ezar.videooverlay;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+/**
+ * Split of a zoom into the camera's zoom and the camera view's digital zoom.
+ */
+public class CameraControllerTest {
+
+	@Test
+	public void zoomWithinTheCameraRangeIsNotDigital() {
+		assertEquals(3.0, CameraController.getCameraZoom(3.0, 4.0), 0);
+		assertEquals(1.0, CameraController.getViewZoom(3.0, 3.0, 2.0), 0);
+	}
+
+	@Test
+	public void zoomBeyondTheCameraRangeIsDigital() {
+		assertEquals(4.0, CameraController.getCameraZoom(6.0, 4.0), 0);
+		assertEquals(1.5, CameraController.getViewZoom(6.0, 4.0, 2.0), 1e-9);
+	}
+
+	@Test
+	public void digitalZoomIsCapped() {
+		assertEquals(2.0, CameraController.getViewZoom(12.0, 4.0, 2.0), 0);
+	}
+
+	@Test
+	public void digitalZoomContinuesFromTheAchievedZoom() {
+		//the camera stops short of its maxZoom on its last zoom step
+		assertEquals(6.0 / 3.8, CameraController.getViewZoom(6.0, 3.8, 2.0), 1e-9);
+
+		//rounded up past the request, no digital zoom below 1
+		assertEquals(1.0, CameraController.getViewZoom(3.0, 3.25, 2.0), 0);
+	}
+
+	@Test
+	public void cameraWithoutZoomIsDigitalOnly() {
+		assertEquals(1.0, CameraController.getCameraZoom(3.0, 0), 0);
+		assertEquals(1.5, CameraController.getViewZoom(1.5, 1.0, 2.0), 0);
+	}
+
+	@Test
+	public void zoomBelowOneIsNotMagnified() {
+		assertEquals(1.0, CameraController.getViewZoom(0.5, 1.0, 2.0), 0);
+	}
+}
@@ -0,0 +1,67 @@
+/**
+ * Copyright 2016, ezAR Technologies
+ * http://ezartech.com
+ *
+ * By @wayne_parrott, @vridosh, @kwparrott
+ *
+ * Licensed under a modified MIT license.
+ * Please see LICENSE or http://ezartech.com/ezarstartupkit-license for more information
+ *
+ */
+package com.ezartech.ezar.videooverlay;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+/**
+ * Zoom index mapping and smooth zoom retargeting of the legacy engine.
+ */
+public class LegacyCameraEngineTest {
+
+	@Test
+	public void zoomMapsLinearlyOntoIndexes() {
+		assertEquals(0, LegacyCameraEngine.toZoomIndex(1.0, 60));
+		assertEquals(60, LegacyCameraEngine.toZoomIndex(10.0, 60));
+		assertEquals(20, LegacyCameraEngine.toZoomIndex(4.0, 60));
+	}
+
+	@Test
+	public void zoomIndexIsClamped() {
+		assertEquals(0, LegacyCameraEngine.toZoomIndex(0.5, 60));
+		assertEquals(60, LegacyCameraEngine.toZoomIndex(25.0, 60));
+	}
+
+	@Test
+	public void zoomRoundsToTheNearestIndex() {
+		//9 zoom units over 4 indexes, 2.25 per index
+		assertEquals(1, LegacyCameraEngine.toZoomIndex(3.0, 4));
+		assertEquals(2, LegacyCameraEngine.toZoomIndex(4.5, 4));
+	}
+
+	@Test
+	public void achievedZoomIsTheIndexZoom() {
+		assertEquals(1.0, LegacyCameraEngine.toZoom(0, 60), 1e-6);
+		assertEquals(10.0, LegacyCameraEngine.toZoom(60, 60), 1e-5);
+		assertEquals(3.25, LegacyCameraEngine.toZoom(LegacyCameraEngine.toZoomIndex(3.0, 4), 4), 1e-6);
+	}
+
+	@Test
+	public void newTargetBehindThePositionReversesTheSmoothZoom() {
+		//zooming in from 10 to 30, now at 20
+		assertTrue(LegacyCameraEngine.reversesSmoothZoom(15, 20, 30));
+		assertFalse(LegacyCameraEngine.reversesSmoothZoom(40, 20, 30));
+		assertFalse(LegacyCameraEngine.reversesSmoothZoom(25, 20, 30));
+
+		//zooming out from 30 to 10, now at 20
+		assertTrue(LegacyCameraEngine.reversesSmoothZoom(25, 20, 10));
+		assertFalse(LegacyCameraEngine.reversesSmoothZoom(5, 20, 10));
+	}
+
+	@Test
+	public void targetAtThePositionDoesNotReverse() {
+		assertFalse(LegacyCameraEngine.reversesSmoothZoom(20, 20, 30));
+	}
+}
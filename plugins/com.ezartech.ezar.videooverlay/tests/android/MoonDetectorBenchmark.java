@@ -0,0 +1,86 @@
+/**
+ * Copyright 2016, ezAR Technologies
+ * http://ezartech.com
+ *
+ * By @wayne_parrott, @vridosh, @kwparrott
+ *
+ * Licensed under a modified MIT license.
+ * Please see LICENSE or http://ezartech.com/ezarstartupkit-license for more information
+ *
+ */
+package com.ezartech.ezar.videooverlay;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * JMH benchmark of the moon detector and tracker over the {@link TestFrames}, run by
+ * the ezarVideoOverlayBenchmarks task of tests/tests.gradle.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class MoonDetectorBenchmark {
+
+	@Param({"moon_1x", "moon_4x", "moon_10x", "no_moon"})
+	public String frameName;
+
+	private PreviewFrame frame;
+	private PreviewFrame frameWithoutViewAngle;
+	private MoonDetector detector;
+	private MoonTracker tracker;
+
+
+	@Setup
+	public void setUp() {
+		TestFrames testFrames = TestFrames.byName(frameName);
+		frame = testFrames.load();
+		frameWithoutViewAngle = testFrames.load();
+		frameWithoutViewAngle.horizontalViewAngle = 0;
+
+		detector = new MoonDetector(null);
+		tracker = new MoonTracker(null, new MoonDetector.Listener() {
+			@Override
+			public void onMoonDetection(MoonDetector.Result result) {
+			}
+		});
+		tracker.onPreviewFrame(frame); //lock
+	}
+
+	@Benchmark
+	public MoonDetector.Result detect() {
+		return detector.detect(frame);
+	}
+
+	/**
+	 * Without a view angle the search starts on the coarsest level and retries finer ones.
+	 */
+	@Benchmark
+	public MoonDetector.Result detectWithoutViewAngle() {
+		return detector.detect(frameWithoutViewAngle);
+	}
+
+	/**
+	 * The locked tracker searches a window around the moon, or runs the detector when
+	 * the frame has no moon.
+	 */
+	@Benchmark
+	public PreviewFrame track() {
+		tracker.onPreviewFrame(frame);
+		return frame;
+	}
+}
@@ -0,0 +1,79 @@
+/**
+ * Copyright 2016, ezAR Technologies
+ * http://ezartech.com
+ *
+ * By @wayne_parrott, @vridosh, @kwparrott
+ *
+ * Licensed under a modified MIT license.
+ * Please see LICENSE or http://ezartech.com/ezarstartupkit-license for more information
+ *
+ */
+package com.ezartech.ezar.videooverlay;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+/**
+ * Detection on the {@link TestFrames}, from the moon at 1x, about 10 pixels across, to 10x.
+ */
+public class MoonDetectorTest {
+
+	private final MoonDetector detector = new MoonDetector(null);
+
+	@Test
+	public void findsTheMoonAt1x() {
+		assertFound(TestFrames.MOON_1X, TestFrames.MOON_1X.load());
+	}
+
+	@Test
+	public void findsTheMoonAt4x() {
+		assertFound(TestFrames.MOON_4X, TestFrames.MOON_4X.load());
+	}
+
+	@Test
+	public void findsTheMoonAt10x() {
+		assertFound(TestFrames.MOON_10X, TestFrames.MOON_10X.load());
+	}
+
+	@Test
+	public void findsTheMoonAt1xWithoutViewAngle() {
+		PreviewFrame frame = TestFrames.MOON_1X.load();
+		frame.horizontalViewAngle = 0;
+		assertFound(TestFrames.MOON_1X, frame);
+	}
+
+	@Test
+	public void findsTheMoonAt10xWithoutViewAngle() {
+		PreviewFrame frame = TestFrames.MOON_10X.load();
+		frame.horizontalViewAngle = 0;
+		assertFound(TestFrames.MOON_10X, frame);
+	}
+
+	@Test
+	public void starsAreNotTheMoon() {
+		assertFalse(detector.detect(TestFrames.NO_MOON.load()).found);
+	}
+
+	@Test
+	public void focalLengthScalesWithZoom() {
+		PreviewFrame frame = TestFrames.MOON_1X.load();
+		double focal = MoonDetector.getFocalLength(frame);
+		frame.zoom = 4;
+		assertEquals(4 * focal, MoonDetector.getFocalLength(frame), 1e-6);
+
+		frame.horizontalViewAngle = 0;
+		assertEquals(0, MoonDetector.getFocalLength(frame), 0);
+	}
+
+	private void assertFound(TestFrames expected, PreviewFrame frame) {
+		MoonDetector.Result result = detector.detect(frame);
+		assertTrue(expected.name + " not found, confidence " + result.confidence, result.found);
+		float tolerance = Math.max(1.5f, expected.moonRadius * 0.1f);
+		assertEquals(expected.name + " x", expected.moonX, result.x, tolerance);
+		assertEquals(expected.name + " y", expected.moonY, result.y, tolerance);
+		assertEquals(expected.name + " radius", expected.moonRadius, result.radius, expected.moonRadius * 0.25f);
+	}
+}
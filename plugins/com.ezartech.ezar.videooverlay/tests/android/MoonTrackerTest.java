@@ -0,0 +1,91 @@
+/**
+ * Copyright 2016, ezAR Technologies
+ * http://ezartech.com
+ *
+ * By @wayne_parrott, @vridosh, @kwparrott
+ *
+ * Licensed under a modified MIT license.
+ * Please see LICENSE or http://ezartech.com/ezarstartupkit-license for more information
+ *
+ */
+package com.ezartech.ezar.videooverlay;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+/**
+ * Tracking a locked moon on the {@link TestFrames}, with a gyroscope prior.
+ */
+public class MoonTrackerTest {
+
+	//rotation reported by the gyroscope between two frames, radians
+	private static class FixedMotionPrior extends MotionPrior {
+		float rotationX;
+		float rotationY;
+
+		FixedMotionPrior() {
+			super((android.hardware.SensorManager) null);
+		}
+
+		@Override
+		public synchronized boolean takeRotation(float[] rotation) {
+			rotation[0] = rotationX;
+			rotation[1] = rotationY;
+			return rotationX != 0 || rotationY != 0;
+		}
+	}
+
+	private MoonDetector.Result last;
+	private final FixedMotionPrior motionPrior = new FixedMotionPrior();
+	private final MoonTracker tracker = new MoonTracker(motionPrior, new MoonDetector.Listener() {
+		@Override
+		public void onMoonDetection(MoonDetector.Result result) {
+			last = result;
+		}
+	});
+
+	@Test
+	public void tracksTheMoonAt1xAmongStars() {
+		PreviewFrame frame = TestFrames.MOON_1X.load();
+		tracker.onPreviewFrame(frame);
+		tracker.onPreviewFrame(frame);
+
+		assertTrue(last.found);
+		assertTrue(last.tracked);
+		assertEquals(TestFrames.MOON_1X.moonX, last.x, 1.0f);
+		assertEquals(TestFrames.MOON_1X.moonY, last.y, 1.0f);
+	}
+
+	@Test
+	public void predictsTheShiftAtTheFrameZoom() {
+		TestFrames moon = TestFrames.MOON_10X;
+		tracker.onPreviewFrame(moon.load());
+		assertTrue(last.found);
+
+		//turning the device so the moon moves 120 pixels across the 10x frame
+		int shift = 120;
+		PreviewFrame frame = moon.load();
+		shiftRight(frame, shift);
+		double focal = MoonDetector.getFocalLength(frame);
+		//frames are the natural orientation rotated by 90 degrees, frame x is natural y
+		motionPrior.rotationX = (float) (shift / focal);
+
+		tracker.onPreviewFrame(frame);
+		assertTrue(last.found);
+		assertTrue("outside of the predicted window", last.tracked);
+		assertEquals(moon.moonX + shift, last.x, 2.0f);
+		assertEquals(moon.moonY, last.y, 2.0f);
+	}
+
+	private static void shiftRight(PreviewFrame frame, int shift) {
+		for (int y = 0; y < frame.height; y++) {
+			int row = y * frame.width;
+			System.arraycopy(frame.data, row, frame.data, row + shift, frame.width - shift);
+			for (int x = 0; x < shift; x++) {
+				frame.data[row + x] = 20;
+			}
+		}
+	}
+}
@@ -0,0 +1,59 @@
+/**
+ * Copyright 2016, ezAR Technologies
+ * http://ezartech.com
+ *
+ * By @wayne_parrott, @vridosh, @kwparrott
+ *
+ * Licensed under a modified MIT license.
+ * Please see LICENSE or http://ezartech.com/ezarstartupkit-license for more information
+ *
+ */
+package com.ezartech.ezar.videooverlay;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * JMH benchmark of {@link SizeSelector} on the Nexus 5 sizes of {@link SizeSelectorTest}:
+ * the first selection for a camera and view, as on every camera start before memoization,
+ * and the memoized one. Run like {@link MoonDetectorBenchmark}.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class SizeSelectorBenchmark {
+
+	private CameraCapabilities capabilities;
+	private SizeSelector memoized;
+
+
+	@Setup
+	public void setUp() {
+		capabilities = SizeSelectorTest.nexus5();
+		memoized = new SizeSelector();
+		memoized.select(capabilities, 1080, 1920, PowerProfile.BALANCED);
+	}
+
+	@Benchmark
+	public SizeSelector.Selection selectFirst() {
+		return new SizeSelector().select(capabilities, 1080, 1920, PowerProfile.BALANCED);
+	}
+
+	@Benchmark
+	public SizeSelector.Selection selectMemoized() {
+		return memoized.select(capabilities, 1080, 1920, PowerProfile.BALANCED);
+	}
+}
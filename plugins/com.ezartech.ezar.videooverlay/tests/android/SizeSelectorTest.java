@@ -0,0 +1,107 @@
+/**
+ * Copyright 2016, ezAR Technologies
+ * http://ezartech.com
+ *
+ * By @wayne_parrott, @vridosh, @kwparrott
+ *
+ * Licensed under a modified MIT license.
+ * Please see LICENSE or http://ezartech.com/ezarstartupkit-license for more information
+ *
+ */
+package com.ezartech.ezar.videooverlay;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import org.junit.Test;
+
+public class SizeSelectorTest {
+
+	//Camera.Parameters of a Nexus 5 back camera
+	static final int[][] NEXUS5_PREVIEW_SIZES = {
+			{1920, 1080}, {1280, 960}, {1280, 720}, {800, 480}, {768, 432}, {720, 480}, {640, 480},
+			{576, 432}, {480, 320}, {384, 288}, {352, 288}, {320, 240}, {240, 160}, {176, 144}};
+	static final int[][] NEXUS5_PICTURE_SIZES = {
+			{3264, 2448}, {3264, 1836}, {2592, 1944}, {2048, 1536}, {1920, 1080}, {1600, 1200},
+			{1280, 960}, {1280, 768}, {1280, 720}, {1024, 768}, {800, 600}, {800, 480}, {720, 480},
+			{640, 480}, {352, 288}, {320, 240}, {176, 144}};
+
+	static CameraCapabilities nexus5() {
+		CameraCapabilities capabilities = new CameraCapabilities();
+		for (int[] size : NEXUS5_PREVIEW_SIZES) {
+			capabilities.previewSizes.add(new CameraCapabilities.Size(size[0], size[1]));
+		}
+		for (int[] size : NEXUS5_PICTURE_SIZES) {
+			capabilities.pictureSizes.add(new CameraCapabilities.Size(size[0], size[1]));
+		}
+		capabilities.preferredPreviewSize = new CameraCapabilities.Size(1920, 1080);
+		return capabilities;
+	}
+
+	private final SizeSelector selector = new SizeSelector();
+
+	@Test
+	public void fullHdPortraitViewGetsFullHdUnlessTheProfileCapsIt() {
+		CameraCapabilities capabilities = nexus5();
+
+		assertSelection(1920, 1080, 3264, 1836, selector.select(capabilities, 1080, 1920, PowerProfile.SMOOTH));
+		assertSelection(1920, 1080, 3264, 1836, selector.select(capabilities, 1080, 1920, PowerProfile.BALANCED));
+		assertSelection(1280, 720, 3264, 1836, selector.select(capabilities, 1080, 1920, PowerProfile.BATTERY));
+	}
+
+	@Test
+	public void smallerViewGetsTheMatchingSize() {
+		assertSelection(1280, 720, 3264, 1836, selector.select(nexus5(), 720, 1280, PowerProfile.SMOOTH));
+		assertSelection(800, 480, 1280, 768, selector.select(nexus5(), 800, 480, PowerProfile.SMOOTH));
+	}
+
+	@Test
+	public void fourByThreeViewPrefersTheAspectRatioOverResolution() {
+		assertSelection(1280, 960, 3264, 2448, selector.select(nexus5(), 1536, 2048, PowerProfile.SMOOTH));
+	}
+
+	@Test
+	public void previewSizeWithoutPictureSizeOfItsAspectRatioIsAvoided() {
+		CameraCapabilities capabilities = nexus5();
+		capabilities.pictureSizes.remove(new CameraCapabilities.Size(1280, 768));
+		capabilities.pictureSizes.remove(new CameraCapabilities.Size(800, 480));
+
+		assertSelection(768, 432, 3264, 1836, selector.select(capabilities, 480, 800, PowerProfile.SMOOTH));
+	}
+
+	@Test
+	public void noPictureSizesStillSelectsAPreviewSize() {
+		CameraCapabilities capabilities = nexus5();
+		capabilities.pictureSizes.clear();
+
+		SizeSelector.Selection selection = selector.select(capabilities, 1080, 1920, PowerProfile.SMOOTH);
+		assertEquals(new CameraCapabilities.Size(1920, 1080), selection.previewSize);
+		assertNull(selection.pictureSize);
+	}
+
+	@Test
+	public void noPreviewSizesSelectsNothing() {
+		CameraCapabilities capabilities = new CameraCapabilities();
+		assertNull(selector.select(capabilities, 1080, 1920, PowerProfile.SMOOTH));
+		assertNull(selector.select(capabilities, 1080, 1920, PowerProfile.SMOOTH));
+	}
+
+	@Test
+	public void selectionsAreMemoizedPerViewAndProfile() {
+		CameraCapabilities capabilities = nexus5();
+		SizeSelector.Selection selection = selector.select(capabilities, 1080, 1920, PowerProfile.BALANCED);
+
+		assertSame(selection, selector.select(capabilities, 1080, 1920, PowerProfile.BALANCED));
+		assertEquals(new CameraCapabilities.Size(1280, 720),
+				selector.select(capabilities, 1080, 1920, PowerProfile.BATTERY).previewSize);
+		assertEquals(new CameraCapabilities.Size(1280, 960),
+				selector.select(capabilities, 1536, 2048, PowerProfile.BALANCED).previewSize);
+	}
+
+	private static void assertSelection(int previewWidth, int previewHeight, int pictureWidth, int pictureHeight,
+										SizeSelector.Selection selection) {
+		assertEquals(new CameraCapabilities.Size(previewWidth, previewHeight), selection.previewSize);
+		assertEquals(new CameraCapabilities.Size(pictureWidth, pictureHeight), selection.pictureSize);
+	}
+}
@@ -0,0 +1,175 @@
+/**
+ * Copyright 2016, ezAR Technologies
+ * http://ezartech.com
+ *
+ * By @wayne_parrott, @vridosh, @kwparrott
+ *
+ * Licensed under a modified MIT license.
+ * Please see LICENSE or http://ezartech.com/ezarstartupkit-license for more information
+ *
+ */
+package com.ezartech.ezar.videooverlay;
+
+import java.util.Random;
+
+/**
+ * Synthetic NV21 night sky frames with the camera metadata they are rendered for.
+ * <p/>
+ * A frame is a 1280x720 back camera preview with a 62 degree view angle: sky glow rising
+ * towards the horizon, sensor noise, stars, and the moon as an anti-aliased disc of its
+ * true angular size at the frame's zoom, with maria and a halo. Rendering is seeded by
+ * the frame's name, so every run sees the same pixels. Frames are rendered on first use.
+ */
+public class TestFrames {
+
+	public static final int WIDTH = 1280;
+	public static final int HEIGHT = 720;
+	public static final float VIEW_ANGLE = 62;
+
+	public final String name;
+	public final float zoom;
+	public final float moonX;       //frame pixels, sensor orientation
+	public final float moonY;
+	public final float moonRadius;  //0 when the moon is not in the frame
+
+	private byte[] image;
+
+	public static final TestFrames MOON_1X = new TestFrames("moon_1x", 1, 830.5f, 210.5f);
+	public static final TestFrames MOON_4X = new TestFrames("moon_4x", 4, 400, 380);
+	public static final TestFrames MOON_10X = new TestFrames("moon_10x", 10, 900, 470);
+	public static final TestFrames NO_MOON = new TestFrames("no_moon", 1, 0, 0);
+
+	public static final TestFrames[] ALL = {MOON_1X, MOON_4X, MOON_10X, NO_MOON};
+
+
+	private TestFrames(String name, float zoom, float moonX, float moonY) {
+		this.name = name;
+		this.zoom = zoom;
+		this.moonX = moonX;
+		this.moonY = moonY;
+		this.moonRadius = moonX > 0 ? (float) expectedRadius(zoom) : 0;
+	}
+
+	public static TestFrames byName(String name) {
+		for (TestFrames frame : ALL) {
+			if (frame.name.equals(name)) {
+				return frame;
+			}
+		}
+		throw new IllegalArgumentException(name);
+	}
+
+	public static double expectedRadius(float zoom) {
+		double focal = WIDTH / 2.0 / Math.tan(Math.toRadians(VIEW_ANGLE) / 2) * zoom;
+		return focal * Math.tan(Math.toRadians(MoonDetector.MOON_DIAMETER / 2));
+	}
+
+	/**
+	 * @return a frame of a one frame pool holding the image and its camera metadata
+	 */
+	public PreviewFrame load() {
+		PreviewFrame frame = new FrameBufferPool(1, WIDTH, HEIGHT, null).acquire();
+		synchronized (this) {
+			if (image == null) {
+				image = render();
+			}
+		}
+		System.arraycopy(image, 0, frame.data, 0, image.length);
+
+		frame.horizontalViewAngle = VIEW_ANGLE;
+		frame.zoom = zoom;
+		frame.facing = 0; //CameraInfo.CAMERA_FACING_BACK
+		frame.orientation = 90;
+		return frame;
+	}
+
+	private byte[] render() {
+		Random random = new Random(name.hashCode());
+		byte[] data = new byte[PreviewFrame.getBufferSize(WIDTH, HEIGHT)];
+		float[] luma = new float[WIDTH * HEIGHT];
+
+		//sky glow, brighter towards the horizon at the bottom of the frame
+		for (int y = 0; y < HEIGHT; y++) {
+			for (int x = 0; x < WIDTH; x++) {
+				luma[y * WIDTH + x] = 12 + 14f * y / HEIGHT;
+			}
+		}
+
+		//stars, most a single pixel, the brightest with a little glow
+		for (int i = 0; i < 60; i++) {
+			int x = 1 + random.nextInt(WIDTH - 2);
+			int y = 1 + random.nextInt(HEIGHT - 2);
+			float brightness = 60 + random.nextInt(120);
+			luma[y * WIDTH + x] += brightness;
+			if (brightness > 140) {
+				luma[y * WIDTH + x - 1] += brightness / 4;
+				luma[y * WIDTH + x + 1] += brightness / 4;
+				luma[(y - 1) * WIDTH + x] += brightness / 4;
+				luma[(y + 1) * WIDTH + x] += brightness / 4;
+			}
+		}
+
+		if (moonRadius > 0) {
+			renderMoon(luma, random);
+		}
+
+		for (int i = 0; i < luma.length; i++) {
+			float value = luma[i] + (float) random.nextGaussian() * 2;
+			data[i] = (byte) Math.max(0, Math.min(255, Math.round(value)));
+		}
+		//nearly neutral chroma
+		for (int i = luma.length; i < data.length; i++) {
+			data[i] = (byte) (128 + random.nextInt(3) - 1);
+		}
+		return data;
+	}
+
+	private void renderMoon(float[] luma, Random random) {
+		//maria, darker patches at fixed positions on the disc
+		float[][] maria = new float[5][];
+		for (int i = 0; i < maria.length; i++) {
+			maria[i] = new float[] {
+					(random.nextFloat() - 0.5f) * moonRadius,
+					(random.nextFloat() - 0.5f) * moonRadius,
+					moonRadius * (0.15f + 0.2f * random.nextFloat())};
+		}
+
+		int reach = (int) Math.ceil(moonRadius * 3);
+		int minX = Math.max(0, (int) moonX - reach);
+		int maxX = Math.min(WIDTH - 1, (int) moonX + reach);
+		int minY = Math.max(0, (int) moonY - reach);
+		int maxY = Math.min(HEIGHT - 1, (int) moonY + reach);
+		for (int y = minY; y <= maxY; y++) {
+			for (int x = minX; x <= maxX; x++) {
+				//coverage of the pixel by the disc, 4x4 supersampled
+				float disc = 0;
+				float mare = 0;
+				for (int sy = 0; sy < 4; sy++) {
+					for (int sx = 0; sx < 4; sx++) {
+						float dx = x + (sx + 0.5f) / 4 - moonX;
+						float dy = y + (sy + 0.5f) / 4 - moonY;
+						if (dx * dx + dy * dy <= moonRadius * moonRadius) {
+							disc += 1 / 16f;
+							for (float[] m : maria) {
+								float mx = dx - m[0];
+								float my = dy - m[1];
+								if (mx * mx + my * my <= m[2] * m[2]) {
+									mare += 1 / 16f;
+									break;
+								}
+							}
+						}
+					}
+				}
+
+				float distance = (float) Math.sqrt((x + 0.5f - moonX) * (x + 0.5f - moonX) +
+						(y + 0.5f - moonY) * (y + 0.5f - moonY));
+				float halo = distance > moonRadius ?
+						18 * (float) Math.exp(-(distance - moonRadius) / (0.6f * moonRadius)) : 0;
+
+				int i = y * WIDTH + x;
+				luma[i] = luma[i] * (1 - disc) + disc * 245 - mare * 40 + halo;
+			}
+		}
+	}
+}
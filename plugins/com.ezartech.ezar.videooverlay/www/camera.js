@@ -80,7 +80,8 @@ var Camera = function(ezar,id,position,hasZoom,maxZoom,zoom) {
 	};
 	
     /**
-	 * Maximum magnification level
+	 * Maximum magnification level. On Android the EzarMaxDigitalZoom preference extends
+	 * it past the camera's own zoom by magnifying the preview
 	 * @return {float} a value between 1.0 and maxZoom
 	 */
 	this.getMaxZoom = function() {
@@ -96,9 +97,11 @@ var Camera = function(ezar,id,position,hasZoom,maxZoom,zoom) {
 	};
 	
 	/**
-	 * Increase or decrease magnification
+	 * Increase or decrease magnification. Rapid calls are coalesced, only the latest
+	 * zoom is applied.
 	 * @param {float} zoom new magnification level, must be between 1.0 and maxZoom 
-	 * @param {function} [successCB] function called on success
+	 * @param {function} [successCB] function called on success with the zoom the
+	 * 			camera achieved, e.g., rounded to its zoom steps. Android only
 	 * @param {function} [errorCB] function with error data parameter called on error
 	 */
 	this.setZoom = function(zoom, successCallback,errorCallback) {
@@ -107,7 +110,7 @@ var Camera = function(ezar,id,position,hasZoom,maxZoom,zoom) {
      
         if (_self.isActive() && _self.isRunning()) {
             exec(function(data) {
-                   _zoom = zooom;
+                   _zoom = typeof data == "number" ? data : zooom;
                     if (isFunction(successCallback)) {
                         successCallback(data);
                     }
@@ -123,12 +126,56 @@ var Camera = function(ezar,id,position,hasZoom,maxZoom,zoom) {
         }
 	};
 
+	/**
+	 * Zoom the camera natively on pinch gestures over the webview, without a bridge
+	 * round trip per touch event. Touches still reach the web content. Android only.
+	 * @param {function} [zoomChangedCB] function called with the new zoom, at most every
+	 * 			eventInterval ms during a pinch and once when the pinch ends
+	 * @param {function} [errorCB] function with error data parameter called on error
+	 * @param {object} [options] {eventInterval: ms between zoom change events (default 100)}
+	 */
+	this.enablePinchZoom = function(zoomChangedCallback, errorCallback, options) {
+        var eventInterval = options && options.eventInterval ? options.eventInterval : 100;
+
+        exec(function(data) {
+                if (typeof data == "number") {
+                    _zoom = data;
+                    if (isFunction(zoomChangedCallback)) {
+                        zoomChangedCallback(data);
+                    }
+                }
+             },
+             function(error) {
+                if (isFunction(errorCallback)) {
+                    errorCallback(error);
+                }
+             },
+             "videoOverlay",
+             "enablePinchZoom",
+             [eventInterval]);
+	};
+
+	/**
+	 * Stop the native pinch to zoom started by enablePinchZoom(). Android only.
+	 * @param {function} [successCB] function called on success
+	 * @param {function} [errorCB] function with error data parameter called on error
+	 */
+	this.disablePinchZoom = function(successCallback, errorCallback) {
+        exec(successCallback,
+             errorCallback,
+             "videoOverlay",
+             "disablePinchZoom",
+             []);
+	};
+
 	/**
 	 * Start video capture and presentation. This camera is the ezar#activeCamera
 	 * @param {function} [successCB] function called on success
 	 * @param {function} [errorCB] function with error data parameter called on error
+	 * @param {object} [options] {powerProfile: "battery", "balanced" or "smooth",
+	 * 			see ezar#setPowerProfile. Android only}
 	 */
-	this.start = function(successCallback,errorCallback) {
+	this.start = function(successCallback,errorCallback,options) {
         if (!_self.isStopped()) return;
         
         exec(function(data) {
@@ -145,7 +192,8 @@ var Camera = function(ezar,id,position,hasZoom,maxZoom,zoom) {
              "videoOverlay",
              "startCamera",
              [_self.getPosition(),
-              _self.hasZoom() ? _self.getZoom() : 0]);
+              _self.hasZoom() ? _self.getZoom() : 0,
+              options && options.powerProfile ? options.powerProfile : null]);
     };
     
 	/**
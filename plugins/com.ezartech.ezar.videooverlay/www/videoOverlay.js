@@ -127,6 +127,101 @@ module.exports = (function() {
     _ezAR.hasActiveCamera = function() {
         return _ezAR.getActiveCamera() != null;
     }
+
+    /**
+     * Change the camera power profile without restarting the camera. Android only.
+     * @param {string} profile "battery": 15 fps and at most 720p preview for long sessions,
+     *         "balanced" (default): 24 fps and at most 1080p, "smooth": 30 fps at the view's size
+     * @param {function} [successCB] function called on success
+     * @param {function} [errorCB] function with error data parameter called on error
+     */
+    _ezAR.setPowerProfile = function(profile, successCallback, errorCallback) {
+        exec(successCallback,
+             errorCallback,
+             "videoOverlay",
+             "setPowerProfile",
+             [profile]);
+    }
+
+    /**
+     * Night sky mode: fix the focus at infinity and meter exposure on a small area,
+     * e.g., the moon, in a single camera update. Pass null to restore continuous
+     * focus and auto exposure. Android only.
+     * @param {object} options {x, y: center of the metering area, 0..1 across the camera
+     *         view (default 0.5), size: side of the area, 0..1 (default 0.1),
+     *         exposureCompensation: EV (default 0), lockExposure, lockWhiteBalance
+     *         (default false), infinityFocus (default true), followMoon: move the area
+     *         onto the moon found by watchMoon (default false)}
+     * @param {function} [successCB] function called on success
+     * @param {function} [errorCB] function with error data parameter called on error
+     */
+    _ezAR.setNightSkyMode = function(options, successCallback, errorCallback) {
+        exec(successCallback,
+             errorCallback,
+             "videoOverlay",
+             "setNightSkyMode",
+             [options || null]);
+    }
+
+    /**
+     * Stream moon detections from the running camera's preview frames. Android only.
+     * The detection callback receives {found, tracked, x, y, radius, confidence, frameWidth,
+     * frameHeight, orientation, timestamp, processingTime}; x, y and radius are in
+     * preview frame pixels in sensor orientation, timestamp is in nanoseconds of the
+     * device's monotonic clock (System.nanoTime) with either camera api. found=false
+     * is sent once when the moon is lost.
+     * @param {function} detectionCB function called with each detection
+     * @param {function} [errorCB] function with error data parameter called on error
+     * @param {object} [options] {frameInterval: analyse every Nth frame (default 1),
+     *         minConfidence: 0..1 (default 0.5),
+     *         track: follow the moon near its last position once found (default true)}
+     */
+    _ezAR.watchMoon = function(detectionCallback, errorCallback, options) {
+        options = options || {};
+        var frameInterval = options.frameInterval || 1;
+        var minConfidence = 'minConfidence' in options ? options.minConfidence : 0.5;
+        var track = 'track' in options ? !!options.track : true;
+
+        exec(function(data) {
+                if (data && isFunction(detectionCallback)) detectionCallback(data);
+             },
+             errorCallback,
+             "videoOverlay",
+             "watchMoon",
+             [frameInterval, minConfidence, track]);
+    }
+
+    /**
+     * Stop the moon detection stream started by watchMoon().
+     * @param {function} [successCB] function called on success
+     * @param {function} [errorCB] function with error data parameter called on error
+     */
+    _ezAR.clearMoonWatch = function(successCallback, errorCallback) {
+        exec(successCallback,
+             errorCallback,
+             "videoOverlay",
+             "clearMoonWatch",
+             []);
+    }
+
+    /**
+     * Timing of the camera bring-up, e.g., to collect time to first frame across devices.
+     * Android only.
+     * The success callback receives {spans: [{name, start, duration}], summary: {name: {count,
+     * p50, p95, max}}}; times in ms. Span names: init, probe, open, initCamera,
+     * setPreviewTexture, startPreview, layout and firstFrame, startCamera until the first
+     * frame is shown (TextureView preview host only). The latest 256 spans are kept.
+     * @param {function} successCB function called with the metrics
+     * @param {function} [errorCB] function with error data parameter called on error
+     * @param {object} [options] {clear: discard the spans once read (default false)}
+     */
+    _ezAR.getMetrics = function(successCallback, errorCallback, options) {
+        exec(successCallback,
+             errorCallback,
+             "videoOverlay",
+             "getMetrics",
+             [!!(options && options.clear)]);
+    }
                   
     
     //PROTECTED ------------